@@ -0,0 +1,45 @@
+package com.sample.electronicstore.benchmark;
+
+import com.sample.electronicstore.discount.DiscountRule;
+import com.sample.electronicstore.discount.DiscountRules;
+import com.sample.electronicstore.entity.DiscountDeal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of compiling a deal description into a discount rule, paid once per deal save and on registry misses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DealParsingBenchmark {
+
+    @Param({"BUY 1 GET 1 FREE", "BUY 2 GET 50% OFF ON THE NEXT", "HALF PRICE"})
+    private String description;
+
+    private DiscountDeal deal;
+
+    @Setup
+    public void setup() {
+        deal = new DiscountDeal(1L, 1L, description, true, null, 0);
+    }
+
+    @Benchmark
+    public DiscountRule compile() {
+        return DiscountRules.compile(deal);
+    }
+}
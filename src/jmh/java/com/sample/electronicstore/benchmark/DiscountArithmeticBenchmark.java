@@ -0,0 +1,94 @@
+package com.sample.electronicstore.benchmark;
+
+import com.sample.electronicstore.discount.BuyNGetMFree;
+import com.sample.electronicstore.discount.BuyNGetPercentOff;
+import com.sample.electronicstore.discount.DiscountRule;
+import com.sample.electronicstore.discount.DiscountRules;
+import com.sample.electronicstore.entity.DiscountDeal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Discount arithmetic of a whole basket, one compiled rule per line, without any database access.
+ * Lines alternate between the buy N get M free, the percent off and the no discount rules.
+ *
+ * <p>{@code basketTotalDouble} keeps the former floating point formulas of the rules as a reference for the minor unit
+ * arithmetic in the same run.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DiscountArithmeticBenchmark {
+
+    private static final String[] DESCRIPTIONS = {"BUY 1 GET 1 FREE", "BUY 2 GET 50% OFF ON THE NEXT", "HALF PRICE"};
+
+    @Param({"1", "100", "10000"})
+    private int lines;
+
+    private DiscountRule[] rules;
+    private long[] unitPrices;
+    private double[] majorUnitPrices;
+    private int[] quantities;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        rules = new DiscountRule[lines];
+        unitPrices = new long[lines];
+        majorUnitPrices = new double[lines];
+        quantities = new int[lines];
+        for (int i = 0; i < lines; i++) {
+            rules[i] = DiscountRules.compile(new DiscountDeal((long) i, (long) i, DESCRIPTIONS[i % DESCRIPTIONS.length], true, null, 0));
+            unitPrices[i] = 100 + random.nextInt(100_000);
+            majorUnitPrices[i] = unitPrices[i] / 100.0;
+            quantities[i] = 1 + random.nextInt(10);
+        }
+    }
+
+    @Benchmark
+    public long basketTotal() {
+        long total = 0;
+        for (int i = 0; i < lines; i++) {
+            total += rules[i].priceAfterDiscount(unitPrices[i], quantities[i]);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double basketTotalDouble() {
+        double total = 0;
+        for (int i = 0; i < lines; i++) {
+            total += priceAfterDiscountDouble(rules[i], majorUnitPrices[i], quantities[i]);
+        }
+        return total;
+    }
+
+    private static double priceAfterDiscountDouble(final DiscountRule rule, final double unitPrice, final int quantity) {
+        if (rule instanceof BuyNGetMFree) {
+            final BuyNGetMFree freeRule = (BuyNGetMFree) rule;
+            final int freeItems = quantity / (freeRule.getBuyN() + freeRule.getGetM()) * freeRule.getGetM();
+            return unitPrice * (quantity - freeItems);
+        }
+        if (rule instanceof BuyNGetPercentOff && rule.isApplicable(quantity)) {
+            final BuyNGetPercentOff percentRule = (BuyNGetPercentOff) rule;
+            final int discountableItems = (quantity - percentRule.getBuyN()) / (percentRule.getBuyN() + 1);
+            return unitPrice * quantity - unitPrice * discountableItems * (percentRule.getPercent() / 100.0);
+        }
+        return unitPrice * quantity;
+    }
+}
@@ -0,0 +1,70 @@
+package com.sample.electronicstore.benchmark;
+
+import com.sample.electronicstore.dto.BasketDTO;
+import com.sample.electronicstore.entity.Basket;
+import com.sample.electronicstore.entity.BasketItem;
+import com.sample.electronicstore.entity.Product;
+import com.sample.electronicstore.utils.ConvertToDtoUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity to DTO conversion in {@link ConvertToDtoUtil} for baskets and catalog listings of growing size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DtoConversionBenchmark {
+
+    @Param({"1", "100", "10000"})
+    private int lines;
+
+    private Basket basket;
+    private List<Product> products;
+
+    @Setup
+    public void setup() {
+        final Instant now = Instant.now();
+        basket = new Basket(1L);
+        basket.setId(1L);
+        basket.setLastUpdated(now);
+        final List<BasketItem> items = new ArrayList<>(lines);
+        products = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            final Product product = new Product((long) i, "Product " + i, "Description " + i, 1000L + 100L * i, now, 0);
+            products.add(product);
+            items.add(new BasketItem((long) i, basket, product, 1 + i % 10, now));
+        }
+        basket.setItems(items);
+    }
+
+    @Benchmark
+    public BasketDTO basket() {
+        return ConvertToDtoUtil.convertToBasketDTO(basket);
+    }
+
+    @Benchmark
+    public void products(final Blackhole blackhole) {
+        for (final Product product : products) {
+            blackhole.consume(ConvertToDtoUtil.convertToProductDTO(product));
+        }
+    }
+}
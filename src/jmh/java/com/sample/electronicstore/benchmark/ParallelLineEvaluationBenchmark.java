@@ -0,0 +1,95 @@
+package com.sample.electronicstore.benchmark;
+
+import com.sample.electronicstore.cache.LineTotal;
+import com.sample.electronicstore.cache.ProductSnapshot;
+import com.sample.electronicstore.discount.DiscountRule;
+import com.sample.electronicstore.discount.DiscountRules;
+import com.sample.electronicstore.discount.ReceiptLineEvaluator;
+import com.sample.electronicstore.entity.DiscountDeal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluation of all lines of a receipt by the {@link ReceiptLineEvaluator}, sequentially and split across its
+ * fork join pool, without any database access. The line count where {@code parallel} overtakes {@code sequential}
+ * is the crossover point that {@code store.receipt.parallel-threshold} should be set to, run it on the target hardware
+ * as the crossover depends on the number of cores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelLineEvaluationBenchmark {
+
+    private static final String[] DESCRIPTIONS = {"BUY 1 GET 1 FREE", "BUY 2 GET 50% OFF ON THE NEXT"};
+
+    @Param({"100", "500", "1000", "2000", "5000", "20000", "100000"})
+    private int lines;
+
+    //threads of the evaluation pool, 0 for the number of available processors
+    @Param({"0"})
+    private int parallelism;
+
+    private ReceiptLineEvaluator sequentialEvaluator;
+    private ReceiptLineEvaluator parallelEvaluator;
+    private ProductSnapshot[] products;
+    private int[] quantities;
+    private DiscountDeal[] deals;
+    private DiscountRule[] rules;
+
+    @Setup
+    public void setup() {
+        sequentialEvaluator = new ReceiptLineEvaluator(Integer.MAX_VALUE, parallelism);
+        parallelEvaluator = new ReceiptLineEvaluator(0, parallelism);
+        final Random random = new Random(42);
+        products = new ProductSnapshot[lines];
+        quantities = new int[lines];
+        deals = new DiscountDeal[lines];
+        rules = new DiscountRule[lines];
+        for (int i = 0; i < lines; i++) {
+            products[i] = new ProductSnapshot((long) i, "Product " + i, "Description " + i, 100L + random.nextInt(100_000), Instant.EPOCH, 0);
+            quantities[i] = 1 + random.nextInt(10);
+            // every other line has an active deal
+            if (i % 2 == 0) {
+                deals[i] = new DiscountDeal((long) i, (long) i, DESCRIPTIONS[i / 2 % DESCRIPTIONS.length], true, Instant.EPOCH, 0);
+                rules[i] = DiscountRules.compile(deals[i]);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        sequentialEvaluator.shutdown();
+        parallelEvaluator.shutdown();
+    }
+
+    @Benchmark
+    public LineTotal[] sequential() {
+        final LineTotal[] lineTotals = new LineTotal[lines];
+        sequentialEvaluator.evaluate(lineTotals, products, quantities, deals, rules);
+        return lineTotals;
+    }
+
+    @Benchmark
+    public LineTotal[] parallel() {
+        final LineTotal[] lineTotals = new LineTotal[lines];
+        parallelEvaluator.evaluate(lineTotals, products, quantities, deals, rules);
+        return lineTotals;
+    }
+}
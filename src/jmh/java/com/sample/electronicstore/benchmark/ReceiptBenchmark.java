@@ -0,0 +1,109 @@
+package com.sample.electronicstore.benchmark;
+
+import com.sample.electronicstore.ElectronicStoreApplication;
+import com.sample.electronicstore.cache.ReceiptTotalsCache;
+import com.sample.electronicstore.dto.ReceiptDTO;
+import com.sample.electronicstore.entity.Basket;
+import com.sample.electronicstore.entity.BasketItem;
+import com.sample.electronicstore.entity.DiscountDeal;
+import com.sample.electronicstore.entity.Product;
+import com.sample.electronicstore.repository.BasketRepository;
+import com.sample.electronicstore.repository.DiscountDealRepository;
+import com.sample.electronicstore.repository.ProductRepository;
+import com.sample.electronicstore.service.ReceiptService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end receipt calculation through {@link ReceiptService} against the in-memory H2 database,
+ * including the basket load, the bulk deal lookup and the lookup of the receipt of the basket version,
+ * which is only inserted by the first invocation. Every other line has an active deal.
+ *
+ * <p>{@code calculateReceipt} drops the cached receipt first and evaluates every line, and
+ * {@code calculateReceiptUnchanged} returns the cached receipt of the unchanged basket.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReceiptBenchmark {
+
+    private static final String[] DESCRIPTIONS = {"BUY 1 GET 1 FREE", "BUY 2 GET 50% OFF ON THE NEXT"};
+
+    @Param({"1", "100", "1000", "10000"})
+    private int lines;
+
+    private ConfigurableApplicationContext context;
+    private ReceiptService receiptService;
+    private Long basketId;
+    private ReceiptTotalsCache receiptTotalsCache;
+
+    @Setup
+    public void setup() {
+        context = new SpringApplicationBuilder(ElectronicStoreApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.datasource.url=jdbc:h2:mem:receipt-benchmark-" + lines + ";DB_CLOSE_DELAY=-1",
+                        "spring.jpa.show-sql=false",
+                        "store.reactive.enabled=false",
+                        "logging.level.root=warn")
+                .run();
+        receiptService = context.getBean(ReceiptService.class);
+        receiptTotalsCache = context.getBean(ReceiptTotalsCache.class);
+
+        final List<Product> products = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            products.add(new Product(null, "Product " + i, "Description " + i, 1000L + 100L * i, null, 0));
+        }
+        context.getBean(ProductRepository.class).saveAll(products);
+
+        final List<DiscountDeal> deals = new ArrayList<>();
+        final Basket basket = new Basket(1L);
+        final List<BasketItem> items = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            final Product product = products.get(i);
+            if (i % 2 == 0) {
+                deals.add(new DiscountDeal(null, product.getId(), DESCRIPTIONS[i / 2 % DESCRIPTIONS.length], true, null, 0));
+            }
+            items.add(new BasketItem(null, basket, product, 1 + i % 10, null));
+        }
+        basket.setItems(items);
+        context.getBean(DiscountDealRepository.class).saveAll(deals);
+        basketId = context.getBean(BasketRepository.class).save(basket).getId();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ReceiptDTO calculateReceipt() {
+        receiptTotalsCache.basketsRemoved(Collections.singleton(basketId));
+        return receiptService.calculateReceipt(basketId);
+    }
+
+    @Benchmark
+    public ReceiptDTO calculateReceiptUnchanged() {
+        return receiptService.calculateReceipt(basketId);
+    }
+}
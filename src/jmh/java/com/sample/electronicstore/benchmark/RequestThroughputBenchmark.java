@@ -0,0 +1,186 @@
+package com.sample.electronicstore.benchmark;
+
+import com.sample.electronicstore.ElectronicStoreApplication;
+import com.sample.electronicstore.entity.Basket;
+import com.sample.electronicstore.entity.BasketItem;
+import com.sample.electronicstore.entity.Product;
+import com.sample.electronicstore.repository.BasketRepository;
+import com.sample.electronicstore.repository.ProductRepository;
+import com.sample.electronicstore.service.ReceiptService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of receipt requests over HTTP with Tomcat's platform thread pool and with a virtual thread per request.
+ *
+ * <p>The in-memory database answers in microseconds, so every executed statement is delayed by {@code dbLatencyMs}
+ * to stand in for the round trip to a database server. With more clients than {@code platformThreads}, the platform
+ * mode queues requests in front of its thread pool while the virtual mode runs them all and is only bounded by the
+ * {@code poolSize} connections.</p>
+ *
+ * <p>{@code virtualThreads=true} needs JDK 21, on older JDKs run it with {@code -p virtualThreads=false}.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@Threads(256)
+@State(Scope.Benchmark)
+public class RequestThroughputBenchmark {
+
+    private static final int BASKETS = 1000;
+
+    @Param({"false", "true"})
+    private boolean virtualThreads;
+
+    @Param({"64"})
+    private int platformThreads;
+
+    @Param({"128"})
+    private int poolSize;
+
+    @Param({"5"})
+    private int dbLatencyMs;
+
+    private ConfigurableApplicationContext context;
+    private SlowDatabase slowDatabase;
+    private String baseUrl;
+    private List<Long> basketIds;
+
+    @Setup
+    public void setup() {
+        slowDatabase = new SlowDatabase(dbLatencyMs);
+        // passed as arguments, which win over the application.properties of the test classpath
+        context = new SpringApplicationBuilder(ElectronicStoreApplication.class)
+                .initializers(applicationContext -> applicationContext.getBeanFactory().addBeanPostProcessor(slowDatabase))
+                .run("--server.port=0",
+                        "--spring.datasource.url=jdbc:h2:mem:throughput-benchmark;DB_CLOSE_DELAY=-1",
+                        "--store.web.virtual-threads=" + virtualThreads,
+                        "--store.reactive.enabled=false",
+                        "--server.tomcat.threads.max=" + platformThreads,
+                        "--server.tomcat.accept-count=1000",
+                        "--spring.datasource.hikari.maximum-pool-size=" + poolSize,
+                        "--spring.datasource.hikari.connection-timeout=60000",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=warn",
+                        "--logging.level.org.hibernate=off");
+        baseUrl = "http://localhost:" + ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+
+        final List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            products.add(new Product(null, "Product " + i, "Description " + i, 1000L + 100L * i, null, 0));
+        }
+        context.getBean(ProductRepository.class).saveAll(products);
+        basketIds = new ArrayList<>(BASKETS);
+        for (int b = 0; b < BASKETS; b++) {
+            final Basket basket = new Basket((long) b);
+            final List<BasketItem> items = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                items.add(new BasketItem(null, basket, products.get((b + i) % products.size()), 1 + i, null));
+            }
+            basket.setItems(items);
+            basketIds.add(context.getBean(BasketRepository.class).save(basket).getId());
+        }
+        // the first receipt of a basket requested by many clients at once makes them wait on each other on the
+        // receipt unique index, which H2 1.4.200 answers with lock timeouts, so every basket has its receipt up front
+        final ReceiptService receiptService = context.getBean(ReceiptService.class);
+        for (final Long basketId : basketIds) {
+            receiptService.calculateReceipt(basketId);
+        }
+        slowDatabase.enabled = true;
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int receipt() throws IOException {
+        final Long basketId = basketIds.get(ThreadLocalRandom.current().nextInt(basketIds.size()));
+        final HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/customer/receipt/" + basketId).openConnection();
+        final int status = connection.getResponseCode();
+        try (InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            final byte[] buffer = new byte[8192];
+            while (body != null && body.read(buffer) >= 0) {
+                // drain the body so the connection is kept alive
+            }
+        }
+        // a failed request would count as a fast one
+        if (status != 200) {
+            throw new IllegalStateException("receipt of basket " + basketId + " answered " + status);
+        }
+        return status;
+    }
+
+    /**
+     * Wraps the data source so every statement execution sleeps first, once enabled after the setup.
+     */
+    private static final class SlowDatabase implements BeanPostProcessor {
+        private final long latencyMillis;
+        private volatile boolean enabled;
+
+        private SlowDatabase(final long latencyMillis) {
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(final Object bean, final String beanName) {
+            if (!(bean instanceof DataSource) || latencyMillis <= 0) {
+                return bean;
+            }
+            return proxy(DataSource.class, bean, (method, result) -> method.getName().equals("getConnection")
+                    ? proxy(Connection.class, result, (connectionMethod, statement) -> connectionMethod.getName().equals("prepareStatement")
+                    ? proxy(PreparedStatement.class, statement, null) : statement) : result);
+        }
+
+        private <T> T proxy(final Class<T> type, final Object target, final ResultWrapper resultWrapper) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+                if (enabled && type == PreparedStatement.class && method.getName().startsWith("execute")) {
+                    Thread.sleep(latencyMillis);
+                }
+                try {
+                    final Object result = method.invoke(target, args);
+                    return resultWrapper != null ? resultWrapper.wrap(method, result) : result;
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }));
+        }
+    }
+
+    private interface ResultWrapper {
+        Object wrap(Method method, Object result);
+    }
+}
@@ -2,10 +2,14 @@ package com.sample.electronicstore;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcTransactionManagerAutoConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-@SpringBootApplication
+// the R2DBC connection factory and transaction manager of the reactive endpoints would replace the JDBC data source
+// and the JPA transaction manager, the reactive repository creates its own pool instead
+@SpringBootApplication(exclude = {R2dbcAutoConfiguration.class, R2dbcTransactionManagerAutoConfiguration.class})
 public class ElectronicStoreApplication {
 
     private static final Logger logger = LoggerFactory.getLogger(ElectronicStoreApplication.class);
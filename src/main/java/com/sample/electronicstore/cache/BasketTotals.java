@@ -0,0 +1,27 @@
+package com.sample.electronicstore.cache;
+
+import com.sample.electronicstore.dto.ReceiptDTO;
+import lombok.Value;
+
+import java.util.Map;
+
+/**
+ * Line totals of a basket at a version of the basket, and the receipt calculated from them.
+ */
+@Value
+public class BasketTotals {
+    int basketVersion;
+    //line totals keyed by product id in the order of the basket lines, a basket has one line per product
+    Map<Long, LineTotal> lines;
+    ReceiptDTO receipt;
+
+    public int getDiscountedLines() {
+        int discounted = 0;
+        for (final LineTotal line : lines.values()) {
+            if (line.isDiscounted()) {
+                discounted++;
+            }
+        }
+        return discounted;
+    }
+}
@@ -0,0 +1,86 @@
+package com.sample.electronicstore.cache;
+
+import com.sample.electronicstore.discount.DiscountRuleRegistry;
+import com.sample.electronicstore.entity.DiscountDeal;
+import com.sample.electronicstore.entity.Product;
+import com.sample.electronicstore.event.ChangeEvent;
+import com.sample.electronicstore.event.ChangeEventListener;
+import com.sample.electronicstore.repository.DiscountDealRepository;
+import com.sample.electronicstore.repository.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/**
+ * Keeps the in-memory caches of this instance up to date with the changes of products and deals made by any instance.
+ *
+ * <p>The event only names the changed entity and its product, so the listener reads their current rows and patches the
+ * {@link ProductCatalogCache} and the {@link DiscountRuleRegistry} with them. As the current rows are applied and not
+ * the event, an event that arrives late or twice can't bring back an older state. The changes of this instance were already patched when they committed, applying them again is harmless.</p>
+ */
+@Component
+public class CacheChangeListener implements ChangeEventListener {
+    private final ProductRepository productRepository;
+    private final DiscountDealRepository discountDealRepository;
+    private final ProductCatalogCache productCatalogCache;
+    private final DiscountRuleRegistry discountRuleRegistry;
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheChangeListener.class);
+
+    /**
+     * Constructs a CacheChangeListener.
+     *
+     * @param productRepository Repository the current state of a changed product is read from.
+     * @param discountDealRepository Repository the current state of a changed deal is read from.
+     * @param productCatalogCache Cache of the product snapshots.
+     * @param discountRuleRegistry Registry of the compiled rules of the active deals.
+     */
+    @Autowired
+    public CacheChangeListener(final ProductRepository productRepository, final DiscountDealRepository discountDealRepository,
+                               final ProductCatalogCache productCatalogCache, final DiscountRuleRegistry discountRuleRegistry) {
+        this.productRepository = productRepository;
+        this.discountDealRepository = discountDealRepository;
+        this.productCatalogCache = productCatalogCache;
+        this.discountRuleRegistry = discountRuleRegistry;
+    }
+
+    @Override
+    public void onChange(final ChangeEvent event) {
+        if (ChangeEvent.PRODUCT.equals(event.getEntity())) {
+            productChanged(event);
+        } else if (ChangeEvent.DISCOUNT_DEAL.equals(event.getEntity())) {
+            dealChanged(event);
+        }
+    }
+
+    private void productChanged(final ChangeEvent event) {
+        final Long productId = event.getEntityId();
+        final Optional<Product> product = productRepository.findById(productId);
+        if (product.isPresent()) {
+            productCatalogCache.refresh(product.get());
+        } else {
+            productCatalogCache.evict(productId);
+        }
+        logger.debug("applied {} to the caches", event);
+    }
+
+    private void dealChanged(final ChangeEvent event) {
+        final Long dealId = event.getEntityId();
+        if (!discountDealRepository.findById(dealId).isPresent()) {
+            discountRuleRegistry.evictDeal(dealId);
+        }
+        // the event of a deactivated or removed deal can arrive after the one of the deal replacing it,
+        // so the current active deal of the product is applied rather than the changed deal
+        final Long productId = event.getProductId();
+        final Optional<DiscountDeal> activeDeal = discountDealRepository.findByProductIdAndActive(productId, true);
+        if (activeDeal.isPresent()) {
+            discountRuleRegistry.register(activeDeal.get());
+        } else {
+            discountRuleRegistry.evictProduct(productId);
+        }
+        logger.debug("applied {} to the caches", event);
+    }
+}
@@ -0,0 +1,34 @@
+package com.sample.electronicstore.cache;
+
+import com.sample.electronicstore.entity.DiscountDeal;
+import lombok.Value;
+
+import java.util.Objects;
+
+/**
+ * Evaluated price of one basket line, together with the inputs it was evaluated from.
+ */
+@Value
+public class LineTotal {
+    ProductSnapshot product;
+    int quantity;
+    //id and optimistic lock version of the active deal of the product, null if it has none
+    Long dealId;
+    Integer dealVersion;
+    //in minor units
+    long subtotal;
+    boolean discounted;
+
+    /**
+     * Checks if this total was evaluated with the given deal.
+     *
+     * @param deal The current active deal of the product, or null.
+     * @return True if the deal is the same and wasn't saved since.
+     */
+    public boolean matchesDeal(final DiscountDeal deal) {
+        if (deal == null) {
+            return dealId == null;
+        }
+        return deal.getId().equals(dealId) && Objects.equals(deal.getVersion(), dealVersion);
+    }
+}
@@ -0,0 +1,119 @@
+package com.sample.electronicstore.cache;
+
+import com.sample.electronicstore.entity.Product;
+import com.sample.electronicstore.repository.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read-through, write-through cache of product snapshots in front of the {@link ProductRepository}.
+ *
+ * <p>The catalog is read on every basket operation but changes rarely, so products are served
+ * from memory and the cache is kept up to date by the product writes in {@link com.sample.electronicstore.service.ProductService}.
+ * The version of the product orders its snapshots, an older snapshot never replaces a newer one.</p>
+ *
+ * <p>The cache holds at most {@code store.catalog-cache.max-size} products, when it is full an arbitrary entry
+ * is evicted to make room, which is good enough for a catalog where most products are read.</p>
+ */
+@Component
+public class ProductCatalogCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductCatalogCache.class);
+
+    private final ProductRepository productRepository;
+    private final int maxSize;
+    private final ConcurrentMap<Long, ProductSnapshot> snapshots = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructs a ProductCatalogCache.
+     *
+     * @param productRepository Repository used to load products that are not cached yet.
+     * @param maxSize The maximum number of products kept in the cache.
+     */
+    @Autowired
+    public ProductCatalogCache(final ProductRepository productRepository, @Value("${store.catalog-cache.max-size:10000}") final int maxSize) {
+        this.productRepository = productRepository;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the product with the given id, loading it from the database on a cache miss.
+     *
+     * @param productId The id of the product.
+     * @return The product snapshot, or empty if the product doesn't exist.
+     */
+    public Optional<ProductSnapshot> get(final Long productId) {
+        final ProductSnapshot snapshot = snapshots.get(productId);
+        if (snapshot != null) {
+            hits.increment();
+            return Optional.of(snapshot);
+        }
+        misses.increment();
+        return productRepository.findById(productId).map(this::refresh);
+    }
+
+    /**
+     * Stores the snapshot of the given product unless a newer one is already cached.
+     *
+     * @param product The product loaded from or written to the database.
+     * @return The snapshot that is cached after the call.
+     */
+    public ProductSnapshot refresh(final Product product) {
+        final ProductSnapshot incoming = ProductSnapshot.of(product);
+        if (!snapshots.containsKey(incoming.getId())) {
+            evictIfFull();
+        }
+        return snapshots.merge(incoming.getId(), incoming, (current, latest) -> latest.isOlderThan(current) ? current : latest);
+    }
+
+    /**
+     * Writes the saved product through to the cache once the surrounding transaction commits,
+     * or right away if there is no transaction.
+     *
+     * @param product The saved product.
+     */
+    public void put(final Product product) {
+        TransactionCallbacks.afterCommit(() -> refresh(product));
+    }
+
+    /**
+     * Removes the product from the cache once the surrounding transaction commits, or right away if there is no transaction.
+     *
+     * @param productId The id of the removed product.
+     */
+    public void evict(final Long productId) {
+        TransactionCallbacks.afterCommit(() -> snapshots.remove(productId));
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return snapshots.size();
+    }
+
+    private void evictIfFull() {
+        final Iterator<Long> iterator = snapshots.keySet().iterator();
+        while (snapshots.size() >= maxSize && iterator.hasNext()) {
+            final Long evicted = iterator.next();
+            iterator.remove();
+            logger.debug("catalog cache is full, evicted product id {}", evicted);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.sample.electronicstore.cache;
+
+import com.sample.electronicstore.entity.Product;
+import lombok.Value;
+
+import java.time.Instant;
+
+/**
+ * Immutable copy of the product fields needed by basket and receipt calculation.
+ */
+@Value
+public class ProductSnapshot {
+    Long id;
+    String name;
+    String description;
+    //in minor units
+    long price;
+    //null until the product row has been flushed with its update timestamp
+    Instant lastUpdated;
+    //optimistic lock version of the product row, orders the snapshots of a product
+    int version;
+
+    public static ProductSnapshot of(final Product product) {
+        return new ProductSnapshot(product.getId(), product.getName(), product.getDescription(), product.getPrice(),
+                product.getLastUpdated(), product.getVersion());
+    }
+
+    /**
+     * Checks if this snapshot is older than the given one. The version is used rather than the update timestamp,
+     * which comes from the clock of the writing instance.
+     *
+     * @param other The snapshot to compare with.
+     * @return True if this snapshot has a lower version than the other.
+     */
+    public boolean isOlderThan(final ProductSnapshot other) {
+        return version < other.getVersion();
+    }
+}
@@ -0,0 +1,89 @@
+package com.sample.electronicstore.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of the last receipt of each basket with the line totals it was calculated from, so a receipt of an unchanged
+ * basket is returned without calculation.
+ *
+ * <p>Writes don't invalidate the cache. The receipt calculation checks the basket version, and the prices and active
+ * deals read from the database, against the cached totals before returning the cached receipt, so a write from any
+ * instance of the application makes it calculate a new one.</p>
+ *
+ * <p>The cache holds at most {@code store.receipt-cache.max-size} baskets, when it is full an arbitrary entry
+ * is evicted to make room.</p>
+ */
+@Component
+public class ReceiptTotalsCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReceiptTotalsCache.class);
+
+    private final int maxSize;
+    private final ConcurrentMap<Long, BasketTotals> totalsByBasketId = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a ReceiptTotalsCache.
+     *
+     * @param maxSize The maximum number of baskets kept in the cache.
+     */
+    @Autowired
+    public ReceiptTotalsCache(@Value("${store.receipt-cache.max-size:10000}") final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the cached totals of the basket.
+     *
+     * @param basketId The id of the basket.
+     * @return The totals, or null if none are cached.
+     */
+    public BasketTotals get(final Long basketId) {
+        return totalsByBasketId.get(basketId);
+    }
+
+    /**
+     * Stores the totals of a calculated receipt once the surrounding transaction commits, or right away if there is no transaction.
+     *
+     * @param basketId The id of the basket.
+     * @param totals The totals the receipt was calculated from.
+     */
+    public void put(final Long basketId, final BasketTotals totals) {
+        TransactionCallbacks.afterCommit(() -> {
+            if (!totalsByBasketId.containsKey(basketId)) {
+                evictIfFull();
+            }
+            totalsByBasketId.put(basketId, totals);
+        });
+    }
+
+    /**
+     * Drops the totals of removed baskets once the surrounding transaction commits, or right away if there is no transaction.
+     *
+     * @param basketIds The ids of the removed baskets.
+     */
+    public void basketsRemoved(final Collection<Long> basketIds) {
+        TransactionCallbacks.afterCommit(() -> totalsByBasketId.keySet().removeAll(basketIds));
+    }
+
+    public int size() {
+        return totalsByBasketId.size();
+    }
+
+    private void evictIfFull() {
+        final Iterator<Long> iterator = totalsByBasketId.keySet().iterator();
+        while (totalsByBasketId.size() >= maxSize && iterator.hasNext()) {
+            final Long evicted = iterator.next();
+            iterator.remove();
+            logger.debug("receipt cache is full, evicted basket id {}", evicted);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.sample.electronicstore.config;
+
+import com.sample.electronicstore.event.ChangeEventListener;
+import com.sample.electronicstore.event.InMemoryChangeEventBus;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.stream.Collectors;
+
+/**
+ * The bus the committed changes of products and discount deals are published to, selected by {@code store.events.bus}.
+ *
+ * <p>{@code in-memory}, the default, delivers them to the {@link ChangeEventListener} beans of this instance. Every
+ * instance reads every change from the outbox, so the listeners of every instance see the changes of all of them.
+ * Any other value turns it off, the application then needs a {@link com.sample.electronicstore.event.ChangeEventBus}
+ * bean of its own, for example one that forwards the changes to a message broker.</p>
+ */
+@Configuration
+public class ChangeEventConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "store.events.bus", havingValue = "in-memory", matchIfMissing = true)
+    public InMemoryChangeEventBus inMemoryChangeEventBus(final ObjectProvider<ChangeEventListener> listeners) {
+        return new InMemoryChangeEventBus(listeners.orderedStream().collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,57 @@
+package com.sample.electronicstore.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sample.electronicstore.controller.ReactiveCustomerHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.LoopResources;
+
+/**
+ * Reactive server of the {@link ReactiveCustomerHandler} endpoints, enabled by {@code store.reactive.enabled=true}.
+ *
+ * <p>The MVC endpoints keep running on Tomcat, the reactive ones are served next to them by a Reactor Netty server
+ * on {@code store.reactive.port}, in the same application and on the same database. The server runs on
+ * {@code store.reactive.event-loop-threads} event loop threads, a request only holds one while it is processed,
+ * not while it waits for the database.</p>
+ */
+@Configuration
+@ConditionalOnProperty(name = "store.reactive.enabled", havingValue = "true")
+public class ReactiveServerConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveServerConfig.class);
+
+    @Bean(destroyMethod = "dispose")
+    public LoopResources reactiveEventLoops(@Value("${store.reactive.event-loop-threads:0}") final int threads) {
+        return LoopResources.create("reactive-http", threads > 0 ? threads : Runtime.getRuntime().availableProcessors(), true);
+    }
+
+    @Bean(destroyMethod = "disposeNow")
+    public DisposableServer reactiveServer(final ReactiveCustomerHandler reactiveCustomerHandler, final ObjectMapper objectMapper,
+                                           final LoopResources reactiveEventLoops, @Value("${store.reactive.port:8090}") final int port) {
+        // the responses are written with the object mapper of the MVC endpoints, so both render the same json
+        final HandlerStrategies strategies = HandlerStrategies.builder().codecs(codecs -> {
+            codecs.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper));
+            codecs.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper));
+        }).build();
+        final HttpHandler httpHandler = RouterFunctions.toHttpHandler(reactiveCustomerHandler.routes(), strategies);
+        final DisposableServer server = HttpServer.create()
+                .port(port)
+                .runOn(reactiveEventLoops)
+                .handle(new ReactorHttpHandlerAdapter(httpHandler))
+                .bindNow();
+        logger.info("reactive customer endpoints listening on port {}", server.port());
+        return server;
+    }
+}
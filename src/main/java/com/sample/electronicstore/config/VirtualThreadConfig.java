@@ -0,0 +1,54 @@
+package com.sample.electronicstore.config;
+
+import org.apache.coyote.ProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Opt-in execution of the web requests on virtual threads, enabled by {@code store.web.virtual-threads=true}.
+ *
+ * <p>Tomcat's bounded pool of platform threads is replaced by an executor that starts a virtual thread per request,
+ * so requests blocked on JDBC no longer hold a platform thread each and the number of requests in flight is no longer
+ * capped by {@code server.tomcat.threads.max}. The database work is then bounded by the Hikari pool
+ * ({@code spring.datasource.hikari.maximum-pool-size}), requests wait for a connection up to
+ * {@code spring.datasource.hikari.connection-timeout}.</p>
+ *
+ * <p>Virtual threads need JDK 21 at runtime. The classes are still compiled for Java 8, which Spring Boot 2.6 can
+ * scan, so the executor is looked up by reflection and the application fails to start if the mode is enabled on an
+ * older JDK. The locks of the services are {@link java.util.concurrent.locks.ReentrantLock}s, which unmount a waiting
+ * virtual thread instead of pinning its carrier thread. The Tomcat of Spring Boot 2.6 processes each request inside a
+ * synchronized block, which pins it for the whole request, the {@code jdk21} build profile raises Tomcat to a version
+ * without it.</p>
+ */
+@Configuration
+@ConditionalOnProperty(name = "store.web.virtual-threads", havingValue = "true")
+public class VirtualThreadConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadConfig.class);
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService virtualThreadRequestExecutor() {
+        try {
+            final ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            logger.info("web requests run on virtual threads");
+            return executor;
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("store.web.virtual-threads needs JDK 21 or later, running on " + System.getProperty("java.version"), e);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Unable to create the virtual thread executor", e);
+        }
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer(final ExecutorService virtualThreadRequestExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadRequestExecutor);
+    }
+}
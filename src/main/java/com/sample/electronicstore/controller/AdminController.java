@@ -1,14 +1,24 @@
 package com.sample.electronicstore.controller;
 
+import com.sample.electronicstore.dto.BasketEvictionReportDTO;
 import com.sample.electronicstore.dto.DiscountDealDTO;
+import com.sample.electronicstore.dto.KeysetPageDTO;
 import com.sample.electronicstore.dto.ProductDTO;
+import com.sample.electronicstore.dto.ProductImportResultDTO;
+import com.sample.electronicstore.dto.RepricingReportDTO;
+import com.sample.electronicstore.exception.InvalidRequestException;
 import com.sample.electronicstore.exception.StoreOperationException;
+import com.sample.electronicstore.service.BasketEvictionService;
+import com.sample.electronicstore.service.CatalogExportService;
 import com.sample.electronicstore.service.DiscountDealService;
+import com.sample.electronicstore.service.ProductImportService;
 import com.sample.electronicstore.service.ProductService;
+import com.sample.electronicstore.service.RepricingService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -16,8 +26,11 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
 import java.util.List;
 
 /**
@@ -30,7 +43,11 @@ import java.util.List;
 public class AdminController {
 
     private final ProductService productService;
+    private final ProductImportService productImportService;
     private final DiscountDealService discountDealService;
+    private final CatalogExportService catalogExportService;
+    private final RepricingService repricingService;
+    private final BasketEvictionService basketEvictionService;
 
     private static final Logger logger = LoggerFactory.getLogger(AdminController.class);
 
@@ -38,12 +55,22 @@ public class AdminController {
      * Constructs an AdminController with necessary services.
      *
      * @param productService Service for product-related operations.
+     * @param productImportService Service for bulk product imports.
      * @param discountDealService Service for discount deal-related operations.
+     * @param catalogExportService Service for streaming dumps of products and discount deals.
+     * @param repricingService Service for what-if repricing of open baskets.
+     * @param basketEvictionService Service for the eviction of abandoned baskets.
      */
     @Autowired
-    public AdminController(final ProductService productService, final DiscountDealService discountDealService) {
+    public AdminController(final ProductService productService, final ProductImportService productImportService,
+                           final DiscountDealService discountDealService, final CatalogExportService catalogExportService,
+                           final RepricingService repricingService, final BasketEvictionService basketEvictionService) {
         this.productService = productService;
+        this.productImportService = productImportService;
         this.discountDealService = discountDealService;
+        this.catalogExportService = catalogExportService;
+        this.repricingService = repricingService;
+        this.basketEvictionService = basketEvictionService;
     }
 
     /**
@@ -59,11 +86,32 @@ public class AdminController {
             final ProductDTO createdProduct = productService.saveProduct(productDTO);
             logger.info("created product {}", createdProduct);
             return new ResponseEntity<>(createdProduct, HttpStatus.CREATED);
+        }catch (InvalidRequestException exception){
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(exception.getMessage());
         }catch (StoreOperationException exception){
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(exception.getMessage());
         }
     }
 
+    /**
+     * Imports new products in bulk. The body is newline delimited JSON with one product per line,
+     * it is streamed and inserted in chunks, so catalogs of any size can be loaded in one call.
+     *
+     * @param inputStream The request body.
+     * @return ResponseEntity with the import summary, including the rejected rows, and HTTP status.
+     */
+    @PostMapping(value = "/products/import", consumes = {"application/x-ndjson", MediaType.TEXT_PLAIN_VALUE})
+    public ResponseEntity<?> importProducts(final InputStream inputStream) {
+        logger.info("received request to import products");
+        try {
+            final ProductImportResultDTO result = productImportService.importProducts(inputStream);
+            logger.info("imported {} products, {} rows rejected", result.getRowsImported(), result.getRowsFailed());
+            return new ResponseEntity<>(result, HttpStatus.OK);
+        } catch (StoreOperationException exception) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(exception.getMessage());
+        }
+    }
+
     /**
      * Removes a product from the store by its ID.
      *
@@ -99,8 +147,43 @@ public class AdminController {
         }
     }
 
+    /**
+     * Reports the effect of proposed discount deals on all open baskets, without changing any deal.
+     * An inactive proposed deal stands for the removal of the active deal of its product.
+     * The run fails with HTTP 500 once it takes longer than {@code store.repricing.timeout-ms}.
+     *
+     * @param proposedDeals The proposed deals, at most one per product.
+     * @return ResponseEntity with the aggregate impact report and HTTP status.
+     */
+    @PostMapping("/discount-deals/what-if")
+    public ResponseEntity<?> whatIfDiscountDeals(@RequestBody final List<DiscountDealDTO> proposedDeals) {
+        try {
+            final RepricingReportDTO report = repricingService.whatIf(proposedDeals);
+            return ResponseEntity.ok(report);
+        } catch (StoreOperationException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Removes the baskets unchanged for longer than {@code store.basket-eviction.ttl-minutes} now, instead of waiting
+     * for the next scheduled run.
+     *
+     * @return ResponseEntity with the number of removed rows and HTTP status.
+     */
+    @PostMapping("/baskets/evict")
+    public ResponseEntity<?> evictIdleBaskets() {
+        try {
+            final BasketEvictionReportDTO report = basketEvictionService.evictIdleBaskets();
+            return ResponseEntity.ok(report);
+        } catch (StoreOperationException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(e.getMessage());
+        }
+    }
+
     /**
      * Retrieves all products available in the store.
+     * The whole list is built in memory, large catalogs should be read by pages or through the export.
      *
      * @return ResponseEntity with a list of all ProductDTOs and HTTP status.
      */
@@ -111,6 +194,31 @@ public class AdminController {
         return new ResponseEntity<>(allProducts, HttpStatus.OK);
     }
 
+    /**
+     * Retrieves one page of products ordered by id.
+     *
+     * @param afterId The nextAfterId of the previous page, omitted for the first page.
+     * @param size The size of the page.
+     * @return ResponseEntity with the page of ProductDTOs and HTTP status.
+     */
+    @GetMapping("/products")
+    public ResponseEntity<KeysetPageDTO<ProductDTO>> productsPage(@RequestParam(required = false) final Long afterId,
+                                                                  @RequestParam(defaultValue = "100") final int size){
+        logger.info("received request to retrieve products after {}", afterId);
+        return new ResponseEntity<>(productService.getProductsPage(afterId, size), HttpStatus.OK);
+    }
+
+    /**
+     * Streams all products as a JSON array, written from a database cursor while it is read.
+     *
+     * @return ResponseEntity with the streamed ProductDTOs and HTTP status.
+     */
+    @GetMapping(value = "/products/export", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportProducts(){
+        logger.info("received request to export all products");
+        return new ResponseEntity<>(catalogExportService::exportProducts, HttpStatus.OK);
+    }
+
     /**
      * Retrieves all discount deals for a specific product ID.
      *
@@ -139,6 +247,7 @@ public class AdminController {
 
     /**
      * Retrieves all discount deals available in the store.
+     * The whole list is built in memory, large deal sets should be read by pages or through the export.
      *
      * @return ResponseEntity with a list of all DiscountDealDTOs and HTTP status.
      */
@@ -149,4 +258,29 @@ public class AdminController {
         return new ResponseEntity<>(discountDeals, HttpStatus.OK);
     }
 
+    /**
+     * Retrieves one page of discount deals ordered by id.
+     *
+     * @param afterId The nextAfterId of the previous page, omitted for the first page.
+     * @param size The size of the page.
+     * @return ResponseEntity with the page of DiscountDealDTOs and HTTP status.
+     */
+    @GetMapping("/discount-deals")
+    public ResponseEntity<KeysetPageDTO<DiscountDealDTO>> discountDealsPage(@RequestParam(required = false) final Long afterId,
+                                                                            @RequestParam(defaultValue = "100") final int size){
+        logger.info("received request to retrieve discount deals after {}", afterId);
+        return new ResponseEntity<>(discountDealService.getDiscountDealsPage(afterId, size), HttpStatus.OK);
+    }
+
+    /**
+     * Streams all discount deals as a JSON array, written from a database cursor while it is read.
+     *
+     * @return ResponseEntity with the streamed DiscountDealDTOs and HTTP status.
+     */
+    @GetMapping(value = "/discount-deals/export", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportDiscountDeals(){
+        logger.info("received request to export all discount deals");
+        return new ResponseEntity<>(catalogExportService::exportDiscountDeals, HttpStatus.OK);
+    }
+
 }
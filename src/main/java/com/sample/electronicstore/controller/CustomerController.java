@@ -1,6 +1,7 @@
 package com.sample.electronicstore.controller;
 
 import com.sample.electronicstore.dto.BasketDTO;
+import com.sample.electronicstore.dto.BasketOperationDTO;
 import com.sample.electronicstore.dto.ReceiptDTO;
 import com.sample.electronicstore.service.BasketService;
 import com.sample.electronicstore.service.ReceiptService;
@@ -11,6 +12,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -59,6 +61,26 @@ public class CustomerController {
         }
     }
 
+    /**
+     * Applies an ordered list of add, remove and set-quantity operations to a customer's basket in one transaction.
+     * Creates a new basket if one doesn't already exist. Either all operations are applied or none.
+     *
+     * @param customerId The ID of the customer.
+     * @param operations The operations to apply, in order.
+     * @return ResponseEntity containing the updated BasketDTO.
+     */
+    @PostMapping("/basket/batch")
+    public ResponseEntity<?> applyBasketOperations(@RequestParam final Long customerId,
+                                                   @RequestBody final List<BasketOperationDTO> operations) {
+        try {
+            logger.info("applying {} operations to customer's {} basket", operations.size(), customerId);
+            final BasketDTO basketDTO = basketService.applyOperations(customerId, operations);
+            return new ResponseEntity<>(basketDTO, HttpStatus.OK);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(e.getMessage());
+        }
+    }
+
     /**
      * Removes an item from a customer's basket.
      *
@@ -79,13 +101,19 @@ public class CustomerController {
     /**
      * Calculates and returns a receipt for a given basket.
      *
+     * The receipt is written once per state of the basket, repeated calls return the same receipt.
+     *
      * @param basketId The ID of the basket for which to calculate the receipt.
+     * @param idempotencyKey Optional key of the request, a retry with the same key returns the receipt of the first request.
+     * @param details Whether the text view of the receipt is rendered in addition to its lines.
      * @return ResponseEntity containing the calculated ReceiptDTO.
      */
     @GetMapping("/receipt/{basketId}")
-    public ResponseEntity<ReceiptDTO> calculateReceipt(@PathVariable final Long basketId) {
-        final ReceiptDTO receiptDTO = receiptService.calculateReceipt(basketId);
-        return ResponseEntity.ok(receiptDTO);
+    public ResponseEntity<ReceiptDTO> calculateReceipt(@PathVariable final Long basketId,
+                                                       @RequestHeader(value = "Idempotency-Key", required = false) final String idempotencyKey,
+                                                       @RequestParam(defaultValue = "false") final boolean details) {
+        final ReceiptDTO receiptDTO = receiptService.calculateReceipt(basketId, idempotencyKey);
+        return ResponseEntity.ok(details ? receiptService.withDetails(receiptDTO) : receiptDTO);
     }
 }
 
@@ -0,0 +1,131 @@
+package com.sample.electronicstore.controller;
+
+import com.sample.electronicstore.service.ReactiveCustomerService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+
+/**
+ * Reactive customer endpoints, with the same paths, parameters and responses as the add, remove and receipt
+ * endpoints of the {@link CustomerController}. They are served by the reactive server on its own port.
+ */
+@Component
+public class ReactiveCustomerHandler {
+
+    private final ReactiveCustomerService reactiveCustomerService;
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveCustomerHandler.class);
+
+    /**
+     * Constructs a ReactiveCustomerHandler.
+     *
+     * @param reactiveCustomerService Service for the reactive basket and receipt operations.
+     */
+    @Autowired
+    public ReactiveCustomerHandler(final ReactiveCustomerService reactiveCustomerService) {
+        this.reactiveCustomerService = reactiveCustomerService;
+    }
+
+    /**
+     * Routes of the reactive customer endpoints.
+     *
+     * @return The routes.
+     */
+    public RouterFunction<ServerResponse> routes() {
+        return RouterFunctions.route()
+                .POST("/customer/basket", this::addToBasket)
+                .DELETE("/customer/basket/{basketItemId}", this::removeFromBasket)
+                .GET("/customer/receipt/{basketId}", this::calculateReceipt)
+                .build();
+    }
+
+    /**
+     * Adds a product to a customer's basket. Creates a new basket if one doesn't already exist.
+     * Takes the customerId, productId and quantity request parameters.
+     *
+     * @param request The request.
+     * @return The updated basket with status 201.
+     */
+    public Mono<ServerResponse> addToBasket(final ServerRequest request) {
+        final Optional<String> customerId = request.queryParam("customerId");
+        final Optional<String> productId = request.queryParam("productId");
+        final Optional<String> quantity = request.queryParam("quantity");
+        if (!customerId.isPresent() || !productId.isPresent() || !quantity.isPresent()) {
+            return ServerResponse.badRequest().bodyValue("customerId, productId and quantity are required");
+        }
+        final long customer;
+        final long product;
+        final int qty;
+        try {
+            customer = Long.parseLong(customerId.get());
+            product = Long.parseLong(productId.get());
+            qty = Integer.parseInt(quantity.get());
+        } catch (NumberFormatException e) {
+            return ServerResponse.badRequest().bodyValue("customerId, productId and quantity must be numbers");
+        }
+        logger.info("adding productId {} with Qty {} to customer's {} basket", product, qty, customer);
+        return reactiveCustomerService.addToBasket(customer, product, qty)
+                .flatMap(basket -> ServerResponse.status(HttpStatus.CREATED).bodyValue(basket))
+                .onErrorResume(ReactiveCustomerHandler::error);
+    }
+
+    /**
+     * Removes an item from a customer's basket.
+     *
+     * @param request The request, with the basketItemId path variable.
+     * @return A success message.
+     */
+    public Mono<ServerResponse> removeFromBasket(final ServerRequest request) {
+        final Long basketItemId;
+        try {
+            basketItemId = Long.valueOf(request.pathVariable("basketItemId"));
+        } catch (NumberFormatException e) {
+            return ServerResponse.badRequest().bodyValue("basketItemId must be a number");
+        }
+        return reactiveCustomerService.removeFromBasket(basketItemId)
+                .then(Mono.defer(() -> {
+                    logger.info("successfully deleted the basketItem with id{}", basketItemId);
+                    return ServerResponse.ok().bodyValue("BasketItem removed successfully");
+                }))
+                .onErrorResume(ReactiveCustomerHandler::error);
+    }
+
+    /**
+     * Calculates and returns a receipt for a given basket.
+     *
+     * @param request The request, with the basketId path variable.
+     * @return The calculated receipt.
+     */
+    public Mono<ServerResponse> calculateReceipt(final ServerRequest request) {
+        final Long basketId;
+        try {
+            basketId = Long.valueOf(request.pathVariable("basketId"));
+        } catch (NumberFormatException e) {
+            return ServerResponse.badRequest().bodyValue("basketId must be a number");
+        }
+        return reactiveCustomerService.calculateReceipt(basketId)
+                .flatMap(receipt -> ServerResponse.ok().bodyValue(receipt))
+                .onErrorResume(ReactiveCustomerHandler::error);
+    }
+
+    /**
+     * Maps a failure like the MVC endpoints do, a data access failure to 409 and any other failure to 500, with its message.
+     */
+    private static Mono<ServerResponse> error(final Throwable e) {
+        if (e instanceof DataAccessException) {
+            logger.info("reactive customer request failed", e);
+            return ServerResponse.status(HttpStatus.CONFLICT).bodyValue("Data violation: " + ((DataAccessException) e).getMostSpecificCause().getMessage());
+        }
+        return ServerResponse.status(HttpStatus.INTERNAL_SERVER_ERROR).bodyValue(String.valueOf(e.getMessage()));
+    }
+}
@@ -0,0 +1,58 @@
+package com.sample.electronicstore.discount;
+
+import com.sample.electronicstore.money.Money;
+
+/**
+ * Rule for deals in the format "Buy N Get M Free", for every complete set of N + M items, M items are free.
+ *
+ * <p>This rule doesn't support fractional sets as int division automatically truncates the value.</p>
+ */
+public final class BuyNGetMFree extends DiscountRule {
+    private final int buyN;
+    private final int getM;
+
+    BuyNGetMFree(final Long dealId, final Long productId, final String description, final int buyN, final int getM) {
+        super(dealId, productId, description);
+        this.buyN = buyN;
+        this.getM = getM;
+    }
+
+    @Override
+    public boolean isApplicable(final int quantity) {
+        return true;
+    }
+
+    @Override
+    public long priceAfterDiscount(final long unitPrice, final int quantity) {
+        return priceAfterDiscount(buyN, getM, unitPrice, quantity);
+    }
+
+    static long priceAfterDiscount(final int buyN, final int getM, final long unitPrice, final int quantity) {
+        final int totalSets = quantity / (buyN + getM); // Calculate total complete sets
+        final int freeItems = totalSets * getM; // Calculates free items based on totalSets only
+        return Money.times(unitPrice, quantity - freeItems);
+    }
+
+    @Override
+    public byte getType() {
+        return DiscountRules.BUY_N_GET_M_FREE;
+    }
+
+    @Override
+    public int getParameterN() {
+        return buyN;
+    }
+
+    @Override
+    public int getParameterM() {
+        return getM;
+    }
+
+    public int getBuyN() {
+        return buyN;
+    }
+
+    public int getGetM() {
+        return getM;
+    }
+}
@@ -0,0 +1,70 @@
+package com.sample.electronicstore.discount;
+
+import com.sample.electronicstore.money.Money;
+
+import java.math.RoundingMode;
+
+/**
+ * Rule for deals in the format "Buy N Get P% off on the next", after every N items bought the next one gets P% off.
+ *
+ * <p>The discount of a line is rounded once to a whole minor unit with the rounding mode of the rule.</p>
+ */
+public final class BuyNGetPercentOff extends DiscountRule {
+    private final int buyN;
+    private final int percent;
+    private final RoundingMode roundingMode;
+
+    BuyNGetPercentOff(final Long dealId, final Long productId, final String description, final int buyN, final int percent,
+                      final RoundingMode roundingMode) {
+        super(dealId, productId, description);
+        this.buyN = buyN;
+        this.percent = percent;
+        this.roundingMode = roundingMode;
+    }
+
+    @Override
+    public boolean isApplicable(final int quantity) {
+        return quantity > buyN;
+    }
+
+    @Override
+    public long priceAfterDiscount(final long unitPrice, final int quantity) {
+        return priceAfterDiscount(buyN, percent, roundingMode, unitPrice, quantity);
+    }
+
+    static long priceAfterDiscount(final int buyN, final int percent, final RoundingMode roundingMode, final long unitPrice, final int quantity) {
+        if (quantity <= buyN) {
+            return Money.times(unitPrice, quantity);
+        }
+        final int discountableItems = (quantity - buyN) / (buyN + 1);
+        final long discount = Money.percentOf(Money.times(unitPrice, discountableItems), percent, roundingMode);
+        return Money.times(unitPrice, quantity) - discount;
+    }
+
+    @Override
+    public byte getType() {
+        return DiscountRules.BUY_N_GET_PERCENT_OFF;
+    }
+
+    @Override
+    public int getParameterN() {
+        return buyN;
+    }
+
+    @Override
+    public int getParameterM() {
+        return percent;
+    }
+
+    public int getBuyN() {
+        return buyN;
+    }
+
+    public int getPercent() {
+        return percent;
+    }
+
+    public RoundingMode getRoundingMode() {
+        return roundingMode;
+    }
+}
@@ -0,0 +1,66 @@
+package com.sample.electronicstore.discount;
+
+/**
+ * Compiled, immutable form of a {@link com.sample.electronicstore.entity.DiscountDeal}.
+ *
+ * <p>Rules are built once from the deal description by {@link DiscountRules#compile} and then only evaluated,
+ * so receipt calculation does plain arithmetic on minor units, see {@link com.sample.electronicstore.money.Money},
+ * without any pattern matching or string parsing.
+ * The hierarchy is closed: the constructor is package-private and every subclass is final and lives in this package.</p>
+ */
+public abstract class DiscountRule {
+    private final Long dealId;
+    private final Long productId;
+    private final String description;
+
+    DiscountRule(final Long dealId, final Long productId, final String description) {
+        this.dealId = dealId;
+        this.productId = productId;
+        this.description = description;
+    }
+
+    /**
+     * Checks if this rule gives any discount for the given quantity.
+     *
+     * @param quantity The quantity of the product in the basket.
+     * @return True if the deal is applied for this quantity, otherwise false.
+     */
+    public abstract boolean isApplicable(int quantity);
+
+    /**
+     * Calculates the price of a basket line after applying this rule. Only primitive arithmetic, no allocation.
+     *
+     * @param unitPrice The price of a single item in minor units.
+     * @param quantity The quantity of the product in the basket.
+     * @return The total price of the line after discount in minor units.
+     */
+    public abstract long priceAfterDiscount(long unitPrice, int quantity);
+
+    /**
+     * Returns the type of this rule, one of the type constants of {@link DiscountRules}. Together with
+     * {@link #getParameterN()} and {@link #getParameterM()} it is the primitive encoding of the rule.
+     *
+     * @return The type of the rule.
+     */
+    public abstract byte getType();
+
+    public int getParameterN() {
+        return 0;
+    }
+
+    public int getParameterM() {
+        return 0;
+    }
+
+    public Long getDealId() {
+        return dealId;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,84 @@
+package com.sample.electronicstore.discount;
+
+import com.sample.electronicstore.entity.DiscountDeal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory registry of compiled discount rules keyed by product id.
+ *
+ * <p>Rules are compiled when a deal is saved, see {@link #register(DiscountDeal)}, so the receipt calculation
+ * only does a map lookup. A deal that was saved by another instance of the application is compiled once on
+ * first lookup and then served from the registry as well.</p>
+ */
+@Component
+public class DiscountRuleRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiscountRuleRegistry.class);
+
+    private final ConcurrentMap<Long, DiscountRule> rulesByProductId = new ConcurrentHashMap<>();
+
+    /**
+     * Compiles and registers the given deal if it is active, otherwise removes its rule from the registry.
+     *
+     * @param deal The saved discount deal.
+     */
+    public void register(final DiscountDeal deal) {
+        if (deal.isActive()) {
+            final DiscountRule rule = DiscountRules.compile(deal);
+            rulesByProductId.put(deal.getProductId(), rule);
+            logger.info("registered discount rule {} for product id {}", rule.getClass().getSimpleName(), deal.getProductId());
+        } else {
+            evictDeal(deal.getId());
+        }
+    }
+
+    /**
+     * Removes the rule compiled from the given deal, if it is registered.
+     *
+     * @param dealId The id of the discount deal.
+     */
+    public void evictDeal(final Long dealId) {
+        rulesByProductId.values().removeIf(rule -> rule.getDealId() != null && rule.getDealId().equals(dealId));
+    }
+
+    /**
+     * Removes the rule registered for the product, if any.
+     *
+     * @param productId The id of the product without active deal.
+     */
+    public void evictProduct(final Long productId) {
+        rulesByProductId.remove(productId);
+    }
+
+    /**
+     * Returns the registered rule for the product, if any.
+     *
+     * @param productId The id of the product.
+     * @return The rule for the active deal of the product, or null if none is registered.
+     */
+    public DiscountRule findByProductId(final Long productId) {
+        return rulesByProductId.get(productId);
+    }
+
+    /**
+     * Returns the compiled rule for the given active deal, compiling and registering it if the registry
+     * does not hold a rule for it yet.
+     *
+     * @param deal The active discount deal of a product.
+     * @return The compiled rule of the deal.
+     */
+    public DiscountRule ruleFor(final DiscountDeal deal) {
+        final DiscountRule rule = rulesByProductId.get(deal.getProductId());
+        if (rule != null && rule.getDealId() != null && rule.getDealId().equals(deal.getId())) {
+            return rule;
+        }
+        final DiscountRule compiled = DiscountRules.compile(deal);
+        rulesByProductId.put(deal.getProductId(), compiled);
+        return compiled;
+    }
+}
@@ -0,0 +1,78 @@
+package com.sample.electronicstore.discount;
+
+import com.sample.electronicstore.entity.DiscountDeal;
+import com.sample.electronicstore.money.Money;
+
+import java.math.RoundingMode;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles discount deal descriptions into {@link DiscountRule} objects.
+ *
+ * <p>This is the only place where deal descriptions are pattern matched, new deal formats are added here
+ * together with a new rule subclass.</p>
+ */
+public class DiscountRules {
+
+    private static final Pattern BUY_N_GET_M_FREE_PATTERN = Pattern.compile("Buy (\\d+) Get (\\d+) Free", Pattern.CASE_INSENSITIVE);
+    private static final Pattern BUY_N_GET_M_PERCENT_OFF_PATTERN = Pattern.compile("Buy (\\d+) Get (\\d+)% off on the next", Pattern.CASE_INSENSITIVE);
+
+    //primitive encoding of the rules, see DiscountRule#getType, n and m are the two numbers of the description
+    public static final byte NO_DISCOUNT = 0;
+    public static final byte BUY_N_GET_M_FREE = 1;
+    public static final byte BUY_N_GET_PERCENT_OFF = 2;
+
+    //rounding of percentage discounts to a whole minor unit, ties go to the even cent so they don't favour either side
+    public static final RoundingMode DISCOUNT_ROUNDING = RoundingMode.HALF_EVEN;
+
+    private DiscountRules() {
+    }
+
+    /**
+     * Compiles the description of the given deal into a rule.
+     *
+     * @param deal The discount deal to compile.
+     * @return The compiled rule, a {@link NoDiscount} rule if the description is not in a supported format.
+     */
+    public static DiscountRule compile(final DiscountDeal deal) {
+        final String description = deal.getDealDescription() != null ? deal.getDealDescription() : "";
+        final Matcher freeMatcher = BUY_N_GET_M_FREE_PATTERN.matcher(description);
+        if (freeMatcher.matches()) {
+            final int n = Integer.parseInt(freeMatcher.group(1));
+            final int m = Integer.parseInt(freeMatcher.group(2));
+            if (n + m > 0) {
+                return new BuyNGetMFree(deal.getId(), deal.getProductId(), deal.getDealDescription(), n, m);
+            }
+        }
+        final Matcher percentOffMatcher = BUY_N_GET_M_PERCENT_OFF_PATTERN.matcher(description);
+        if (percentOffMatcher.matches()) {
+            final int n = Integer.parseInt(percentOffMatcher.group(1));
+            final int m = Integer.parseInt(percentOffMatcher.group(2));
+            return new BuyNGetPercentOff(deal.getId(), deal.getProductId(), deal.getDealDescription(), n, m, DISCOUNT_ROUNDING);
+        }
+        return new NoDiscount(deal.getId(), deal.getProductId(), deal.getDealDescription());
+    }
+
+    /**
+     * Prices a basket line with the primitive encoding of a rule, with the same arithmetic as the rule itself.
+     * Used by indexes that store rules as numbers instead of objects.
+     *
+     * @param type The type of the rule, {@link DiscountRule#getType()}.
+     * @param n The first parameter of the rule, {@link DiscountRule#getParameterN()}.
+     * @param m The second parameter of the rule, {@link DiscountRule#getParameterM()}.
+     * @param unitPrice The price of a single item in minor units.
+     * @param quantity The quantity of the product in the basket.
+     * @return The total price of the line after discount in minor units.
+     */
+    public static long priceAfterDiscount(final byte type, final int n, final int m, final long unitPrice, final int quantity) {
+        switch (type) {
+            case BUY_N_GET_M_FREE:
+                return BuyNGetMFree.priceAfterDiscount(n, m, unitPrice, quantity);
+            case BUY_N_GET_PERCENT_OFF:
+                return BuyNGetPercentOff.priceAfterDiscount(n, m, DISCOUNT_ROUNDING, unitPrice, quantity);
+            default:
+                return Money.times(unitPrice, quantity);
+        }
+    }
+}
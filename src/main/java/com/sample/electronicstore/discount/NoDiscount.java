@@ -0,0 +1,28 @@
+package com.sample.electronicstore.discount;
+
+import com.sample.electronicstore.money.Money;
+
+/**
+ * Rule for deals whose description doesn't match any supported format, the line is charged at full price.
+ */
+public final class NoDiscount extends DiscountRule {
+
+    NoDiscount(final Long dealId, final Long productId, final String description) {
+        super(dealId, productId, description);
+    }
+
+    @Override
+    public boolean isApplicable(final int quantity) {
+        return false;
+    }
+
+    @Override
+    public long priceAfterDiscount(final long unitPrice, final int quantity) {
+        return Money.times(unitPrice, quantity);
+    }
+
+    @Override
+    public byte getType() {
+        return DiscountRules.NO_DISCOUNT;
+    }
+}
@@ -0,0 +1,151 @@
+package com.sample.electronicstore.discount;
+
+import com.sample.electronicstore.cache.LineTotal;
+import com.sample.electronicstore.cache.ProductSnapshot;
+import com.sample.electronicstore.entity.DiscountDeal;
+import com.sample.electronicstore.money.Money;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates the prices of the lines of a receipt with their compiled discount rules.
+ *
+ * <p>The evaluation of a line only reads its inputs, there are no repository or cache calls, so the lines can be
+ * evaluated in any order. Once at least {@code store.receipt.parallel-threshold} lines have to be evaluated, they are
+ * split across a dedicated {@link ForkJoinPool} of {@code store.receipt.parallelism} threads, so large baskets don't
+ * compete with the common pool. Each line is written to its own index of the result array, so the result is the same
+ * as the one of the sequential evaluation.</p>
+ */
+@Component
+public class ReceiptLineEvaluator {
+
+    //lines evaluated by one fork join task without splitting further
+    private static final int MIN_LINES_PER_TASK = 256;
+
+    private final int parallelThreshold;
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructs a ReceiptLineEvaluator.
+     *
+     * @param parallelThreshold The number of lines to evaluate from which they are evaluated in parallel.
+     * @param parallelism The number of threads of the pool, zero or less for the number of available processors.
+     */
+    @Autowired
+    public ReceiptLineEvaluator(@Value("${store.receipt.parallel-threshold:2000}") final int parallelThreshold,
+                                @Value("${store.receipt.parallelism:0}") final int parallelism) {
+        this.parallelThreshold = parallelThreshold;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(),
+                pool -> {
+                    final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName("receipt-evaluation-" + thread.getPoolIndex());
+                    return thread;
+                }, null, false);
+    }
+
+    /**
+     * Evaluates the lines that are null in the given array, lines that are already set are kept.
+     * All arrays are indexed by the position of the line in the basket.
+     *
+     * @param lines The line totals, null for the lines to evaluate.
+     * @param products The snapshots of the products of the lines.
+     * @param quantities The quantities of the lines.
+     * @param deals The active deals of the products, null for products without deal.
+     * @param rules The compiled rules of the deals of the lines to evaluate, null for lines without deal.
+     * @return The number of lines evaluated.
+     */
+    public int evaluate(final LineTotal[] lines, final ProductSnapshot[] products, final int[] quantities,
+                        final DiscountDeal[] deals, final DiscountRule[] rules) {
+        int pending = 0;
+        for (final LineTotal line : lines) {
+            if (line == null) {
+                pending++;
+            }
+        }
+        if (pending >= parallelThreshold && pool.getParallelism() > 1) {
+            pool.invoke(new EvaluateLines(lines, products, quantities, deals, rules, 0, lines.length,
+                    Math.max(MIN_LINES_PER_TASK, lines.length / (pool.getParallelism() * 4))));
+        } else {
+            evaluateRange(lines, products, quantities, deals, rules, 0, lines.length);
+        }
+        return pending;
+    }
+
+    /**
+     * Evaluates the price of one line, with the rule of the active deal of its product if it has one.
+     *
+     * @param product The snapshot of the product of the line.
+     * @param quantity The quantity of the line.
+     * @param deal The active deal of the product, or null.
+     * @param rule The compiled rule of the deal, or null if there is no deal.
+     * @return The total of the line.
+     */
+    public static LineTotal evaluateLine(final ProductSnapshot product, final int quantity, final DiscountDeal deal, final DiscountRule rule) {
+        if (deal == null) {
+            return new LineTotal(product, quantity, null, null, Money.times(product.getPrice(), quantity), false);
+        }
+        final long price = rule.priceAfterDiscount(product.getPrice(), quantity);
+        return new LineTotal(product, quantity, deal.getId(), deal.getVersion(), price, rule.isApplicable(quantity));
+    }
+
+    private static void evaluateRange(final LineTotal[] lines, final ProductSnapshot[] products, final int[] quantities,
+                                      final DiscountDeal[] deals, final DiscountRule[] rules, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (lines[i] == null) {
+                lines[i] = evaluateLine(products[i], quantities[i], deals[i], rules[i]);
+            }
+        }
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Evaluates a range of lines, splitting it in halves until it is small enough.
+     */
+    private static final class EvaluateLines extends RecursiveAction {
+        private final LineTotal[] lines;
+        private final ProductSnapshot[] products;
+        private final int[] quantities;
+        private final DiscountDeal[] deals;
+        private final DiscountRule[] rules;
+        private final int from;
+        private final int to;
+        private final int linesPerTask;
+
+        EvaluateLines(final LineTotal[] lines, final ProductSnapshot[] products, final int[] quantities, final DiscountDeal[] deals,
+                      final DiscountRule[] rules, final int from, final int to, final int linesPerTask) {
+            this.lines = lines;
+            this.products = products;
+            this.quantities = quantities;
+            this.deals = deals;
+            this.rules = rules;
+            this.from = from;
+            this.to = to;
+            this.linesPerTask = linesPerTask;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= linesPerTask) {
+                evaluateRange(lines, products, quantities, deals, rules, from, to);
+                return;
+            }
+            final int middle = (from + to) >>> 1;
+            invokeAll(new EvaluateLines(lines, products, quantities, deals, rules, from, middle, linesPerTask),
+                    new EvaluateLines(lines, products, quantities, deals, rules, middle, to, linesPerTask));
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.sample.electronicstore.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BasketEvictionReportDTO {
+    //baskets unchanged since this time were removed
+    private Instant cutoff;
+    private long basketsRemoved;
+    private long basketItemsRemoved;
+    //each batch is removed in its own transaction
+    private int batches;
+    private long elapsedMillis;
+}
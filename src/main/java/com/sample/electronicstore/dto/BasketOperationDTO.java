@@ -0,0 +1,15 @@
+package com.sample.electronicstore.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BasketOperationDTO {
+    private BasketOperationType type;
+    private Long productId;
+    //ignored by REMOVE
+    private int quantity;
+}
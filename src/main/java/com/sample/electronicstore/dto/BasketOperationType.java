@@ -0,0 +1,13 @@
+package com.sample.electronicstore.dto;
+
+/**
+ * Kinds of change a {@link BasketOperationDTO} applies to the line of a product in a basket.
+ */
+public enum BasketOperationType {
+    //adds the quantity to the line, creating it if needed
+    ADD,
+    //removes the line
+    REMOVE,
+    //sets the quantity of the line, creating it if needed, a quantity of 0 removes it
+    SET_QUANTITY
+}
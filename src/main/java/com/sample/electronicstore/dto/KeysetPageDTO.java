@@ -0,0 +1,19 @@
+package com.sample.electronicstore.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class KeysetPageDTO<T> {
+    //bounds the memory used by one page, larger requests are capped
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private List<T> items;
+    //pass as afterId to fetch the next page, null on the last page
+    private Long nextAfterId;
+}
@@ -0,0 +1,14 @@
+package com.sample.electronicstore.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductImportErrorDTO {
+    //1 based line number of the row in the import body
+    private long row;
+    private String message;
+}
@@ -0,0 +1,20 @@
+package com.sample.electronicstore.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductImportResultDTO {
+    private long rowsRead;
+    private long rowsImported;
+    private long rowsFailed;
+    //only the first errors are reported, rowsFailed has the full count
+    private List<ProductImportErrorDTO> errors;
+    private long elapsedMillis;
+    private double rowsPerSecond;
+}
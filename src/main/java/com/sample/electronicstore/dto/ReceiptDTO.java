@@ -1,10 +1,12 @@
 package com.sample.electronicstore.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
 import java.util.Set;
 
 @Data
@@ -14,6 +16,10 @@ public class ReceiptDTO {
     private Long id;
     private Long basketId;
     private Set<Long> discountDealIds;
+    private double total;
+    private List<ReceiptLineDTO> lines;
+    // text view of the receipt, only rendered on request
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private String details;
     @Schema(accessMode = Schema.AccessMode.READ_ONLY) // This field is only for reading, not for writing
     private long lastUpdated;
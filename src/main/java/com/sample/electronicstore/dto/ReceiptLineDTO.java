@@ -0,0 +1,16 @@
+package com.sample.electronicstore.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReceiptLineDTO {
+    private Long productId;
+    private int quantity;
+    private double unitPrice;
+    private double discount;
+    private Long dealId;
+}
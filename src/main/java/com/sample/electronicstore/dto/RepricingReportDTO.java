@@ -0,0 +1,21 @@
+package com.sample.electronicstore.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RepricingReportDTO {
+    //baskets holding at least one product of the proposed deals
+    private long basketsEvaluated;
+    //baskets whose total changes with the proposed deals
+    private long basketsAffected;
+    private long linesEvaluated;
+    //totals of the evaluated lines with the current and the proposed deals
+    private double currentTotal;
+    private double proposedTotal;
+    private double revenueDelta;
+    private long elapsedMillis;
+}
@@ -0,0 +1,42 @@
+package com.sample.electronicstore.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Version;
+import java.time.Instant;
+
+/**
+ * Points to the one active discount deal of a product.
+ *
+ * <p>The product id is the primary key, so the database itself guarantees that a product never has two active deals,
+ * whichever instance of the application writes them. Two concurrent swaps of the active deal of a product either
+ * collide on the primary key or on the version, and one of them is rolled back.</p>
+ */
+@Entity
+@Table(name = "active_deal")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ActiveDeal {
+    @Id
+    @Column(name = "product_id")
+    private Long productId;
+
+    @Column(name = "discount_deal_id", nullable = false)
+    private Long discountDealId;
+
+    //for optimistic locking, null until the row is inserted
+    @Version
+    private Integer version;
+
+    @UpdateTimestamp
+    @Column(name = "last_updated")
+    private Instant lastUpdated;
+}
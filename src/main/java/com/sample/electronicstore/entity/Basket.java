@@ -5,7 +5,10 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 import org.hibernate.annotations.UpdateTimestamp;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
@@ -14,20 +17,29 @@ import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
 import javax.persistence.Version;
 import java.time.Instant;
 import java.util.List;
 
 @Entity
-@Table(name = "basket")
+//the last_updated index serves the scan for idle baskets to evict
+@Table(name = "basket", uniqueConstraints = @UniqueConstraint(name = Basket.UK_CUSTOMER, columnNames = "customer_id"),
+        indexes = @Index(name = "idx_basket_last_updated", columnList = "last_updated"))
 @Data
 @NoArgsConstructor(force = true)
 @RequiredArgsConstructor
 public class Basket {
+    //name of the unique constraint on the customer, a concurrent creation of the same basket runs into it
+    public static final String UK_CUSTOMER = "uk_basket_customer";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "basket_seq")
+    @GenericGenerator(name = "basket_seq", strategy = PooledSequenceGenerator.STRATEGY,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "basket_seq"))
     private Long id;
     @NonNull
     @Column(name = "customer_id")
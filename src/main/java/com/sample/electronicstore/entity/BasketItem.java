@@ -3,7 +3,10 @@ package com.sample.electronicstore.entity;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 import org.hibernate.annotations.UpdateTimestamp;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -11,19 +14,29 @@ import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
 import java.time.Instant;
 
 @Entity
-@Table(name = "basket_item")
+//one line per product in a basket, the unique index also serves the lookup of the line of a product,
+//the product index serves the scans of the baskets holding a product
+@Table(name = "basket_item", uniqueConstraints = @UniqueConstraint(name = BasketItem.UK_BASKET_PRODUCT, columnNames = {"basket_id", "product_id"}),
+        indexes = @Index(name = "idx_basket_item_product", columnList = "product_id"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class BasketItem {
+    //name of the unique constraint on basket and product, a concurrent creation of the same line runs into it
+    public static final String UK_BASKET_PRODUCT = "uk_basket_item_basket_product";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "basket_item_seq")
+    @GenericGenerator(name = "basket_item_seq", strategy = PooledSequenceGenerator.STRATEGY,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "basket_item_seq"))
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -3,7 +3,10 @@ package com.sample.electronicstore.entity;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 import org.hibernate.annotations.UpdateTimestamp;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -11,6 +14,7 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.Version;
 import java.time.Instant;
 
 /**
@@ -24,7 +28,9 @@ import java.time.Instant;
 @AllArgsConstructor
 public class DiscountDeal {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "discount_deal_seq")
+    @GenericGenerator(name = "discount_deal_seq", strategy = PooledSequenceGenerator.STRATEGY,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "discount_deal_seq"))
     private Long id;
     //id of the product that is having some discount setup on it
     @Column(name = "product_id")
@@ -38,4 +44,8 @@ public class DiscountDeal {
     @UpdateTimestamp
     @Column(name = "last_updated")
     private Instant lastUpdated;
+
+    //for optimistic locking, also published as the version of the change events of this deal
+    @Version
+    private int version;
 }
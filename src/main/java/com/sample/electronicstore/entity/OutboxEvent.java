@@ -0,0 +1,62 @@
+package com.sample.electronicstore.entity;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import com.sample.electronicstore.event.ChangeType;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import java.time.Instant;
+
+/**
+ * A change of a product or a discount deal, written in the transaction of the change and kept for the retention of the
+ * outbox, so every instance publishes it, see {@link com.sample.electronicstore.event.Outbox}.
+ */
+@Entity
+//the created_at index serves the reads of each instance from its position and the retention sweep
+@Table(name = "outbox_event", indexes = @Index(name = "idx_outbox_event_created_at", columnList = "created_at"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxEvent {
+    //orders the dispatch of changes created at the same time
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_event_seq")
+    @GenericGenerator(name = "outbox_event_seq", strategy = PooledSequenceGenerator.STRATEGY,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "outbox_event_seq"))
+    private Long id;
+    //name of the changed entity, for example product
+    @Column(nullable = false)
+    private String entity;
+    //id of the changed entity
+    @Column(name = "entity_id", nullable = false)
+    private Long entityId;
+    //id of the product the change concerns, kept so a removed deal can still be traced to its product
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+    //version of the entity written by the change, see ChangeEvent#getVersion
+    @Column(name = "entity_version", nullable = false)
+    private int entityVersion;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "change_type", nullable = false)
+    private ChangeType changeType;
+
+    //set when the change is flushed, each instance publishes the changes in this order
+    @CreationTimestamp
+    @Column(name = "created_at")
+    private Instant createdAt;
+}
@@ -6,11 +6,15 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.Version;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 import org.hibernate.annotations.UpdateTimestamp;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import java.time.Instant;
 
@@ -23,18 +27,25 @@ import java.time.Instant;
 @NoArgsConstructor
 @AllArgsConstructor
 public class Product {
+    //pooled sequence, so inserts of many products can be sent as JDBC batches
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_seq")
+    @GenericGenerator(name = "product_seq", strategy = PooledSequenceGenerator.STRATEGY,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "product_seq"))
     private Long id;
     //name of the Product
     @Column(unique = true, nullable = false)
     private String name;
     //description, about the product
     private String description;
-    //price of the product
-    private double price;
+    //price of the product in minor units (cents), see Money
+    private long price;
 
     @UpdateTimestamp
     @Column(name = "last_updated")
     private Instant lastUpdated;
+
+    //for optimistic locking, also published as the version of the change events of this product
+    @Version
+    private int version;
 }
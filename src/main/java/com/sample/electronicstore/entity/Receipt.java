@@ -3,7 +3,10 @@ package com.sample.electronicstore.entity;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 import org.hibernate.annotations.UpdateTimestamp;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -14,17 +17,21 @@ import javax.persistence.JoinColumn;
 import javax.persistence.JoinTable;
 import javax.persistence.ManyToMany;
 import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
 import java.time.Instant;
 import java.util.Set;
 
 @Entity
-@Table(name = "receipt")
+@Table(name = "receipt", uniqueConstraints =
+        @UniqueConstraint(name = "uk_receipt_basket_version_deals", columnNames = {"basket_id", "basket_version", "deal_set_hash"}))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Receipt {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "receipt_seq")
+    @GenericGenerator(name = "receipt_seq", strategy = PooledSequenceGenerator.STRATEGY,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "receipt_seq"))
     private Long id;
     @Column(name = "basket_id")
     private Long basketId;
@@ -33,9 +40,16 @@ public class Receipt {
     @JoinTable(
             name = "receipt_discount_deal", joinColumns = @JoinColumn(name = "receipt_id"), inverseJoinColumns = @JoinColumn(name = "discount_deal_id"))
     private Set<DiscountDeal> discountDeals;
-    private double total;
+    //in minor units (cents), see Money
+    private long total;
     @UpdateTimestamp
     @Column(name = "last_updated")
     private Instant lastUpdated;
+    //version of the basket the receipt was calculated for
+    @Column(name = "basket_version")
+    private int basketVersion;
+    //hash of the product prices and active deals the receipt was calculated with
+    @Column(name = "deal_set_hash", length = 64)
+    private String dealSetHash;
 }
 
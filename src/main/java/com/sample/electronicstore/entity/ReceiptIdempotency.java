@@ -0,0 +1,36 @@
+package com.sample.electronicstore.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Links the idempotency key of a receipt request to the receipt it returned.
+ *
+ * <p>The link is written on every request with a key, also when an existing receipt is returned, so a retry with the
+ * key returns the same receipt after the basket changed. The key is the primary key, a key is only ever linked to
+ * one receipt.</p>
+ */
+@Entity
+@Table(name = "receipt_idempotency")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReceiptIdempotency {
+    //key sent by the client in the Idempotency-Key header
+    @Id
+    @Column(name = "idempotency_key", length = 128)
+    private String idempotencyKey;
+
+    @Column(name = "receipt_id", nullable = false)
+    private Long receiptId;
+
+    //basket of the receipt, a key is rejected for any other basket
+    @Column(name = "basket_id", nullable = false)
+    private Long basketId;
+}
@@ -0,0 +1,46 @@
+package com.sample.electronicstore.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * One line of a receipt, the product, quantity and prices the line was calculated with.
+ */
+@Entity
+@Table(name = "receipt_line", indexes = @Index(name = "idx_receipt_line_receipt", columnList = "receipt_id"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReceiptLine {
+    //pooled sequence, so the lines of a receipt are inserted as one JDBC batch
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "receipt_line_seq")
+    @GenericGenerator(name = "receipt_line_seq", strategy = PooledSequenceGenerator.STRATEGY,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "receipt_line_seq"))
+    private Long id;
+    @Column(name = "receipt_id", nullable = false)
+    private Long receiptId;
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+    private int quantity;
+    //unit price of the product when the receipt was calculated, in minor units (cents), see Money
+    @Column(name = "unit_price")
+    private long unitPrice;
+    //amount taken off the line by the applied deal, in minor units (cents)
+    private long discount;
+    //deal applied to the line, null if no discount was applied
+    @Column(name = "deal_id")
+    private Long dealId;
+}
@@ -0,0 +1,30 @@
+package com.sample.electronicstore.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * A committed change of a product or a discount deal. The event only names the entity, listeners read its current
+ * state if they need it.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChangeEvent {
+    public static final String PRODUCT = "product";
+    public static final String DISCOUNT_DEAL = "discount_deal";
+
+    //name of the changed entity, PRODUCT or DISCOUNT_DEAL
+    private String entity;
+    private Long entityId;
+    //id of the product the change concerns, the entity id for a product, the product of the deal for a deal
+    private Long productId;
+    //version of the entity written by the change, increases with every committed change of the entity on any instance,
+    //a listener can skip an event older than one it has already seen for the same entity
+    private long version;
+    private ChangeType changeType;
+    private Instant occurredAt;
+}
@@ -0,0 +1,18 @@
+package com.sample.electronicstore.event;
+
+/**
+ * Where the {@link OutboxDispatcher} publishes the committed changes. The default is the {@link InMemoryChangeEventBus},
+ * a bean implementing this interface replaces it, for example to forward the changes to a message broker.
+ */
+public interface ChangeEventBus {
+
+    /**
+     * Publishes a change. If this throws the change is published again by the next dispatch, so a change can be
+     * published more than once. A change is only read if it commits within {@code store.events.lag-ms} of its
+     * creation time, taken from the clock of the writing instance, and that clock is behind the one of the reading
+     * instance by less than the rest of the lag. A change outside that bound is skipped by every instance.
+     *
+     * @param event The committed change.
+     */
+    void publish(ChangeEvent event);
+}
@@ -0,0 +1,17 @@
+package com.sample.electronicstore.event;
+
+/**
+ * Receives the committed changes of products and discount deals from the {@link InMemoryChangeEventBus}.
+ */
+@FunctionalInterface
+public interface ChangeEventListener {
+
+    /**
+     * Called at least once per change. A change can be delivered twice, and the changes of one entity can arrive out
+     * of the order of their versions, when they come from different instances or commit late, so a listener should
+     * read the current state of the entity or compare the versions rather than apply the events in arrival order.
+     *
+     * @param event The committed change.
+     */
+    void onChange(ChangeEvent event);
+}
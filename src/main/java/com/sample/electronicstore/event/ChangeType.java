@@ -0,0 +1,10 @@
+package com.sample.electronicstore.event;
+
+/**
+ * Kind of change of an entity.
+ */
+public enum ChangeType {
+    //created or updated
+    SAVED,
+    REMOVED
+}
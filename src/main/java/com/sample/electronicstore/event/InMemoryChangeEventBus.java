@@ -0,0 +1,48 @@
+package com.sample.electronicstore.event;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Delivers the committed changes to the listeners of this instance, on the dispatcher thread.
+ * A listener that fails is logged and doesn't stop the delivery to the other listeners.
+ */
+public class InMemoryChangeEventBus implements ChangeEventBus {
+    private final List<ChangeEventListener> listeners = new CopyOnWriteArrayList<>();
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryChangeEventBus.class);
+
+    /**
+     * Constructs an InMemoryChangeEventBus.
+     *
+     * @param listeners The listeners registered as beans.
+     */
+    public InMemoryChangeEventBus(final List<ChangeEventListener> listeners) {
+        this.listeners.addAll(listeners);
+    }
+
+    /**
+     * Registers a listener for the changes published from now on.
+     *
+     * @param listener The listener.
+     * @return A handle that unregisters the listener when closed.
+     */
+    public AutoCloseable register(final ChangeEventListener listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    @Override
+    public void publish(final ChangeEvent event) {
+        for (final ChangeEventListener listener : listeners) {
+            try {
+                listener.onChange(event);
+            } catch (RuntimeException e) {
+                logger.error("change listener {} failed for {}", listener, event, e);
+            }
+        }
+    }
+}
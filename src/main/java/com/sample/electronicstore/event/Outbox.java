@@ -0,0 +1,83 @@
+package com.sample.electronicstore.event;
+
+import com.sample.electronicstore.entity.OutboxEvent;
+import com.sample.electronicstore.repository.OutboxEventRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the changes of products and discount deals in the outbox_event table, in the transaction of the change.
+ *
+ * <p>A change is only published if its transaction commits, and it is published even if the application stops right
+ * after the commit, because the outbox row commits or rolls back with the change itself. The {@link OutboxDispatcher}
+ * is woken up after the commit to publish it.</p>
+ */
+@Component
+public class Outbox {
+    private final OutboxEventRepository outboxEventRepository;
+    private final OutboxDispatcher outboxDispatcher;
+
+    /**
+     * Constructs an Outbox.
+     *
+     * @param outboxEventRepository Repository the changes are written to.
+     * @param outboxDispatcher Dispatcher woken up when a change commits.
+     */
+    @Autowired
+    public Outbox(final OutboxEventRepository outboxEventRepository, final OutboxDispatcher outboxDispatcher) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.outboxDispatcher = outboxDispatcher;
+    }
+
+    /**
+     * Records a change of an entity. Must be called inside the transaction of the change, after the change is flushed,
+     * so the version is the one the change wrote.
+     *
+     * @param entity The name of the entity, {@link ChangeEvent#PRODUCT} or {@link ChangeEvent#DISCOUNT_DEAL}.
+     * @param entityId The id of the entity.
+     * @param productId The id of the product the change concerns, the entity id for a product.
+     * @param entityVersion The version of the entity written by the change, for a removal one more than its last version.
+     * @param changeType The kind of change.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(final String entity, final Long entityId, final Long productId, final int entityVersion,
+                       final ChangeType changeType) {
+        outboxEventRepository.save(new OutboxEvent(null, entity, entityId, productId, entityVersion, changeType, null));
+        dispatchAfterCommit();
+    }
+
+    /**
+     * Records the same kind of change of many products. Must be called inside the transaction of the changes, after
+     * they are flushed.
+     *
+     * @param productVersions The version written by the change of each product, by product id.
+     * @param changeType The kind of change.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordProducts(final Map<Long, Integer> productVersions, final ChangeType changeType) {
+        final List<OutboxEvent> events = new ArrayList<>(productVersions.size());
+        for (final Map.Entry<Long, Integer> productVersion : productVersions.entrySet()) {
+            events.add(new OutboxEvent(null, ChangeEvent.PRODUCT, productVersion.getKey(), productVersion.getKey(),
+                    productVersion.getValue(), changeType, null));
+        }
+        outboxEventRepository.saveAll(events);
+        dispatchAfterCommit();
+    }
+
+    private void dispatchAfterCommit() {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                outboxDispatcher.dispatchSoon();
+            }
+        });
+    }
+}
@@ -0,0 +1,202 @@
+package com.sample.electronicstore.event;
+
+import com.sample.electronicstore.entity.OutboxEvent;
+import com.sample.electronicstore.metrics.StoreMetrics;
+import com.sample.electronicstore.repository.OutboxEventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Publishes the changes recorded by the {@link Outbox} to the {@link ChangeEventBus} of this instance, in the order
+ * they were created.
+ *
+ * <p>The changes are published by a single thread in batches of {@code store.events.batch-size}. The thread is woken
+ * up when a change commits and also polls the outbox every {@code store.events.poll-interval-ms}, which publishes the
+ * changes committed by other instances and the ones left over by a failed publish.</p>
+ *
+ * <p>Reading doesn't remove a change, every instance keeps its own position in the outbox, so every instance publishes
+ * every change. The position is the creation time of the changes, kept {@code store.events.lag-ms} behind the last
+ * read, because a change becomes visible when its transaction commits, which may be after a later change of another
+ * transaction or instance was read. The lag must cover the longest transaction writing changes and the clock skew
+ * between the instances. The changes read within the lag are read again, the ids already published are skipped.
+ * An instance starts at its start time, the changes before it are already in the state its caches load.</p>
+ *
+ * <p>The ids come from a pooled sequence, each instance takes its own block of them, so they only order the changes
+ * written by one instance. The version of an event is the {@code @Version} of the product or deal the change wrote,
+ * which a concurrent change of the same entity on any instance can't reuse, so the versions of one entity follow the
+ * order of their commits even when the events arrive in another order.</p>
+ *
+ * <p>Delivery is at least once within the lag: a change whose publish failed is published again by the next dispatch,
+ * but a change that commits later than the lag after its creation time, or whose writer's clock is further behind,
+ * is already behind the position of every instance and is never published. The changes older than
+ * {@code store.events.retention-minutes} are removed by a sweep every {@code store.events.sweep-interval-ms}.</p>
+ */
+@Component
+public class OutboxDispatcher {
+    private final OutboxEventRepository outboxEventRepository;
+    private final ChangeEventBus changeEventBus;
+    private final StoreMetrics storeMetrics;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long pollIntervalMillis;
+    private final long lagMillis;
+    private final long retentionMillis;
+    private final long sweepIntervalMillis;
+    private final AtomicBoolean dispatchScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService executor;
+    //position of this instance in the outbox and the changes published since, only used by the dispatcher thread
+    private Instant position;
+    private final Map<Long, Instant> publishedIds = new HashMap<>();
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxDispatcher.class);
+
+    /**
+     * Constructs an OutboxDispatcher.
+     *
+     * @param outboxEventRepository Repository the changes are read from and removed from.
+     * @param changeEventBus Bus the changes are published to.
+     * @param storeMetrics Metrics the published changes are counted in.
+     * @param transactionManager Transaction manager used to read each batch and to run each sweep in its own transaction.
+     * @param batchSize The number of changes read at once.
+     * @param pollIntervalMillis The time between two polls of the outbox, zero or less to only dispatch when a change commits.
+     * @param lagMillis The time the position is kept behind the last read, for the changes that commit late.
+     * @param retentionMinutes The time a change is kept in the outbox.
+     * @param sweepIntervalMillis The time between two sweeps of the outbox, zero or less to not sweep.
+     */
+    @Autowired
+    public OutboxDispatcher(final OutboxEventRepository outboxEventRepository, final ChangeEventBus changeEventBus,
+                            final StoreMetrics storeMetrics, final PlatformTransactionManager transactionManager,
+                            @Value("${store.events.batch-size:100}") final int batchSize,
+                            @Value("${store.events.poll-interval-ms:1000}") final long pollIntervalMillis,
+                            @Value("${store.events.lag-ms:5000}") final long lagMillis,
+                            @Value("${store.events.retention-minutes:60}") final long retentionMinutes,
+                            @Value("${store.events.sweep-interval-ms:60000}") final long sweepIntervalMillis) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.changeEventBus = changeEventBus;
+        this.storeMetrics = storeMetrics;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = Math.max(1, batchSize);
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.lagMillis = Math.max(0, lagMillis);
+        // a change is never removed before every instance had the time to read it
+        this.retentionMillis = Math.max(TimeUnit.MINUTES.toMillis(retentionMinutes), 2 * this.lagMillis);
+        this.sweepIntervalMillis = sweepIntervalMillis;
+        this.position = Instant.now().minusMillis(this.lagMillis);
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "outbox-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts polling and sweeping the outbox once the application is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (pollIntervalMillis > 0) {
+            executor.scheduleWithFixedDelay(this::dispatchSoon, 0, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            dispatchSoon();
+        }
+        if (sweepIntervalMillis > 0) {
+            executor.scheduleWithFixedDelay(this::sweep, sweepIntervalMillis, sweepIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Publishes the recorded changes on the dispatcher thread, unless a dispatch is already waiting to run.
+     */
+    public void dispatchSoon() {
+        if (dispatchScheduled.compareAndSet(false, true)) {
+            executor.execute(this::dispatch);
+        }
+    }
+
+    private void dispatch() {
+        // cleared first, a change committed while this dispatch runs schedules the next one
+        dispatchScheduled.set(false);
+        final Instant readStart = Instant.now();
+        try {
+            Instant afterCreatedAt = position;
+            Long afterId = Long.MIN_VALUE;
+            List<OutboxEvent> events;
+            do {
+                final Instant lastCreatedAt = afterCreatedAt;
+                final Long lastId = afterId;
+                events = transactionTemplate.execute(status ->
+                        outboxEventRepository.findAfter(lastCreatedAt, lastId, PageRequest.of(0, batchSize)));
+                for (final OutboxEvent event : events) {
+                    publish(event);
+                    afterCreatedAt = event.getCreatedAt();
+                    afterId = event.getId();
+                }
+            } while (events.size() == batchSize);
+        } catch (RuntimeException e) {
+            logger.error("publishing the outbox failed, retrying on the next dispatch", e);
+            return;
+        }
+        // every change created before the lag has committed by now, it is read for the last time
+        final Instant nextPosition = readStart.minusMillis(lagMillis);
+        if (nextPosition.isAfter(position)) {
+            position = nextPosition;
+            publishedIds.values().removeIf(createdAt -> createdAt.isBefore(nextPosition));
+        }
+    }
+
+    /**
+     * Publishes a change unless this instance already published it.
+     */
+    private void publish(final OutboxEvent event) {
+        if (publishedIds.containsKey(event.getId())) {
+            return;
+        }
+        changeEventBus.publish(new ChangeEvent(event.getEntity(), event.getEntityId(), event.getProductId(), event.getEntityVersion(),
+                event.getChangeType(), event.getCreatedAt()));
+        publishedIds.put(event.getId(), event.getCreatedAt());
+        storeMetrics.recordChangeEventPublished(event.getEntity());
+    }
+
+    /**
+     * Removes the changes older than the retention from the outbox.
+     *
+     * @return The number of changes removed.
+     */
+    public int sweep() {
+        return removeCreatedBefore(Instant.now().minusMillis(retentionMillis));
+    }
+
+    int removeCreatedBefore(final Instant cutoff) {
+        try {
+            final int removed = transactionTemplate.execute(status -> outboxEventRepository.deleteCreatedBefore(cutoff));
+            logger.info("removed {} changes created before {} from the outbox", removed, cutoff);
+            return removed;
+        } catch (RuntimeException e) {
+            logger.error("sweeping the outbox failed, retrying on the next sweep", e);
+            return 0;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
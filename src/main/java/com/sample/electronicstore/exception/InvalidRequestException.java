@@ -0,0 +1,15 @@
+package com.sample.electronicstore.exception;
+
+/**
+ * This is custom exception being thrown in case of a request carries invalid data, the request can't succeed
+ * unless the data is corrected.
+ */
+public class InvalidRequestException extends StoreOperationException {
+    public InvalidRequestException(final String message) {
+        super(message);
+    }
+
+    public InvalidRequestException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,161 @@
+package com.sample.electronicstore.lock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Striped lock manager, keys are hashed onto a fixed number of {@link ReentrantLock}s so writes on different
+ * keys (for example different products) run in parallel while writes on the same key are serialized.
+ *
+ * <p>When called inside a transaction the locks are held until the transaction has committed or rolled back,
+ * so the next writer on the same key always reads the committed state. Outside a transaction they are
+ * released when the action returns.</p>
+ *
+ * <p>The time spent waiting for locks is recorded and exposed through the getters of this class.
+ * Like the global lock it replaces, this only protects writes within one instance of the application.</p>
+ */
+@Component
+public class StripedLockManager {
+
+    private final ReentrantLock[] stripes;
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contendedAcquisitions = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * Constructs a StripedLockManager.
+     *
+     * @param stripeCount The number of locks, rounded up to a power of two.
+     */
+    @Autowired
+    public StripedLockManager(@Value("${store.locks.stripes:64}") final int stripeCount) {
+        int size = 1;
+        while (size < stripeCount) {
+            size <<= 1;
+        }
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Runs the action while holding the locks of all the given keys. Locks are taken in stripe order,
+     * so callers locking several keys can't deadlock each other.
+     *
+     * @param action The action to run.
+     * @param keys The keys to lock.
+     * @return The result of the action.
+     */
+    public <T> T withLocks(final Supplier<T> action, final Object... keys) {
+        final int[] indexes = Arrays.stream(keys).mapToInt(this::stripeFor).sorted().distinct().toArray();
+        final ReentrantLock[] locks = new ReentrantLock[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            locks[i] = stripes[indexes[i]];
+        }
+        int locked = 0;
+        try {
+            for (final ReentrantLock lock : locks) {
+                acquire(lock);
+                locked++;
+            }
+        } catch (RuntimeException e) {
+            unlock(locks, locked);
+            throw e;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // keep the stripes until the transaction completes, so the next writer sees the committed state
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(final int status) {
+                    unlock(locks, locks.length);
+                }
+            });
+            return action.get();
+        }
+        try {
+            return action.get();
+        } finally {
+            unlock(locks, locks.length);
+        }
+    }
+
+    /**
+     * Runs the action while holding the lock of the given key.
+     *
+     * @param key The key to lock.
+     * @param action The action to run.
+     * @return The result of the action.
+     */
+    public <T> T withLock(final Object key, final Supplier<T> action) {
+        return withLocks(action, key);
+    }
+
+    /**
+     * Runs the action while holding the lock of the given key.
+     *
+     * @param key The key to lock.
+     * @param action The action to run.
+     */
+    public void withLock(final Object key, final Runnable action) {
+        withLocks(() -> {
+            action.run();
+            return null;
+        }, key);
+    }
+
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    public long getContendedAcquisitions() {
+        return contendedAcquisitions.sum();
+    }
+
+    public long getTotalWaitNanos() {
+        return totalWaitNanos.sum();
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    int stripeFor(final Object key) {
+        final int hash = key.hashCode();
+        // spread the high bits, the same way HashMap does
+        return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+    }
+
+    private void acquire(final ReentrantLock lock) {
+        acquisitions.increment();
+        if (lock.tryLock()) {
+            return;
+        }
+        contendedAcquisitions.increment();
+        final long start = System.nanoTime();
+        lock.lock();
+        final long waited = System.nanoTime() - start;
+        totalWaitNanos.add(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+    }
+
+    private static void unlock(final ReentrantLock[] locks, final int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            locks[i].unlock();
+        }
+    }
+}
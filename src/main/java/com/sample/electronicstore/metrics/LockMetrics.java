@@ -0,0 +1,46 @@
+package com.sample.electronicstore.metrics;
+
+import com.sample.electronicstore.lock.StripedLockManager;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the wait statistics of the {@link StripedLockManager} service locks.
+ * {@code store.locks.wait} counts the contended acquisitions with the total time spent waiting for them.
+ */
+@Component
+public class LockMetrics implements MeterBinder {
+    private final StripedLockManager lockManager;
+
+    /**
+     * Constructs a LockMetrics.
+     *
+     * @param lockManager The lock manager of the services.
+     */
+    @Autowired
+    public LockMetrics(final StripedLockManager lockManager) {
+        this.lockManager = lockManager;
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        FunctionCounter.builder("store.locks.acquisitions", lockManager, StripedLockManager::getAcquisitions)
+                .description("Lock acquisitions, contended or not")
+                .register(registry);
+        FunctionTimer.builder("store.locks.wait", lockManager, StripedLockManager::getContendedAcquisitions,
+                        StripedLockManager::getTotalWaitNanos, TimeUnit.NANOSECONDS)
+                .description("Time spent waiting for contended locks")
+                .register(registry);
+        Gauge.builder("store.locks.wait.max", lockManager, manager -> manager.getMaxWaitNanos() / 1_000_000_000.0)
+                .description("Longest wait for a lock since startup")
+                .baseUnit("seconds")
+                .register(registry);
+    }
+}
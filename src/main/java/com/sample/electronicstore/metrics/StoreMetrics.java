@@ -0,0 +1,239 @@
+package com.sample.electronicstore.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Metrics of the store operations, published through Micrometer and scraped from /actuator/prometheus.
+ *
+ * <ul>
+ *     <li>{@code store.operation} timer per operation and outcome, with a percentile histogram for p99 latency.</li>
+ *     <li>{@code store.basket.size} distribution of the number of lines of the baskets checked out.</li>
+ *     <li>{@code store.receipt.lines} counter of receipt lines by discount, applied or none, for the discount-applied ratio.</li>
+ *     <li>{@code store.receipt.cache} counter of receipts served from the cached basket totals (hit) or calculated (miss).</li>
+ *     <li>{@code store.receipt.lines.evaluated} counter of receipt lines whose price was evaluated, the other lines reused a cached total.</li>
+ *     <li>{@code store.conflicts} counter of optimistic lock conflicts by entity.</li>
+ *     <li>{@code store.retries} and {@code store.retries.exhausted} counters of retried conflicts and of writes that
+ *     still conflicted after their last attempt, by entity.</li>
+ * </ul>
+ *
+ * <p>Operations are timed inside the service method, the commit of a service transaction is part of the
+ * {@code http.server.requests} timer of the request.</p>
+ */
+@Component
+public class StoreMetrics {
+    public static final String BASKET_ADD = "basket.add";
+    public static final String BASKET_REMOVE = "basket.remove";
+    public static final String BASKET_BATCH = "basket.batch";
+    public static final String RECEIPT_CALCULATE = "receipt.calculate";
+    public static final String PRODUCT_SAVE = "product.save";
+    public static final String DEAL_SAVE = "deal.save";
+    public static final String DEAL_WHAT_IF = "deal.whatif";
+    public static final String BASKET_EVICTION = "basket.eviction";
+    public static final String REACTIVE_BASKET_ADD = "reactive.basket.add";
+    public static final String REACTIVE_BASKET_REMOVE = "reactive.basket.remove";
+    public static final String REACTIVE_RECEIPT_CALCULATE = "reactive.receipt.calculate";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final DistributionSummary basketSize;
+    private final Counter discountedLines;
+    private final Counter fullPriceLines;
+    private final Counter receiptCacheHits;
+    private final Counter receiptCacheMisses;
+    private final Counter evaluatedReceiptLines;
+
+    /**
+     * Constructs a StoreMetrics.
+     *
+     * @param meterRegistry Registry the metrics are published to.
+     */
+    @Autowired
+    public StoreMetrics(final MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.basketSize = DistributionSummary.builder("store.basket.size")
+                .description("Number of lines of the baskets a receipt is calculated for")
+                .baseUnit("lines")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.discountedLines = receiptLines("applied");
+        this.fullPriceLines = receiptLines("none");
+        this.receiptCacheHits = receiptCache("hit");
+        this.receiptCacheMisses = receiptCache("miss");
+        this.evaluatedReceiptLines = Counter.builder("store.receipt.lines.evaluated")
+                .description("Receipt lines whose price was evaluated")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the action and records its duration under the given operation, tagged with its outcome.
+     *
+     * @param operation The name of the operation.
+     * @param action The action to run.
+     * @return The result of the action.
+     */
+    public <T> T time(final String operation, final Supplier<T> action) {
+        final Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "failure";
+        try {
+            final T result = action.get();
+            outcome = "success";
+            return result;
+        } finally {
+            sample.stop(timer(operation, outcome));
+        }
+    }
+
+    /**
+     * Runs the action and records its duration under the given operation, tagged with its outcome.
+     *
+     * @param operation The name of the operation.
+     * @param action The action to run.
+     */
+    public void time(final String operation, final Runnable action) {
+        time(operation, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Records the duration of the action from its subscription to its completion under the given operation,
+     * tagged with its outcome. A cancelled action is not recorded.
+     *
+     * @param operation The name of the operation.
+     * @param action The action to run.
+     * @return The action, timed.
+     */
+    public <T> Mono<T> time(final String operation, final Mono<T> action) {
+        return Mono.defer(() -> {
+            final Timer.Sample sample = Timer.start(meterRegistry);
+            return action.doOnSuccess(result -> sample.stop(timer(operation, "success")))
+                    .doOnError(e -> sample.stop(timer(operation, "failure")));
+        });
+    }
+
+    /**
+     * Records a calculated receipt.
+     *
+     * @param lines The number of lines of the basket.
+     * @param discounted The number of lines a discount was applied to.
+     */
+    public void recordReceipt(final int lines, final int discounted) {
+        basketSize.record(lines);
+        discountedLines.increment(discounted);
+        fullPriceLines.increment(lines - discounted);
+    }
+
+    /**
+     * Records whether a receipt was served from the cached totals of its basket.
+     *
+     * @param hit True if the cached receipt was returned, false if the receipt was calculated.
+     * @param evaluatedLines The number of lines whose price was evaluated.
+     */
+    public void recordReceiptCache(final boolean hit, final int evaluatedLines) {
+        (hit ? receiptCacheHits : receiptCacheMisses).increment();
+        evaluatedReceiptLines.increment(evaluatedLines);
+    }
+
+    /**
+     * Records a write that failed because of a concurrent write of the same entity.
+     *
+     * @param entity The name of the entity, for example basket.
+     */
+    public void recordConflict(final String entity) {
+        Counter.builder("store.conflicts")
+                .description("Optimistic lock conflicts")
+                .tag("entity", entity)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * Records a write that is attempted again after a conflict with a concurrent write of the same entity.
+     *
+     * @param entity The name of the entity, for example basket.
+     */
+    public void recordRetry(final String entity) {
+        Counter.builder("store.retries")
+                .description("Writes retried after an optimistic lock conflict")
+                .tag("entity", entity)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * Records a write that gave up because it still conflicted after its last attempt.
+     *
+     * @param entity The name of the entity, for example basket.
+     */
+    public void recordRetryExhausted(final String entity) {
+        Counter.builder("store.retries.exhausted")
+                .description("Writes that still conflicted after their last attempt")
+                .tag("entity", entity)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * Records the rows removed by a run of the eviction of idle baskets.
+     *
+     * @param baskets The number of removed baskets.
+     * @param basketItems The number of removed basket items.
+     */
+    public void recordBasketEviction(final long baskets, final long basketItems) {
+        Counter.builder("store.baskets.evicted")
+                .description("Idle baskets removed")
+                .register(meterRegistry)
+                .increment(baskets);
+        Counter.builder("store.basket-items.evicted")
+                .description("Items of idle baskets removed")
+                .register(meterRegistry)
+                .increment(basketItems);
+    }
+
+    /**
+     * Records a committed change published from the outbox.
+     *
+     * @param entity The name of the changed entity, for example product.
+     */
+    public void recordChangeEventPublished(final String entity) {
+        Counter.builder("store.events.published")
+                .description("Committed changes published from the outbox")
+                .tag("entity", entity)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private Timer timer(final String operation, final String outcome) {
+        return timers.computeIfAbsent(operation + ':' + outcome, key -> Timer.builder("store.operation")
+                .description("Duration of store operations")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    private Counter receiptLines(final String discount) {
+        return Counter.builder("store.receipt.lines")
+                .description("Receipt lines by discount")
+                .tag("discount", discount)
+                .register(meterRegistry);
+    }
+
+    private Counter receiptCache(final String result) {
+        return Counter.builder("store.receipt.cache")
+                .description("Receipts served from cached basket totals")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
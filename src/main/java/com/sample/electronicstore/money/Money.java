@@ -0,0 +1,133 @@
+package com.sample.electronicstore.money;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point money arithmetic on amounts held as a {@code long} number of minor units (cents).
+ *
+ * <p>Prices and totals are stored and calculated in minor units, so sums of many lines are exact and there is no
+ * rounding drift as with {@code double}. The pricing kernels only take and return primitives and never allocate,
+ * so they can run on the receipt hot path. Rounding only happens where an amount is divided, for example a
+ * percentage discount, and the rounding mode is always given explicitly. Conversions from and to decimal amounts
+ * are meant for the API boundary.</p>
+ */
+public final class Money {
+
+    //number of decimal places of an amount in major units
+    public static final int SCALE = 2;
+    public static final long MINOR_UNITS_PER_MAJOR = 100;
+
+    private Money() {
+    }
+
+    /**
+     * Converts a decimal amount in major units to minor units, rounding half up to the nearest minor unit.
+     *
+     * @param amount The amount in major units, for example 12.5.
+     * @return The amount in minor units, for example 1250.
+     * @throws ArithmeticException if the amount doesn't fit in a long.
+     */
+    public static long ofMajor(final double amount) {
+        // valueOf uses the shortest decimal representation of the double, so 1.005 is 1.005 and not 1.00499...
+        return BigDecimal.valueOf(amount).setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Converts an amount in minor units to a decimal amount in major units.
+     *
+     * @param minor The amount in minor units.
+     * @return The amount in major units.
+     */
+    public static double toMajor(final long minor) {
+        return minor / (double) MINOR_UNITS_PER_MAJOR;
+    }
+
+    /**
+     * Multiplies a unit price by a quantity.
+     *
+     * @param unitPrice The price of one item in minor units.
+     * @param quantity The number of items.
+     * @return The price of all items in minor units.
+     * @throws ArithmeticException if the result overflows.
+     */
+    public static long times(final long unitPrice, final int quantity) {
+        return Math.multiplyExact(unitPrice, quantity);
+    }
+
+    /**
+     * Calculates a percentage of an amount, rounded to a whole minor unit with the given rounding mode.
+     *
+     * @param amount The amount in minor units.
+     * @param percent The percentage, for example 50.
+     * @param roundingMode How a fraction of a minor unit is rounded.
+     * @return The percentage of the amount in minor units.
+     * @throws ArithmeticException if the result overflows, or needs rounding and the mode is UNNECESSARY.
+     */
+    public static long percentOf(final long amount, final int percent, final RoundingMode roundingMode) {
+        return divide(Math.multiplyExact(amount, percent), 100, roundingMode);
+    }
+
+    /**
+     * Divides two longs and rounds the quotient with the given rounding mode, like {@link BigDecimal#divide}
+     * with scale 0 but without allocating.
+     *
+     * @param dividend The dividend.
+     * @param divisor The divisor, not zero.
+     * @param roundingMode How a remainder is rounded.
+     * @return The rounded quotient.
+     * @throws ArithmeticException if the divisor is zero, or the division needs rounding and the mode is UNNECESSARY.
+     */
+    public static long divide(final long dividend, final long divisor, final RoundingMode roundingMode) {
+        final long quotient = dividend / divisor;
+        final long remainder = dividend - quotient * divisor;
+        if (remainder == 0) {
+            return quotient;
+        }
+        // 1 if the exact quotient is positive, -1 if it is negative
+        final int signum = 1 | (int) ((dividend ^ divisor) >> (Long.SIZE - 1));
+        final boolean increment;
+        switch (roundingMode) {
+            case UNNECESSARY:
+                throw new ArithmeticException("Rounding necessary");
+            case DOWN:
+                increment = false;
+                break;
+            case UP:
+                increment = true;
+                break;
+            case CEILING:
+                increment = signum > 0;
+                break;
+            case FLOOR:
+                increment = signum < 0;
+                break;
+            case HALF_UP:
+            case HALF_DOWN:
+            case HALF_EVEN:
+                final long absRemainder = Math.abs(remainder);
+                // compares the remainder with half of the divisor without overflowing
+                final long halfComparison = absRemainder - (Math.abs(divisor) - absRemainder);
+                if (halfComparison == 0) {
+                    increment = roundingMode == RoundingMode.HALF_UP
+                            || (roundingMode == RoundingMode.HALF_EVEN && (quotient & 1) != 0);
+                } else {
+                    increment = halfComparison > 0;
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported rounding mode " + roundingMode);
+        }
+        return increment ? quotient + signum : quotient;
+    }
+
+    /**
+     * Formats an amount in minor units as a decimal amount in major units, for example 1250 as "12.50".
+     *
+     * @param minor The amount in minor units.
+     * @return The formatted amount.
+     */
+    public static String format(final long minor) {
+        return BigDecimal.valueOf(minor, SCALE).toPlainString();
+    }
+}
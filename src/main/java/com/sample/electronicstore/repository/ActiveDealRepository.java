@@ -0,0 +1,7 @@
+package com.sample.electronicstore.repository;
+
+import com.sample.electronicstore.entity.ActiveDeal;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface ActiveDealRepository extends JpaRepository<ActiveDeal, Long> {
+}
@@ -1,7 +1,55 @@
 package com.sample.electronicstore.repository;
 
 import com.sample.electronicstore.entity.BasketItem;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface BasketItemRepository extends JpaRepository<BasketItem, Long> {
+
+    //ids of the baskets holding any of the products, after the given basket id, for keyset scans in chunks
+    @Query("select distinct i.basket.id from BasketItem i where i.product.id in :productIds and i.basket.id > :afterId order by i.basket.id")
+    List<Long> findBasketIdsWithProducts(@Param("productIds") final Collection<Long> productIds, @Param("afterId") final Long afterId,
+                                         final Pageable pageable);
+
+    //lines of the products in the baskets, ordered by basket, read without loading the entities
+    @Query("select i.basket.id as basketId, i.product.id as productId, i.product.price as unitPrice, i.quantity as quantity"
+            + " from BasketItem i where i.basket.id in :basketIds and i.product.id in :productIds order by i.basket.id")
+    List<LineView> findLines(@Param("basketIds") final Collection<Long> basketIds, @Param("productIds") final Collection<Long> productIds);
+
+    //current price of each product in the basket, read without loading the entities
+    @Query("select i.product.id as productId, i.product.price as price from BasketItem i where i.basket.id = :basketId")
+    List<ProductPriceView> findProductPrices(@Param("basketId") final Long basketId);
+
+    //removes the items of the baskets in one statement
+    @Modifying
+    @Query("delete from BasketItem i where i.basket.id in :basketIds")
+    int deleteByBasketIds(@Param("basketIds") final Collection<Long> basketIds);
+
+    /**
+     * Basket id, product id, unit price in minor units and quantity of a basket line.
+     */
+    interface LineView {
+        Long getBasketId();
+
+        Long getProductId();
+
+        long getUnitPrice();
+
+        int getQuantity();
+    }
+
+    /**
+     * Product id and current price in minor units of a product in a basket.
+     */
+    interface ProductPriceView {
+        Long getProductId();
+
+        long getPrice();
+    }
 }
@@ -1,12 +1,44 @@
 package com.sample.electronicstore.repository;
 
 import com.sample.electronicstore.entity.Basket;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.LockModeType;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface BasketRepository extends JpaRepository<Basket, Long> {
 
     Optional<Basket> findByCustomerId(final Long customerId);
-}
 
+    //reads only the version, to check if a cached receipt of the basket is still current
+    @Query("select b.version from Basket b where b.id = :id")
+    Optional<Integer> findVersionById(@Param("id") final Long id);
+
+    //loads the basket, its items and their products in one statement
+    @EntityGraph(attributePaths = {"items", "items.product"})
+    Optional<Basket> findWithItemsAndProductsById(final Long id);
+
+    //loads the basket, its items and their products in one statement
+    @EntityGraph(attributePaths = {"items", "items.product"})
+    Optional<Basket> findWithItemsAndProductsByCustomerId(final Long customerId);
+
+    //ids of the baskets unchanged since the cutoff, oldest first, locked until the transaction ends so a concurrent change
+    //of one of them waits for its removal, the pageable bounds the number of locked baskets
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b.id from Basket b where b.lastUpdated < :cutoff order by b.lastUpdated")
+    List<Long> lockIdleBasketIds(@Param("cutoff") final Instant cutoff, final Pageable pageable);
+
+    //removes the baskets in one statement, their items must be removed first
+    @Modifying
+    @Query("delete from Basket b where b.id in :ids")
+    int deleteByIds(@Param("ids") final Collection<Long> ids);
+}
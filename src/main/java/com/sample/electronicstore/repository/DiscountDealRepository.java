@@ -1,13 +1,60 @@
 package com.sample.electronicstore.repository;
 
 import com.sample.electronicstore.entity.DiscountDeal;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
+import javax.persistence.QueryHint;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 public interface DiscountDealRepository extends JpaRepository<DiscountDeal, Long> {
+    //keeps the IN clause of the bulk lookup below the parameter limits of most databases
+    int IN_CLAUSE_CHUNK_SIZE = 1000;
+
     Optional<DiscountDeal> findByProductIdAndActive(final Long productId, final boolean active);
 
     List<DiscountDeal> findByProductId(final Long productId);
+
+    List<DiscountDeal> findByProductIdInAndActive(final Collection<Long> productIds, final boolean active);
+
+    //keyset page, the deals after the given id, the pageable only limits the size of the page
+    List<DiscountDeal> findByIdGreaterThanOrderByIdAsc(final Long afterId, final Pageable pageable);
+
+    //cursor over all the deals, must be consumed and closed inside a transaction
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query("select d from DiscountDeal d order by d.id")
+    Stream<DiscountDeal> streamAllOrderById();
+
+    /**
+     * Fetches the active deals of all the given products with one query per {@link #IN_CLAUSE_CHUNK_SIZE} ids.
+     *
+     * @param productIds The ids of the products.
+     * @return The active deal of each product keyed by product id, products without an active deal are absent.
+     */
+    default Map<Long, DiscountDeal> findActiveByProductIds(final Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final List<Long> ids = new ArrayList<>(productIds);
+        final Map<Long, DiscountDeal> dealsByProductId = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += IN_CLAUSE_CHUNK_SIZE) {
+            final List<Long> chunk = ids.subList(from, Math.min(from + IN_CLAUSE_CHUNK_SIZE, ids.size()));
+            for (final DiscountDeal deal : findByProductIdInAndActive(chunk, true)) {
+                dealsByProductId.put(deal.getProductId(), deal);
+            }
+        }
+        return dealsByProductId;
+    }
 }
@@ -0,0 +1,24 @@
+package com.sample.electronicstore.repository;
+
+import com.sample.electronicstore.entity.OutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    //keyset page of the changes after the given creation time and id, the pageable only limits the size of the batch
+    @Query("select e from OutboxEvent e where e.createdAt > :createdAt or (e.createdAt = :createdAt and e.id > :id)"
+            + " order by e.createdAt, e.id")
+    List<OutboxEvent> findAfter(@Param("createdAt") final Instant createdAt, @Param("id") final Long id, final Pageable pageable);
+
+    //removes the changes created before the cutoff in one statement
+    @Modifying
+    @Query("delete from OutboxEvent e where e.createdAt < :cutoff")
+    int deleteCreatedBefore(@Param("cutoff") final Instant cutoff);
+}
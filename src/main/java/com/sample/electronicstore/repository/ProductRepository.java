@@ -1,7 +1,25 @@
 package com.sample.electronicstore.repository;
 
 import com.sample.electronicstore.entity.Product;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import javax.persistence.QueryHint;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 public interface ProductRepository extends JpaRepository<Product, Long> {
+
+    //keyset page, the products after the given id, the pageable only limits the size of the page
+    List<Product> findByIdGreaterThanOrderByIdAsc(final Long afterId, final Pageable pageable);
+
+    //cursor over all the products, must be consumed and closed inside a transaction
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query("select p from Product p order by p.id")
+    Stream<Product> streamAllOrderById();
 }
@@ -0,0 +1,420 @@
+package com.sample.electronicstore.repository;
+
+import com.sample.electronicstore.cache.ProductSnapshot;
+import com.sample.electronicstore.dto.BasketDTO;
+import com.sample.electronicstore.dto.BasketItemDTO;
+import com.sample.electronicstore.entity.DiscountDeal;
+import com.sample.electronicstore.entity.Product;
+import com.sample.electronicstore.entity.Receipt;
+import com.sample.electronicstore.entity.ReceiptLine;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.Statement;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Non-blocking access to the store tables over R2DBC, for the reactive customer endpoints.
+ *
+ * <p>The tables are the ones created and mapped by JPA, they are read and written with plain SQL on a pool of
+ * {@code store.reactive.pool-size} R2DBC connections to the same H2 database. New rows take their ids from the
+ * sequences of the entities, one sequence value per row, so they never collide with the ids the pooled sequence
+ * generator hands out from its own sequence values.</p>
+ *
+ * <p>The embedded H2 driver runs a statement on the thread that subscribes to it and waits there for row locks, so the
+ * transactions are subscribed on a scheduler with one thread per pooled connection. The event loop threads of the
+ * reactive server never wait on the database, with a driver that talks to a database server over the network the
+ * scheduler could be dropped.</p>
+ *
+ * <p>Times are stored like Hibernate stores an {@link Instant}, as a timestamp in the default time zone.</p>
+ */
+@Repository
+public class ReactiveStoreRepository {
+    private final ConnectionPool connectionPool;
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+    private final Scheduler databaseScheduler;
+
+    /**
+     * Constructs a ReactiveStoreRepository.
+     *
+     * @param url R2DBC url of the store database.
+     * @param username Username of the store database.
+     * @param password Password of the store database.
+     * @param poolSize Maximum number of connections of the pool.
+     * @param acquireTimeoutMillis Time a statement waits for a free connection before it fails.
+     */
+    @Autowired
+    public ReactiveStoreRepository(@Value("${store.reactive.r2dbc-url:r2dbc:h2:mem:///store?options=DB_CLOSE_DELAY=-1}") final String url,
+                                   @Value("${spring.datasource.username:sa}") final String username,
+                                   @Value("${spring.datasource.password:}") final String password,
+                                   @Value("${store.reactive.pool-size:20}") final int poolSize,
+                                   @Value("${store.reactive.acquire-timeout-ms:5000}") final long acquireTimeoutMillis) {
+        final ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(url).mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build();
+        this.connectionPool = new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(options))
+                .initialSize(0)
+                .maxSize(Math.max(1, poolSize))
+                .maxAcquireTime(Duration.ofMillis(acquireTimeoutMillis))
+                .build());
+        this.databaseClient = DatabaseClient.create(connectionPool);
+        this.transactionalOperator = TransactionalOperator.create(new R2dbcTransactionManager(connectionPool));
+        this.databaseScheduler = Schedulers.newBoundedElastic(Math.max(1, poolSize), Integer.MAX_VALUE, "r2dbc-h2", 60, true);
+    }
+
+    /**
+     * Runs the work in one transaction on the database scheduler, each subscription to the result starts a new transaction.
+     *
+     * @param work The statements of the transaction.
+     * @return The result of the work, after the commit.
+     */
+    public <T> Mono<T> transactional(final Mono<T> work) {
+        return transactionalOperator.transactional(work).subscribeOn(databaseScheduler);
+    }
+
+    public Mono<ProductSnapshot> findProduct(final Long productId) {
+        return databaseClient.sql("select id, name, description, price, last_updated, version from product where id = :id")
+                .bind("id", productId)
+                .map(ReactiveStoreRepository::productSnapshot)
+                .one();
+    }
+
+    public Mono<Long> findBasketIdByCustomerId(final Long customerId) {
+        return databaseClient.sql("select id from basket where customer_id = :customerId")
+                .bind("customerId", customerId)
+                .map(row -> row.get("id", Long.class))
+                .one();
+    }
+
+    public Mono<Integer> findBasketVersion(final Long basketId) {
+        return databaseClient.sql("select version from basket where id = :id")
+                .bind("id", basketId)
+                .map(row -> row.get("version", Integer.class))
+                .one();
+    }
+
+    /**
+     * Inserts an empty basket for the customer, fails with a DataIntegrityViolationException if the customer
+     * already has one.
+     *
+     * @param customerId The ID of the customer.
+     * @return The id of the new basket.
+     */
+    public Mono<Long> insertBasket(final Long customerId) {
+        return nextIds("basket_seq", 1).next().flatMap(id -> databaseClient
+                .sql("insert into basket (id, customer_id, last_updated, version) values (:id, :customerId, :now, 0)")
+                .bind("id", id)
+                .bind("customerId", customerId)
+                .bind("now", now())
+                .fetch().rowsUpdated()
+                .thenReturn(id));
+    }
+
+    /**
+     * Increases the version of a basket, like the optimistic lock of the JPA entity does on each change of its lines.
+     * The update locks the basket row until the end of the transaction, so the changes of a basket are serialized.
+     *
+     * @param basketId The ID of the basket.
+     * @return The number of updated rows, 0 if the basket doesn't exist.
+     */
+    public Mono<Integer> incrementBasketVersion(final Long basketId) {
+        return databaseClient.sql("update basket set version = version + 1, last_updated = :now where id = :id")
+                .bind("now", now())
+                .bind("id", basketId)
+                .fetch().rowsUpdated();
+    }
+
+    /**
+     * Adds the quantity to the line of the product in the basket.
+     *
+     * @return The number of updated rows, 0 if the basket has no line of the product.
+     */
+    public Mono<Integer> addQuantity(final Long basketId, final Long productId, final int quantity) {
+        return databaseClient.sql("update basket_item set quantity = quantity + :quantity, last_updated = :now where basket_id = :basketId and product_id = :productId")
+                .bind("quantity", quantity)
+                .bind("now", now())
+                .bind("basketId", basketId)
+                .bind("productId", productId)
+                .fetch().rowsUpdated();
+    }
+
+    /**
+     * Inserts the line of the product in the basket, fails with a DataIntegrityViolationException if it was inserted concurrently.
+     */
+    public Mono<Void> insertItem(final Long basketId, final Long productId, final int quantity) {
+        return nextIds("basket_item_seq", 1).next().flatMap(id -> databaseClient
+                .sql("insert into basket_item (id, basket_id, product_id, quantity, last_updated) values (:id, :basketId, :productId, :quantity, :now)")
+                .bind("id", id)
+                .bind("basketId", basketId)
+                .bind("productId", productId)
+                .bind("quantity", quantity)
+                .bind("now", now())
+                .fetch().rowsUpdated())
+                .then();
+    }
+
+    public Mono<BasketItemDTO> findItem(final Long basketItemId) {
+        return databaseClient.sql("select id, basket_id, product_id, quantity, last_updated from basket_item where id = :id")
+                .bind("id", basketItemId)
+                .map(row -> new BasketItemDTO(row.get("id", Long.class), row.get("basket_id", Long.class), row.get("product_id", Long.class),
+                        row.get("quantity", Integer.class), epochMilli(row.get("last_updated", LocalDateTime.class))))
+                .one();
+    }
+
+    public Mono<Integer> deleteItem(final Long basketItemId) {
+        return databaseClient.sql("delete from basket_item where id = :id")
+                .bind("id", basketItemId)
+                .fetch().rowsUpdated();
+    }
+
+    /**
+     * Reads a basket with its items in one statement.
+     *
+     * @param basketId The ID of the basket.
+     * @return The basket, empty if it doesn't exist.
+     */
+    public Mono<BasketDTO> findBasket(final Long basketId) {
+        return databaseClient.sql("select b.id, b.customer_id, b.last_updated, i.id as item_id, i.product_id, i.quantity, i.last_updated as item_last_updated"
+                        + " from basket b left join basket_item i on i.basket_id = b.id where b.id = :id order by i.id")
+                .bind("id", basketId)
+                .map(row -> row)
+                .all()
+                .collectList()
+                .flatMap(rows -> {
+                    if (rows.isEmpty()) {
+                        return Mono.empty();
+                    }
+                    final List<BasketItemDTO> items = new ArrayList<>(rows.size());
+                    for (final Row row : rows) {
+                        final Long itemId = row.get("item_id", Long.class);
+                        if (itemId != null) {
+                            items.add(new BasketItemDTO(itemId, basketId, row.get("product_id", Long.class), row.get("quantity", Integer.class),
+                                    epochMilli(row.get("item_last_updated", LocalDateTime.class))));
+                        }
+                    }
+                    final Row basket = rows.get(0);
+                    return Mono.just(new BasketDTO(basketId, basket.get("customer_id", Long.class), items,
+                            epochMilli(basket.get("last_updated", LocalDateTime.class))));
+                });
+    }
+
+    /**
+     * Reads the lines of a basket with their products, in the order they were added.
+     *
+     * @param basketId The ID of the basket.
+     * @return The lines of the basket.
+     */
+    public Flux<BasketLine> findLines(final Long basketId) {
+        return databaseClient.sql("select p.id, p.name, p.description, p.price, p.last_updated, p.version, i.quantity"
+                        + " from basket_item i join product p on p.id = i.product_id where i.basket_id = :basketId order by i.id")
+                .bind("basketId", basketId)
+                .map(row -> new BasketLine(new Product(row.get("id", Long.class), row.get("name", String.class), row.get("description", String.class),
+                        row.get("price", Long.class), instant(row.get("last_updated", LocalDateTime.class)), row.get("version", Integer.class)), row.get("quantity", Integer.class)))
+                .all();
+    }
+
+    /**
+     * Reads the active deals of the given products with one statement per {@link DiscountDealRepository#IN_CLAUSE_CHUNK_SIZE} ids.
+     *
+     * @param productIds The ids of the products.
+     * @return The active deals, at most one per product.
+     */
+    public Flux<DiscountDeal> findActiveDeals(final Collection<Long> productIds) {
+        final List<Long> ids = new ArrayList<>(productIds);
+        final List<List<Long>> chunks = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += DiscountDealRepository.IN_CLAUSE_CHUNK_SIZE) {
+            chunks.add(ids.subList(from, Math.min(from + DiscountDealRepository.IN_CLAUSE_CHUNK_SIZE, ids.size())));
+        }
+        return Flux.fromIterable(chunks).concatMap(chunk -> databaseClient
+                .sql("select id, product_id, deal_description, active, last_updated, version from discount_deal where active = true and product_id in (:productIds)")
+                .bind("productIds", chunk)
+                .map(row -> new DiscountDeal(row.get("id", Long.class), row.get("product_id", Long.class), row.get("deal_description", String.class),
+                        Boolean.TRUE.equals(row.get("active", Boolean.class)), instant(row.get("last_updated", LocalDateTime.class)), row.get("version", Integer.class)))
+                .all());
+    }
+
+    /**
+     * Reads the receipt written for a state of a basket, with the ids of its deals.
+     *
+     * @return The receipt, empty if none was written for this state.
+     */
+    public Mono<Receipt> findReceipt(final Long basketId, final int basketVersion, final String dealSetHash) {
+        return databaseClient.sql("select id, total, last_updated from receipt where basket_id = :basketId and basket_version = :basketVersion and deal_set_hash = :dealSetHash")
+                .bind("basketId", basketId)
+                .bind("basketVersion", basketVersion)
+                .bind("dealSetHash", dealSetHash)
+                .map(row -> {
+                    final Receipt receipt = new Receipt();
+                    receipt.setId(row.get("id", Long.class));
+                    receipt.setBasketId(basketId);
+                    receipt.setBasketVersion(basketVersion);
+                    receipt.setDealSetHash(dealSetHash);
+                    receipt.setTotal(row.get("total", Long.class));
+                    receipt.setLastUpdated(instant(row.get("last_updated", LocalDateTime.class)));
+                    return receipt;
+                })
+                .one()
+                .flatMap(receipt -> databaseClient.sql("select discount_deal_id from receipt_discount_deal where receipt_id = :receiptId")
+                        .bind("receiptId", receipt.getId())
+                        .map(row -> dealRef(row.get("discount_deal_id", Long.class)))
+                        .all()
+                        .collect(HashSet<DiscountDeal>::new, Set::add)
+                        .map(deals -> {
+                            receipt.setDiscountDeals(deals);
+                            return receipt;
+                        }));
+    }
+
+    public Flux<ReceiptLine> findReceiptLines(final Long receiptId) {
+        return databaseClient.sql("select id, product_id, quantity, unit_price, discount, deal_id from receipt_line where receipt_id = :receiptId order by id")
+                .bind("receiptId", receiptId)
+                .map(row -> new ReceiptLine(row.get("id", Long.class), receiptId, row.get("product_id", Long.class), row.get("quantity", Integer.class),
+                        row.get("unit_price", Long.class), row.get("discount", Long.class), row.get("deal_id", Long.class)))
+                .all();
+    }
+
+    /**
+     * Inserts a receipt with its deal links and its lines, the lines and the links are sent as one batch each.
+     * Fails with a DataIntegrityViolationException if a receipt was written concurrently for the same state of the basket.
+     *
+     * @param receipt The receipt, its id and update time are set.
+     * @param lines The lines of the receipt, their ids and receipt id are set.
+     * @return The receipt.
+     */
+    public Mono<Receipt> insertReceipt(final Receipt receipt, final List<ReceiptLine> lines) {
+        final LocalDateTime now = now();
+        return nextIds("receipt_seq", 1).next().flatMap(id -> {
+            receipt.setId(id);
+            receipt.setLastUpdated(instant(now));
+            return databaseClient.sql("insert into receipt (id, basket_id, basket_version, deal_set_hash, total, last_updated)"
+                            + " values (:id, :basketId, :basketVersion, :dealSetHash, :total, :now)")
+                    .bind("id", id)
+                    .bind("basketId", receipt.getBasketId())
+                    .bind("basketVersion", receipt.getBasketVersion())
+                    .bind("dealSetHash", receipt.getDealSetHash())
+                    .bind("total", receipt.getTotal())
+                    .bind("now", now)
+                    .fetch().rowsUpdated();
+        }).then(Mono.defer(() -> {
+            final List<DiscountDeal> deals = new ArrayList<>(receipt.getDiscountDeals());
+            return batch("insert into receipt_discount_deal (receipt_id, discount_deal_id) values ($1, $2)", deals.size(),
+                    (statement, i) -> statement.bind(0, receipt.getId()).bind(1, deals.get(i).getId()));
+        })).then(nextIds("receipt_line_seq", lines.size()).collectList().flatMap(ids -> {
+            for (int i = 0; i < lines.size(); i++) {
+                lines.get(i).setId(ids.get(i));
+                lines.get(i).setReceiptId(receipt.getId());
+            }
+            return batch("insert into receipt_line (id, receipt_id, product_id, quantity, unit_price, discount, deal_id) values ($1, $2, $3, $4, $5, $6, $7)",
+                    lines.size(), (statement, i) -> {
+                        final ReceiptLine line = lines.get(i);
+                        statement.bind(0, line.getId()).bind(1, line.getReceiptId()).bind(2, line.getProductId()).bind(3, line.getQuantity())
+                                .bind(4, line.getUnitPrice()).bind(5, line.getDiscount());
+                        if (line.getDealId() != null) {
+                            statement.bind(6, line.getDealId());
+                        } else {
+                            statement.bindNull(6, Long.class);
+                        }
+                    });
+        })).thenReturn(receipt);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        connectionPool.dispose();
+        databaseScheduler.dispose();
+    }
+
+    /**
+     * Reads the given number of values of a sequence in one statement.
+     */
+    private Flux<Long> nextIds(final String sequence, final int count) {
+        if (count == 0) {
+            return Flux.empty();
+        }
+        return databaseClient.sql("select next value for " + sequence + " as id from system_range(1, :count)")
+                .bind("count", count)
+                .map(row -> row.get("id", Long.class))
+                .all();
+    }
+
+    /**
+     * Runs a statement once per row as one batch, on the connection of the current transaction.
+     */
+    private Mono<Void> batch(final String sql, final int rows, final RowBinder binder) {
+        if (rows == 0) {
+            return Mono.empty();
+        }
+        return databaseClient.inConnectionMany(connection -> {
+            final Statement statement = connection.createStatement(sql);
+            for (int i = 0; i < rows; i++) {
+                if (i > 0) {
+                    statement.add();
+                }
+                binder.bind(statement, i);
+            }
+            return Flux.from(statement.execute()).flatMap(Result::getRowsUpdated);
+        }).then();
+    }
+
+    private static ProductSnapshot productSnapshot(final Row row) {
+        return new ProductSnapshot(row.get("id", Long.class), row.get("name", String.class), row.get("description", String.class),
+                row.get("price", Long.class), instant(row.get("last_updated", LocalDateTime.class)), row.get("version", Integer.class));
+    }
+
+    private static DiscountDeal dealRef(final Long dealId) {
+        final DiscountDeal deal = new DiscountDeal();
+        deal.setId(dealId);
+        return deal;
+    }
+
+    private static LocalDateTime now() {
+        return LocalDateTime.ofInstant(Instant.now(), ZoneId.systemDefault());
+    }
+
+    private static Instant instant(final LocalDateTime time) {
+        return time != null ? time.atZone(ZoneId.systemDefault()).toInstant() : null;
+    }
+
+    private static long epochMilli(final LocalDateTime time) {
+        return time != null ? instant(time).toEpochMilli() : 0;
+    }
+
+    /**
+     * A line of a basket with its product as stored, not attached to a persistence context.
+     */
+    @lombok.Value
+    public static class BasketLine {
+        Product product;
+        int quantity;
+    }
+
+    @FunctionalInterface
+    private interface RowBinder {
+        void bind(Statement statement, int row);
+    }
+}
@@ -0,0 +1,7 @@
+package com.sample.electronicstore.repository;
+
+import com.sample.electronicstore.entity.ReceiptIdempotency;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface ReceiptIdempotencyRepository extends JpaRepository<ReceiptIdempotency, String> {
+}
@@ -0,0 +1,12 @@
+package com.sample.electronicstore.repository;
+
+import com.sample.electronicstore.entity.ReceiptLine;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface ReceiptLineRepository extends JpaRepository<ReceiptLine, Long> {
+
+    //lines in the order they were saved, which is the order of the basket items
+    List<ReceiptLine> findByReceiptIdOrderByIdAsc(final Long receiptId);
+}
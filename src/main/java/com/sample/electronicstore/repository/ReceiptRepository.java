@@ -3,6 +3,11 @@ package com.sample.electronicstore.repository;
 import com.sample.electronicstore.entity.Receipt;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.Optional;
+
 public interface ReceiptRepository extends JpaRepository<Receipt, Long> {
+
+    //the receipt already calculated for this version of the basket with the same prices and deals
+    Optional<Receipt> findByBasketIdAndBasketVersionAndDealSetHash(final Long basketId, final int basketVersion, final String dealSetHash);
 }
 
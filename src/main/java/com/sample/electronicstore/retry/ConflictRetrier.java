@@ -0,0 +1,133 @@
+package com.sample.electronicstore.retry;
+
+import com.sample.electronicstore.metrics.StoreMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Retries a write that lost a race against a concurrent write of the same data.
+ *
+ * <p>Each attempt must run in its own transaction and re-read the data it changes, the retrier only repeats
+ * attempts that fail with a {@link ConcurrencyFailureException} (optimistic locking failures included) and gives up
+ * after {@code store.retry.max-attempts} attempts by rethrowing the last failure.</p>
+ *
+ * <p>Before each retry the thread sleeps a random time between zero and an exponentially growing cap
+ * (full jitter), so writers that conflicted with each other do not collide again on their next attempt.
+ * Reactive attempts wait the same time on a timer instead of sleeping.</p>
+ */
+@Component
+public class ConflictRetrier {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConflictRetrier.class);
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final StoreMetrics storeMetrics;
+
+    /**
+     * Constructs a ConflictRetrier.
+     *
+     * @param maxAttempts The maximum number of attempts of an operation, including the first one.
+     * @param initialBackoffMillis Cap of the backoff before the first retry, doubled for each further retry.
+     * @param maxBackoffMillis Upper bound of the backoff cap.
+     * @param storeMetrics Metrics the conflicts, retries and exhausted retries are recorded in.
+     */
+    @Autowired
+    public ConflictRetrier(@Value("${store.retry.max-attempts:5}") final int maxAttempts,
+                           @Value("${store.retry.initial-backoff-ms:5}") final long initialBackoffMillis,
+                           @Value("${store.retry.max-backoff-ms:100}") final long maxBackoffMillis,
+                           final StoreMetrics storeMetrics) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMillis = Math.max(0, initialBackoffMillis);
+        this.maxBackoffMillis = Math.max(this.initialBackoffMillis, maxBackoffMillis);
+        this.storeMetrics = storeMetrics;
+    }
+
+    /**
+     * Runs the attempt until it succeeds, fails with a non conflict exception, or all attempts are used.
+     *
+     * @param entity Name of the entity the operation writes, for the metrics.
+     * @param operation Name of the operation, for logging.
+     * @param attempt The attempt, it must run its own transaction.
+     * @return The result of the first successful attempt.
+     * @throws ConcurrencyFailureException if the last attempt still conflicted.
+     */
+    public <T> T execute(final String entity, final String operation, final Supplier<T> attempt) {
+        for (int attemptNumber = 1; ; attemptNumber++) {
+            try {
+                return attempt.get();
+            } catch (ConcurrencyFailureException e) {
+                storeMetrics.recordConflict(entity);
+                if (attemptNumber >= maxAttempts) {
+                    storeMetrics.recordRetryExhausted(entity);
+                    logger.warn("{} still conflicts after {} attempts, giving up", operation, attemptNumber);
+                    throw e;
+                }
+                logger.info("{} conflicted with a concurrent write on attempt {}, retrying", operation, attemptNumber);
+                storeMetrics.recordRetry(entity);
+                backOff(attemptNumber, e);
+            }
+        }
+    }
+
+    /**
+     * Resubscribes to the attempt until it succeeds, fails with a non conflict exception, or all attempts are used.
+     * The backoff before a retry is a delay on a timer, no thread is blocked while waiting.
+     *
+     * @param entity Name of the entity the operation writes, for the metrics.
+     * @param operation Name of the operation, for logging.
+     * @param attempt The attempt, each subscription must run its own transaction.
+     * @return The result of the first successful attempt.
+     */
+    public <T> Mono<T> execute(final String entity, final String operation, final Mono<T> attempt) {
+        return attempt.retryWhen(Retry.from(signals -> signals.concatMap(signal -> {
+            final Throwable failure = signal.failure();
+            if (!(failure instanceof ConcurrencyFailureException)) {
+                return Mono.error(failure);
+            }
+            final int attemptNumber = (int) signal.totalRetries() + 1;
+            storeMetrics.recordConflict(entity);
+            if (attemptNumber >= maxAttempts) {
+                storeMetrics.recordRetryExhausted(entity);
+                logger.warn("{} still conflicts after {} attempts, giving up", operation, attemptNumber);
+                return Mono.error(failure);
+            }
+            logger.info("{} conflicted with a concurrent write on attempt {}, retrying", operation, attemptNumber);
+            storeMetrics.recordRetry(entity);
+            return Mono.delay(Duration.ofMillis(backOffMillis(attemptNumber)));
+        })));
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    private void backOff(final int attemptNumber, final ConcurrencyFailureException conflict) {
+        final long backOffMillis = backOffMillis(attemptNumber);
+        if (backOffMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(backOffMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw conflict;
+        }
+    }
+
+    private long backOffMillis(final int attemptNumber) {
+        final long cap = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attemptNumber - 1, 20));
+        return cap <= 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+}
@@ -0,0 +1,178 @@
+package com.sample.electronicstore.service;
+
+import com.sample.electronicstore.cache.ReceiptTotalsCache;
+import com.sample.electronicstore.dto.BasketEvictionReportDTO;
+import com.sample.electronicstore.exception.StoreOperationException;
+import com.sample.electronicstore.metrics.StoreMetrics;
+import com.sample.electronicstore.repository.BasketItemRepository;
+import com.sample.electronicstore.repository.BasketRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Service class for the eviction of abandoned baskets, so the basket tables only grow with the active shoppers.
+ *
+ * <p>A basket unchanged for {@code store.basket-eviction.ttl-minutes} is removed with its items, every
+ * {@code store.basket-eviction.interval-ms} and on demand. The idle baskets are found through the index on their
+ * update time and removed in batches of {@code store.basket-eviction.batch-size}, each batch in its own short
+ * transaction that locks only the baskets it removes. A customer changing a basket while it is removed waits for
+ * the batch and then gets a new basket. The receipts of a removed basket are kept.</p>
+ */
+@Service
+public class BasketEvictionService {
+    private final BasketRepository basketRepository;
+    private final BasketItemRepository basketItemRepository;
+    private final ReceiptTotalsCache receiptTotalsCache;
+    private final StoreMetrics storeMetrics;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration ttl;
+    private final int batchSize;
+    private final long intervalMillis;
+    //one run at a time, a scheduled run and a run on demand would only compete for the same baskets
+    private final ReentrantLock runLock = new ReentrantLock();
+    private final ScheduledExecutorService executor;
+
+    private static final Logger logger = LoggerFactory.getLogger(BasketEvictionService.class);
+
+    /**
+     * Constructs a BasketEvictionService.
+     *
+     * @param basketRepository Repository the idle baskets are found in and removed from.
+     * @param basketItemRepository Repository the items of the idle baskets are removed from.
+     * @param receiptTotalsCache Cache of receipt totals, the removed baskets are dropped from it.
+     * @param storeMetrics Metrics the runs are timed and the removed rows are counted in.
+     * @param transactionManager Transaction manager used to remove each batch in its own transaction.
+     * @param ttlMinutes The time after its last change from which a basket is removed.
+     * @param batchSize The number of baskets removed per transaction.
+     * @param intervalMillis The time between two scheduled runs, zero or less to only run on demand.
+     */
+    @Autowired
+    public BasketEvictionService(final BasketRepository basketRepository, final BasketItemRepository basketItemRepository,
+                                 final ReceiptTotalsCache receiptTotalsCache, final StoreMetrics storeMetrics,
+                                 final PlatformTransactionManager transactionManager,
+                                 @Value("${store.basket-eviction.ttl-minutes:4320}") final long ttlMinutes,
+                                 @Value("${store.basket-eviction.batch-size:500}") final int batchSize,
+                                 @Value("${store.basket-eviction.interval-ms:600000}") final long intervalMillis) {
+        this.basketRepository = basketRepository;
+        this.basketItemRepository = basketItemRepository;
+        this.receiptTotalsCache = receiptTotalsCache;
+        this.storeMetrics = storeMetrics;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.ttl = Duration.ofMinutes(Math.max(1, ttlMinutes));
+        this.batchSize = Math.max(1, batchSize);
+        this.intervalMillis = intervalMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "basket-eviction");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Schedules the runs once the application is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (intervalMillis > 0) {
+            executor.scheduleWithFixedDelay(this::scheduledRun, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Removes the baskets unchanged for longer than the configured time to live, with their items.
+     *
+     * @return The number of removed rows.
+     * @throws StoreOperationException if another run is in progress or a batch could not be removed.
+     */
+    public BasketEvictionReportDTO evictIdleBaskets() {
+        return evictBasketsIdleSince(Instant.now().minus(ttl));
+    }
+
+    /**
+     * Removes the baskets unchanged since the cutoff, with their items.
+     *
+     * @param cutoff The baskets last changed before this time are removed.
+     * @return The number of removed rows.
+     * @throws StoreOperationException if another run is in progress or a batch could not be removed.
+     */
+    public BasketEvictionReportDTO evictBasketsIdleSince(final Instant cutoff) {
+        if (!runLock.tryLock()) {
+            throw new StoreOperationException("Basket eviction is already running");
+        }
+        try {
+            return storeMetrics.time(StoreMetrics.BASKET_EVICTION, () -> run(cutoff));
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    private BasketEvictionReportDTO run(final Instant cutoff) {
+        final long start = System.nanoTime();
+        long basketsRemoved = 0;
+        long basketItemsRemoved = 0;
+        int batches = 0;
+        try {
+            long[] removed;
+            do {
+                removed = transactionTemplate.execute(status -> removeBatch(cutoff));
+                basketsRemoved += removed[0];
+                basketItemsRemoved += removed[1];
+                batches += removed[0] > 0 ? 1 : 0;
+            } while (removed[0] == batchSize);
+        } catch (RuntimeException e) {
+            throw new StoreOperationException("Basket eviction failed after removing " + basketsRemoved + " baskets", e);
+        } finally {
+            storeMetrics.recordBasketEviction(basketsRemoved, basketItemsRemoved);
+        }
+        final long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        logger.info("evicted {} baskets and {} basket items unchanged since {} in {} batches, in {} ms",
+                basketsRemoved, basketItemsRemoved, cutoff, batches, elapsedMillis);
+        return new BasketEvictionReportDTO(cutoff, basketsRemoved, basketItemsRemoved, batches, elapsedMillis);
+    }
+
+    /**
+     * Removes the oldest batch of idle baskets, runs inside the transaction of the batch.
+     *
+     * @return The number of removed baskets and of removed basket items.
+     */
+    private long[] removeBatch(final Instant cutoff) {
+        final List<Long> basketIds = basketRepository.lockIdleBasketIds(cutoff, PageRequest.of(0, batchSize));
+        if (basketIds.isEmpty()) {
+            return new long[]{0, 0};
+        }
+        final int basketItems = basketItemRepository.deleteByBasketIds(basketIds);
+        final int baskets = basketRepository.deleteByIds(basketIds);
+        receiptTotalsCache.basketsRemoved(basketIds);
+        return new long[]{baskets, basketItems};
+    }
+
+    private void scheduledRun() {
+        try {
+            evictIdleBaskets();
+        } catch (RuntimeException e) {
+            logger.error("scheduled basket eviction failed, retrying on the next run", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
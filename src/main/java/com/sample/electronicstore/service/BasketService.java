@@ -1,21 +1,42 @@
 package com.sample.electronicstore.service;
 
+import com.sample.electronicstore.cache.ProductCatalogCache;
+import com.sample.electronicstore.cache.ProductSnapshot;
 import com.sample.electronicstore.dto.BasketDTO;
+import com.sample.electronicstore.dto.BasketOperationDTO;
+import com.sample.electronicstore.dto.BasketOperationType;
 import com.sample.electronicstore.entity.Basket;
 import com.sample.electronicstore.entity.BasketItem;
-import com.sample.electronicstore.entity.Product;
 import com.sample.electronicstore.exception.StoreOperationException;
+import com.sample.electronicstore.lock.StripedLockManager;
+import com.sample.electronicstore.metrics.StoreMetrics;
 import com.sample.electronicstore.repository.BasketItemRepository;
 import com.sample.electronicstore.repository.BasketRepository;
 import com.sample.electronicstore.repository.ProductRepository;
+import com.sample.electronicstore.retry.ConflictRetrier;
 import com.sample.electronicstore.utils.ConvertToDtoUtil;
+import org.hibernate.exception.ConstraintViolationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
 
 /**
  * Service class for managing customer baskets in an electronic store application.
@@ -23,7 +44,9 @@ import java.util.ArrayList;
  * remove items from the basket, and can be extended to handle other basket-related operations.
  *
  * <p>This service uses optimistic locking to ensure data consistency and to handle
- * concurrent operations on baskets, making it suitable for high-concurrency environments.</p>
+ * concurrent operations on baskets, making it suitable for high-concurrency environments.
+ * A change that conflicts with a concurrent change of the same basket is retried with backoff
+ * by the {@link ConflictRetrier}, each attempt in its own transaction.</p>
  */
 @Service
 @Transactional
@@ -31,6 +54,14 @@ public class BasketService {
     private final BasketRepository basketRepository;
     private final ProductRepository productRepository;
     private final BasketItemRepository basketItemRepository;
+    private final ProductCatalogCache productCatalogCache;
+    private final StoreMetrics storeMetrics;
+    private final ConflictRetrier conflictRetrier;
+    private final StripedLockManager lockManager;
+    private final TransactionTemplate transactionTemplate;
+
+    //bounds the work of one batch transaction
+    public static final int MAX_BATCH_OPERATIONS = 500;
 
     private static final Logger logger = LoggerFactory.getLogger(BasketService.class);
 
@@ -40,16 +71,31 @@ public class BasketService {
      * @param basketRepository Repository for basket data operations.
      * @param productRepository Repository for product data operations.
      * @param basketItemRepository Repository for basket item data operations.
+     * @param productCatalogCache Cache used to look up products without a database hit.
+     * @param storeMetrics Metrics the basket operations are recorded in.
+     * @param conflictRetrier Retries basket changes that conflict with a concurrent change of the same basket.
+     * @param transactionManager Transaction manager used to run each attempt of a basket change in its own transaction.
+     * @param lockManager Lock manager used to serialize the changes of the basket of a customer within this instance.
      */
     @Autowired
-    public BasketService(final BasketRepository basketRepository, final ProductRepository productRepository, final BasketItemRepository basketItemRepository) {
+    public BasketService(final BasketRepository basketRepository, final ProductRepository productRepository, final BasketItemRepository basketItemRepository,
+                         final ProductCatalogCache productCatalogCache, final StoreMetrics storeMetrics,
+                         final ConflictRetrier conflictRetrier, final PlatformTransactionManager transactionManager,
+                         final StripedLockManager lockManager) {
         this.basketRepository = basketRepository;
         this.productRepository = productRepository;
         this.basketItemRepository = basketItemRepository;
+        this.productCatalogCache = productCatalogCache;
+        this.storeMetrics = storeMetrics;
+        this.conflictRetrier = conflictRetrier;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.lockManager = lockManager;
     }
 
     /**
      * Adds a product to a customer's basket. If the basket does not exist, a new one is created.
+     * If the basket already holds the product, the quantity of its line is increased instead of adding a line,
+     * so the size of a basket is bounded by the number of distinct products in it.
      *
      * <p>This method is subject to a high number of operations from various customers and involves
      * multiple database operations. Optimistic locking is used to ensure consistency and handle concurrency.</p>
@@ -59,41 +105,238 @@ public class BasketService {
      * @return BasketDTO representing the updated basket.
      * @throws StoreOperationException if the product is not found or the basket cannot be updated.
      */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public BasketDTO addToBasket(final Long customerId, final Long productId, int quantity) {
-        final Product product = productRepository.findById(productId)
+        return storeMetrics.time(StoreMetrics.BASKET_ADD,
+                () -> withRetry(customerId, "add product " + productId + " to basket of customer " + customerId, () -> addItem(customerId, productId, quantity)));
+    }
+
+    /**
+     * Removes an item from the basket. The version of the basket is increased, like for any other change of its lines.
+     * @param basketItemId The ID of the basket item to remove.
+     * @throws StoreOperationException if the basket item cannot be removed.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void removeFromBasket(final Long basketItemId) {
+        storeMetrics.time(StoreMetrics.BASKET_REMOVE, () -> {
+            try {
+                conflictRetrier.execute("basket", "remove basketItem " + basketItemId,
+                        () -> transactionTemplate.execute(status -> removeItem(basketItemId)));
+            }catch (ConcurrencyFailureException e){
+                throw new StoreOperationException("Basket was updated concurrently", e);
+            }catch (StoreOperationException e){
+                throw e;
+            }catch (Exception e){
+                throw new StoreOperationException("Unable to remove basketItem", e);
+            }
+        });
+    }
+
+    /**
+     * Applies an ordered list of operations to a customer's basket in one transaction and returns the final basket.
+     * If the basket does not exist, a new one is created.
+     *
+     * <p>The basket is loaded once and its version is checked once, when the changes are flushed, so a batch costs
+     * about as much as a single add. If any operation is invalid, none of them is applied.</p>
+     *
+     * @param customerId The ID of the customer.
+     * @param operations The operations, applied in order, at most {@value #MAX_BATCH_OPERATIONS}.
+     * @return BasketDTO representing the updated basket.
+     * @throws StoreOperationException if an operation is invalid or the basket cannot be updated.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public BasketDTO applyOperations(final Long customerId, final List<BasketOperationDTO> operations) {
+        return storeMetrics.time(StoreMetrics.BASKET_BATCH,
+                () -> withRetry(customerId, "apply operations to basket of customer " + customerId, () -> applyBatch(customerId, operations)));
+    }
+
+    /**
+     * Runs each attempt of a basket change in its own transaction, an attempt re-reads the basket so a retry
+     * applies the change on top of the concurrent one it conflicted with. Attempts on the basket of the same
+     * customer are serialized within this instance, so only writes from other instances are left to conflict.
+     * The stripe is taken inside the transaction of the attempt, so it is released when that transaction
+     * completes and isn't held while backing off before the next attempt.
+     */
+    private BasketDTO withRetry(final Long customerId, final String operation, final Supplier<BasketDTO> attempt) {
+        try {
+            return conflictRetrier.execute("basket", operation, () -> transactionTemplate.execute(
+                    status -> lockManager.withLock(basketLockKey(customerId), attempt)));
+        } catch (ConcurrencyFailureException e) {
+            throw new StoreOperationException("Basket was updated concurrently", e);
+        }
+    }
+
+    private BasketDTO addItem(final Long customerId, final Long productId, final int quantity) {
+        final ProductSnapshot product = productCatalogCache.get(productId)
                 .orElseThrow(() -> new StoreOperationException("Product not found for" +productId));
 
-        final Basket basket = basketRepository.findByCustomerId(customerId)
-                .orElse(new Basket(customerId));
+        final Basket basket = loadForUpdate(customerId);
+        // a basket has one line per product, adding a product it already holds increases the quantity of that line
+        final BasketItem basketItem = findLine(basket, product.getId()).orElseGet(() -> addLine(basket, product.getId()));
+        basketItem.setQuantity(basketItem.getQuantity() + quantity);
+        final BasketDTO basketDTO = saveBasket(basket, "Unable to save product to basket");
+        logger.info("added quantity {} to basketItem with Id {} of basketId {} for customerId {}", quantity, basketItem.getId(), basketDTO.getId(), customerId);
+        return basketDTO;
+    }
+
+    private Long removeItem(final Long basketItemId) {
+        final BasketItem basketItem = basketItemRepository.findById(basketItemId)
+                .orElseThrow(() -> new StoreOperationException("Unable to remove basketItem, not found for " + basketItemId));
+        final Basket basket = basketItem.getBasket();
+        // a cached receipt of the basket is only reused while the version of the basket is unchanged
+        touch(basket);
+        basketItemRepository.delete(basketItem);
+        basketItemRepository.flush();
+        return basketItemId;
+    }
+
+    private BasketDTO applyBatch(final Long customerId, final List<BasketOperationDTO> operations) {
+        if (operations == null || operations.isEmpty()) {
+            throw new StoreOperationException("No basket operations given");
+        }
+        if (operations.size() > MAX_BATCH_OPERATIONS) {
+            throw new StoreOperationException("At most " + MAX_BATCH_OPERATIONS + " basket operations are allowed in one batch");
+        }
+        final Basket basket = loadForUpdate(customerId);
+        final Map<Long, BasketItem> lines = new LinkedHashMap<>();
+        for (final BasketItem item : basket.getItems()) {
+            lines.put(item.getProduct().getId(), item);
+        }
+        // removed lines are deleted at the end, a later operation on the same product reuses its row,
+        // deleting and inserting it again would break the unique index as the insert is flushed first
+        final Map<Long, BasketItem> removedLines = new HashMap<>();
+        for (int index = 0; index < operations.size(); index++) {
+            final BasketOperationDTO operation = operations.get(index);
+            validate(operation, index);
+            final Long productId = operation.getProductId();
+            if (operation.getType() == BasketOperationType.REMOVE
+                    || (operation.getType() == BasketOperationType.SET_QUANTITY && operation.getQuantity() == 0)) {
+                final BasketItem removed = lines.remove(productId);
+                if (removed != null) {
+                    removedLines.put(productId, removed);
+                }
+                continue;
+            }
+            BasketItem line = lines.get(productId);
+            if (line == null) {
+                line = removedLines.remove(productId);
+                if (line != null) {
+                    line.setQuantity(0);
+                } else {
+                    if (!productCatalogCache.get(productId).isPresent()) {
+                        throw new StoreOperationException("Operation " + index + ": product not found for " + productId);
+                    }
+                    line = new BasketItem(null, basket, productRepository.getById(productId), 0, null);
+                }
+                lines.put(productId, line);
+            }
+            line.setQuantity(operation.getType() == BasketOperationType.ADD ? line.getQuantity() + operation.getQuantity() : operation.getQuantity());
+        }
+        basket.getItems().clear();
+        basket.getItems().addAll(lines.values());
+        if (!removedLines.isEmpty()) {
+            basketItemRepository.deleteAll(removedLines.values());
+        }
+        final BasketDTO basketDTO = saveBasket(basket, "Unable to apply basket operations");
+        logger.info("applied {} operations to basketId {} for customerId {}", operations.size(), basketDTO.getId(), customerId);
+        return basketDTO;
+    }
+
+    private static void validate(final BasketOperationDTO operation, final int index) {
+        if (operation == null || operation.getType() == null) {
+            throw new StoreOperationException("Operation " + index + ": type is required");
+        }
+        if (operation.getProductId() == null) {
+            throw new StoreOperationException("Operation " + index + ": productId is required");
+        }
+        if (operation.getType() == BasketOperationType.ADD && operation.getQuantity() <= 0) {
+            throw new StoreOperationException("Operation " + index + ": quantity to add must be positive");
+        }
+        if (operation.getType() == BasketOperationType.SET_QUANTITY && operation.getQuantity() < 0) {
+            throw new StoreOperationException("Operation " + index + ": quantity must not be negative");
+        }
+    }
 
-        final BasketItem basketItem = new BasketItem();
-        basketItem.setBasket(basket);
-        basketItem.setProduct(product);
-        basketItem.setQuantity(quantity);
+    /**
+     * Loads the basket of the customer with its lines, or a new basket, for a change of its lines.
+     */
+    private Basket loadForUpdate(final Long customerId) {
+        final Basket basket = basketRepository.findWithItemsAndProductsByCustomerId(customerId)
+                .orElse(new Basket(customerId));
         if(basket.getItems() == null){
             basket.setItems(new ArrayList<>());
         }
-        basket.getItems().add(basketItem);
+        if(basket.getId() != null){
+            // the version of the basket covers its lines, so a concurrent change of the same line conflicts instead of being lost
+            touch(basket);
+        }
+        return basket;
+    }
+
+    /**
+     * Marks the basket as changed by a change of its lines. The update of the basket increases its version and sets
+     * its update time, which the eviction of idle baskets is based on.
+     */
+    private static void touch(final Basket basket) {
+        basket.setLastUpdated(Instant.now());
+    }
+
+    private BasketItem addLine(final Basket basket, final Long productId) {
+        final BasketItem newItem = new BasketItem();
+        newItem.setBasket(basket);
+        //the product is known to exist, so a reference is enough and avoids loading it again
+        newItem.setProduct(productRepository.getById(productId));
+        basket.getItems().add(newItem);
+        return newItem;
+    }
+
+    private BasketDTO saveBasket(final Basket basket, final String failureMessage) {
         try{
-            final Basket updatedBasket = basketRepository.save(basket);
-            logger.info("added basketItem with Id {} to basketId {} for customerId {}", basketItem.getId(), updatedBasket.getId(), customerId);
-            return ConvertToDtoUtil.convertToBasketDTO(updatedBasket);
+            // flushing here surfaces a concurrent update of the basket (stale version or duplicate line) inside this method
+            return ConvertToDtoUtil.convertToBasketDTO(basketRepository.saveAndFlush(basket));
+        }catch (OptimisticLockingFailureException e){
+            throw e;
+        }catch (DataIntegrityViolationException e){
+            if (isDuplicateBasketOrLine(e)) {
+                // a concurrent write created the same basket or line first, the unique index rejected this one
+                throw new ConcurrencyFailureException("Basket was created concurrently", e);
+            }
+            // any other violation (for example a product removed meanwhile) won't go away on a retry
+            throw new StoreOperationException(failureMessage, e);
         }catch (Exception e){
-            throw new StoreOperationException("Unable to save product to basket", e);
+            throw new StoreOperationException(failureMessage, e);
         }
     }
 
     /**
-     * Removes an item from the basket.
-     * @param basketItemId The ID of the basket item to remove.
-     * @throws StoreOperationException if the basket item cannot be removed.
+     * Tells whether the violation comes from one of the unique constraints a concurrent creation of the same
+     * basket or basket line runs into, the only violations a retry can resolve.
      */
-    public void removeFromBasket(final Long basketItemId) {
-        try {
-            basketItemRepository.deleteById(basketItemId);
-        }catch (Exception e){
-            throw new StoreOperationException("Unable to remove basketItem", e);
+    private static boolean isDuplicateBasketOrLine(final DataIntegrityViolationException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException) {
+                final String constraintName = ((ConstraintViolationException) cause).getConstraintName();
+                if (constraintName == null) {
+                    return false;
+                }
+                // databases decorate the name (H2 reports "PUBLIC.UK_BASKET_CUSTOMER_INDEX_7 ON ..."), so match a part of it
+                final String name = constraintName.toLowerCase(Locale.ROOT);
+                return name.contains(Basket.UK_CUSTOMER) || name.contains(BasketItem.UK_BASKET_PRODUCT);
+            }
         }
+        return false;
+    }
+
+    private static String basketLockKey(final Long customerId) {
+        return "basket:" + customerId;
     }
-}
 
+    private static Optional<BasketItem> findLine(final Basket basket, final Long productId) {
+        for (final BasketItem item : basket.getItems()) {
+            if (productId.equals(item.getProduct().getId())) {
+                return Optional.of(item);
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,101 @@
+package com.sample.electronicstore.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sample.electronicstore.entity.DiscountDeal;
+import com.sample.electronicstore.entity.Product;
+import com.sample.electronicstore.repository.DiscountDealRepository;
+import com.sample.electronicstore.repository.ProductRepository;
+import com.sample.electronicstore.utils.ConvertToDtoUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Service class for dumping the whole catalog and all the discount deals as JSON arrays.
+ *
+ * <p>The rows are read from a database cursor and written to the output as they arrive. Each entity is detached
+ * once written, so neither the persistence context nor a list of DTOs grows with the size of the catalog and
+ * the heap used by a dump stays flat.</p>
+ */
+@Service
+@Transactional(readOnly = true)
+public class CatalogExportService {
+    private final ProductRepository productRepository;
+    private final DiscountDealRepository discountDealRepository;
+    private final ObjectMapper objectMapper;
+    private final EntityManager entityManager;
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogExportService.class);
+
+    /**
+     * Constructs a CatalogExportService.
+     *
+     * @param productRepository Repository for product data operations.
+     * @param discountDealRepository Repository for discount deal data operations.
+     * @param objectMapper Mapper used to write the rows.
+     * @param entityManager Entity manager the written rows are detached from.
+     */
+    @Autowired
+    public CatalogExportService(final ProductRepository productRepository, final DiscountDealRepository discountDealRepository,
+                                final ObjectMapper objectMapper, final EntityManager entityManager) {
+        this.productRepository = productRepository;
+        this.discountDealRepository = discountDealRepository;
+        this.objectMapper = objectMapper;
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * Writes all the products, ordered by id, as a JSON array of ProductDTOs.
+     *
+     * @param outputStream The stream to write to.
+     * @return The number of products written.
+     * @throws IOException if the output cannot be written.
+     */
+    public long exportProducts(final OutputStream outputStream) throws IOException {
+        try (Stream<Product> products = productRepository.streamAllOrderById()) {
+            final long count = writeArray(products.iterator(), ConvertToDtoUtil::convertToProductDTO, outputStream);
+            logger.info("exported {} products", count);
+            return count;
+        }
+    }
+
+    /**
+     * Writes all the discount deals, ordered by id, as a JSON array of DiscountDealDTOs.
+     *
+     * @param outputStream The stream to write to.
+     * @return The number of discount deals written.
+     * @throws IOException if the output cannot be written.
+     */
+    public long exportDiscountDeals(final OutputStream outputStream) throws IOException {
+        try (Stream<DiscountDeal> discountDeals = discountDealRepository.streamAllOrderById()) {
+            final long count = writeArray(discountDeals.iterator(), ConvertToDtoUtil::convertToDiscountDealDTO, outputStream);
+            logger.info("exported {} discount deals", count);
+            return count;
+        }
+    }
+
+    private <E> long writeArray(final Iterator<E> rows, final Function<E, ?> toDto, final OutputStream outputStream) throws IOException {
+        long count = 0;
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+            generator.writeStartArray();
+            while (rows.hasNext()) {
+                final E row = rows.next();
+                generator.writeObject(toDto.apply(row));
+                entityManager.detach(row);
+                count++;
+            }
+            generator.writeEndArray();
+        }
+        return count;
+    }
+}
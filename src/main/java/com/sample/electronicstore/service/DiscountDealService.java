@@ -1,28 +1,44 @@
 package com.sample.electronicstore.service;
 
+import com.sample.electronicstore.discount.DiscountRuleRegistry;
 import com.sample.electronicstore.dto.DiscountDealDTO;
+import com.sample.electronicstore.dto.KeysetPageDTO;
+import com.sample.electronicstore.entity.ActiveDeal;
 import com.sample.electronicstore.entity.DiscountDeal;
+import com.sample.electronicstore.event.ChangeEvent;
+import com.sample.electronicstore.event.ChangeType;
+import com.sample.electronicstore.event.Outbox;
 import com.sample.electronicstore.exception.StoreOperationException;
+import com.sample.electronicstore.metrics.StoreMetrics;
+import com.sample.electronicstore.repository.ActiveDealRepository;
 import com.sample.electronicstore.repository.DiscountDealRepository;
+import com.sample.electronicstore.retry.ConflictRetrier;
 import com.sample.electronicstore.utils.ConvertToDtoUtil;
 import com.sample.electronicstore.utils.ConvertToEntityUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Service class for managing discount deals in an electronic store application.
  * This class provides functionalities for creating, updating, retrieving, and deleting discount deals.
  *
- * <p>Uses pessimistic locking to ensure safe concurrent operations, particularly important
- * for operations that affect the availability and terms of discount deals.</p>
+ * <p>There is only one active deal per product. The rule is enforced by the database through the active_deal table,
+ * see {@link ActiveDeal}, instead of a lock in this service, so deal writes don't block each other and stay correct
+ * when several instances of the application run side by side. A save that loses the race for the active deal
+ * of a product is retried in a new transaction.</p>
  *
  * <p>The {@link Transactional} annotation ensures that operations are executed within a transaction context,
  * providing atomicity and enabling automatic rollback on runtime exceptions.</p>
@@ -31,60 +47,55 @@ import java.util.concurrent.locks.ReentrantLock;
 @Transactional
 public class DiscountDealService {
     private final DiscountDealRepository discountDealRepository;
+    private final ActiveDealRepository activeDealRepository;
+    private final DiscountRuleRegistry discountRuleRegistry;
+    private final Outbox outbox;
+    private final ConflictRetrier conflictRetrier;
+    private final TransactionTemplate transactionTemplate;
+    private final StoreMetrics storeMetrics;
 
     private static final Logger logger = LoggerFactory.getLogger(DiscountDealService.class);
 
-    //using finer grained locking here
-    private final ReentrantLock lock = new ReentrantLock();
-
     /**
      * Constructs a DiscountDealService with the required DiscountDealRepository.
      *
      * @param discountDealRepository Repository for discount deal data operations.
+     * @param activeDealRepository Repository for the active deal of each product.
+     * @param discountRuleRegistry Registry where saved deals are compiled into discount rules.
+     * @param outbox Outbox the changes of the deals are recorded in.
+     * @param conflictRetrier Retries saves that conflict with a concurrent save for the same product.
+     * @param transactionManager Transaction manager used to run each save attempt in its own transaction.
+     * @param storeMetrics Metrics the deal saves are recorded in.
      */
     @Autowired
-    public DiscountDealService(final DiscountDealRepository discountDealRepository) {
+    public DiscountDealService(final DiscountDealRepository discountDealRepository, final ActiveDealRepository activeDealRepository,
+                               final DiscountRuleRegistry discountRuleRegistry, final Outbox outbox,
+                               final ConflictRetrier conflictRetrier,
+                               final PlatformTransactionManager transactionManager, final StoreMetrics storeMetrics) {
         this.discountDealRepository = discountDealRepository;
+        this.activeDealRepository = activeDealRepository;
+        this.discountRuleRegistry = discountRuleRegistry;
+        this.outbox = outbox;
+        this.conflictRetrier = conflictRetrier;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.storeMetrics = storeMetrics;
     }
 
     /**
      * Creates or updates a discount deal. If an active deal exists for the same product,
-     * it is deactivated before saving the new deal.
+     * it is deactivated before saving the new deal. The saved deal is compiled into the rule registry.
+     *
+     * <p>The deactivation, the save and the swap of the active deal run as one transaction per attempt,
+     * an attempt that conflicts with a concurrent save for the same product is rolled back and retried. The changed deals
+     * are recorded in the outbox in the same transaction.</p>
      *
      * @param discountDealDTO Data Transfer Object containing discount deal details.
      * @return The saved DiscountDealDTO with updated information.
      * @throws StoreOperationException if the discount deal cannot be saved.
      */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public DiscountDealDTO saveDiscountDeal(final DiscountDealDTO discountDealDTO) {
-        lock.lock();
-        try{
-            // Check if there's an existing active deal for the product
-            final Optional<DiscountDeal> existingDeal = discountDealRepository
-                    .findByProductIdAndActive(discountDealDTO.getProductId(), true);
-
-            if (existingDeal.isPresent()) {
-                logger.info("found an active deal {} thus deactivating it", existingDeal);
-                final DiscountDeal currentActiveDeal = existingDeal.get();
-                if(currentActiveDeal.getDealDescription().equalsIgnoreCase(discountDealDTO.getDealDescription())){
-                    currentActiveDeal.setActive(discountDealDTO.isActive());
-                    return ConvertToDtoUtil.convertToDiscountDealDTO(discountDealRepository.save(currentActiveDeal));
-                }
-                else{
-                    currentActiveDeal.setActive(false);
-                    discountDealRepository.save(currentActiveDeal);
-                }
-            }
-            final DiscountDeal discountDeal = ConvertToEntityUtil.convertToDiscountDeal(discountDealDTO);
-            discountDeal.setActive(true);
-            discountDeal.setDealDescription(discountDeal.getDealDescription().toUpperCase());
-            final DiscountDeal savedDiscountDeal = discountDealRepository.save(discountDeal);
-            logger.info("saved discount deal {}", savedDiscountDeal);
-            return ConvertToDtoUtil.convertToDiscountDealDTO(savedDiscountDeal);
-        }catch (Exception e){
-            throw new StoreOperationException("Unable to save discount deal", e);
-        }finally {
-            lock.unlock();
-        }
+        return storeMetrics.time(StoreMetrics.DEAL_SAVE, () -> saveDeal(discountDealDTO));
     }
 
     /**
@@ -115,20 +126,45 @@ public class DiscountDealService {
     }
 
     /**
-     * Removes a discount deal from the store by its ID.
-     * Uses fine-grained locking to ensure thread safety during the operation.
+     * Retrieves one page of discount deals ordered by id, starting after the given id.
+     *
+     * @param afterId The id of the last deal of the previous page, null for the first page.
+     * @param size The size of the page, capped at {@link KeysetPageDTO#MAX_PAGE_SIZE}.
+     * @return The page of DiscountDealDTOs with the id to pass for the next page.
+     */
+    public KeysetPageDTO<DiscountDealDTO> getDiscountDealsPage(final Long afterId, final int size) {
+        final int pageSize = Math.min(Math.max(size, 1), KeysetPageDTO.MAX_PAGE_SIZE);
+        final List<DiscountDeal> discountDeals = discountDealRepository.findByIdGreaterThanOrderByIdAsc(afterId != null ? afterId : 0L,
+                PageRequest.of(0, pageSize));
+        final List<DiscountDealDTO> discountDealDTOS = new ArrayList<>(discountDeals.size());
+        for (final DiscountDeal discountDeal : discountDeals) {
+            discountDealDTOS.add(ConvertToDtoUtil.convertToDiscountDealDTO(discountDeal));
+        }
+        final Long nextAfterId = discountDeals.size() == pageSize ? discountDeals.get(discountDeals.size() - 1).getId() : null;
+        return new KeysetPageDTO<>(discountDealDTOS, nextAfterId);
+    }
+
+    /**
+     * Removes a discount deal from the store by its ID. The removal is recorded in the outbox in the same transaction.
      *
      * @param id The unique identifier of the discount deal to be removed.
      * @throws StoreOperationException if the discount deal cannot be removed.
      */
     public void removeDiscountDeal(final Long id) {
-        lock.lock();
         try{
-            discountDealRepository.deleteById(id);
+            final DiscountDeal discountDeal = discountDealRepository.findById(id)
+                    .orElseThrow(() -> new StoreOperationException("discount deal " + id + " not found"));
+            // release the product's active deal if it points to the removed deal
+            if (discountDeal.isActive()) {
+                activeDealRepository.findById(discountDeal.getProductId())
+                        .filter(activeDeal -> id.equals(activeDeal.getDiscountDealId()))
+                        .ifPresent(activeDealRepository::delete);
+            }
+            discountDealRepository.delete(discountDeal);
+            outbox.record(ChangeEvent.DISCOUNT_DEAL, id, discountDeal.getProductId(), discountDeal.getVersion() + 1, ChangeType.REMOVED);
+            discountRuleRegistry.evictDeal(id);
         }catch (Exception e){
             throw new StoreOperationException("unable to delete discount deal", e);
-        }finally {
-            lock.unlock();
         }
     }
 
@@ -157,6 +193,74 @@ public class DiscountDealService {
         final Optional<DiscountDeal> byProductIdAndActive = discountDealRepository.findByProductIdAndActive(productId, true);
         return byProductIdAndActive.map(ConvertToDtoUtil::convertToDiscountDealDTO).orElseGet(DiscountDealDTO::new);
     }
-}
 
+    private DiscountDealDTO saveDeal(final DiscountDealDTO discountDealDTO) {
+        try{
+            final DiscountDeal savedDiscountDeal = conflictRetrier.execute("discount_deal", "save discount deal for product " + discountDealDTO.getProductId(),
+                    () -> transactionTemplate.execute(status -> swapActiveDeal(discountDealDTO)));
+            discountRuleRegistry.register(savedDiscountDeal);
+            return ConvertToDtoUtil.convertToDiscountDealDTO(savedDiscountDeal);
+        }catch (Exception e){
+            throw new StoreOperationException("Unable to save discount deal", e);
+        }
+    }
+
+    /**
+     * Makes a new deal, or the reactivated current one, the active deal of its product.
+     * Runs inside the transaction of one save attempt.
+     */
+    private DiscountDeal swapActiveDeal(final DiscountDealDTO discountDealDTO) {
+        final Long productId = discountDealDTO.getProductId();
+        final ActiveDeal activeDeal = activeDealRepository.findById(productId)
+                .orElseGet(() -> new ActiveDeal(productId, null, null, null));
+        // Check if there's an existing active deal for the product
+        final Optional<DiscountDeal> existingDeal = discountDealRepository.findByProductIdAndActive(productId, true);
 
+        if (existingDeal.isPresent()) {
+            logger.info("found an active deal {} thus deactivating it", existingDeal);
+            final DiscountDeal currentActiveDeal = existingDeal.get();
+            if(currentActiveDeal.getDealDescription().equalsIgnoreCase(discountDealDTO.getDealDescription())){
+                currentActiveDeal.setActive(discountDealDTO.isActive());
+                // flushed so the version recorded in the outbox is the one this change wrote
+                final DiscountDeal updatedDeal = discountDealRepository.saveAndFlush(currentActiveDeal);
+                outbox.record(ChangeEvent.DISCOUNT_DEAL, updatedDeal.getId(), productId, updatedDeal.getVersion(), ChangeType.SAVED);
+                if (updatedDeal.isActive()) {
+                    claimActiveDeal(activeDeal, updatedDeal.getId());
+                } else {
+                    releaseActiveDeal(activeDeal);
+                }
+                return updatedDeal;
+            }
+            else{
+                currentActiveDeal.setActive(false);
+                discountDealRepository.saveAndFlush(currentActiveDeal);
+                outbox.record(ChangeEvent.DISCOUNT_DEAL, currentActiveDeal.getId(), productId, currentActiveDeal.getVersion(), ChangeType.SAVED);
+            }
+        }
+        final DiscountDeal discountDeal = ConvertToEntityUtil.convertToDiscountDeal(discountDealDTO);
+        discountDeal.setActive(true);
+        discountDeal.setDealDescription(discountDeal.getDealDescription().toUpperCase());
+        final DiscountDeal savedDiscountDeal = discountDealRepository.save(discountDeal);
+        outbox.record(ChangeEvent.DISCOUNT_DEAL, savedDiscountDeal.getId(), productId, savedDiscountDeal.getVersion(), ChangeType.SAVED);
+        claimActiveDeal(activeDeal, savedDiscountDeal.getId());
+        logger.info("saved discount deal {}", savedDiscountDeal);
+        return savedDiscountDeal;
+    }
+
+    private void claimActiveDeal(final ActiveDeal activeDeal, final Long discountDealId) {
+        activeDeal.setDiscountDealId(discountDealId);
+        try {
+            // flushing here surfaces a concurrent claim (duplicate key or stale version) inside this attempt
+            activeDealRepository.saveAndFlush(activeDeal);
+        } catch (DataIntegrityViolationException e) {
+            throw new ConcurrencyFailureException("active deal of product " + activeDeal.getProductId() + " was claimed concurrently", e);
+        }
+    }
+
+    private void releaseActiveDeal(final ActiveDeal activeDeal) {
+        if (activeDeal.getVersion() != null) {
+            activeDealRepository.delete(activeDeal);
+            activeDealRepository.flush();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.sample.electronicstore.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.sample.electronicstore.dto.ProductDTO;
+import com.sample.electronicstore.dto.ProductImportErrorDTO;
+import com.sample.electronicstore.dto.ProductImportResultDTO;
+import com.sample.electronicstore.entity.Product;
+import com.sample.electronicstore.event.ChangeEvent;
+import com.sample.electronicstore.event.ChangeType;
+import com.sample.electronicstore.event.Outbox;
+import com.sample.electronicstore.exception.InvalidRequestException;
+import com.sample.electronicstore.exception.StoreOperationException;
+import com.sample.electronicstore.repository.ProductRepository;
+import com.sample.electronicstore.utils.ConvertToEntityUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Service class for importing large product catalogs.
+ *
+ * <p>The import body is newline delimited JSON, one {@link ProductDTO} per line. It is parsed line by line while
+ * it is read, so the body is never held in memory. Valid rows are collected into chunks of
+ * {@code store.import.chunk-size} products and each chunk is inserted in its own transaction, which Hibernate sends
+ * as JDBC batches of {@code hibernate.jdbc.batch_size} statements thanks to the pooled product id sequence.</p>
+ *
+ * <p>A chunk that fails, for example because of a duplicate product name, is retried row by row so only the bad
+ * rows are rejected. Every rejected row is reported with its line number.</p>
+ */
+@Service
+public class ProductImportService {
+    //caps the size of the response when a whole file is rejected
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private final ProductRepository productRepository;
+    private final Outbox outbox;
+    private final ObjectReader productReader;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductImportService.class);
+
+    /**
+     * Constructs a ProductImportService.
+     *
+     * @param productRepository Repository for product data operations.
+     * @param outbox Outbox the imported products are recorded in, in the transaction of their chunk.
+     * @param objectMapper Mapper used to parse the rows of the import.
+     * @param transactionManager Transaction manager used to insert each chunk in its own transaction.
+     * @param chunkSize The number of products inserted per transaction.
+     */
+    @Autowired
+    public ProductImportService(final ProductRepository productRepository, final Outbox outbox, final ObjectMapper objectMapper,
+                                final PlatformTransactionManager transactionManager,
+                                @Value("${store.import.chunk-size:500}") final int chunkSize) {
+        this.productRepository = productRepository;
+        this.outbox = outbox;
+        this.productReader = objectMapper.readerFor(ProductDTO.class);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Imports new products from newline delimited JSON. Blank lines are skipped.
+     *
+     * @param inputStream The import body.
+     * @return Summary of the import with the rejected rows and the import rate.
+     * @throws StoreOperationException if the body cannot be read.
+     */
+    public ProductImportResultDTO importProducts(final InputStream inputStream) {
+        final long start = System.nanoTime();
+        final ImportProgress progress = new ImportProgress();
+        final List<Product> chunk = new ArrayList<>(chunkSize);
+        final List<Long> chunkRows = new ArrayList<>(chunkSize);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            String line;
+            long row = 0;
+            while ((line = reader.readLine()) != null) {
+                row++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                progress.rowsRead++;
+                final Product product = parse(line, row, progress);
+                if (product == null) {
+                    continue;
+                }
+                chunk.add(product);
+                chunkRows.add(row);
+                if (chunk.size() == chunkSize) {
+                    insertChunk(chunk, chunkRows, progress);
+                }
+            }
+            insertChunk(chunk, chunkRows, progress);
+        } catch (IOException e) {
+            throw new StoreOperationException("Unable to read product import", e);
+        }
+        final long elapsedNanos = System.nanoTime() - start;
+        final double rowsPerSecond = elapsedNanos > 0 ? progress.rowsImported * 1_000_000_000.0 / elapsedNanos : 0;
+        logger.info("imported {} of {} products in {} ms", progress.rowsImported, progress.rowsRead, elapsedNanos / 1_000_000);
+        return new ProductImportResultDTO(progress.rowsRead, progress.rowsImported, progress.rowsFailed, progress.errors,
+                elapsedNanos / 1_000_000, rowsPerSecond);
+    }
+
+    private Product parse(final String line, final long row, final ImportProgress progress) {
+        final ProductDTO productDTO;
+        try {
+            productDTO = productReader.readValue(line);
+        } catch (JsonProcessingException e) {
+            progress.fail(row, "Malformed product: " + e.getOriginalMessage());
+            return null;
+        }
+        if (productDTO.getId() != null) {
+            progress.fail(row, "Product id must not be set, import only creates products");
+            return null;
+        }
+        if (productDTO.getName() == null || productDTO.getName().trim().isEmpty()) {
+            progress.fail(row, "Product name is required");
+            return null;
+        }
+        if (productDTO.getPrice() < 0) {
+            progress.fail(row, "Product price must not be negative");
+            return null;
+        }
+        try {
+            return ConvertToEntityUtil.convertToProduct(productDTO);
+        } catch (InvalidRequestException e) {
+            progress.fail(row, e.getMessage());
+            return null;
+        }
+    }
+
+    private void insertChunk(final List<Product> chunk, final List<Long> chunkRows, final ImportProgress progress) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                productRepository.saveAll(chunk);
+                productRepository.flush();
+                final Map<Long, Integer> productVersions = new LinkedHashMap<>();
+                for (final Product product : chunk) {
+                    productVersions.put(product.getId(), product.getVersion());
+                }
+                outbox.recordProducts(productVersions, ChangeType.SAVED);
+            });
+            progress.rowsImported += chunk.size();
+        } catch (RuntimeException e) {
+            logger.info("chunk of {} products starting at row {} failed, retrying row by row", chunk.size(), chunkRows.get(0));
+            for (int i = 0; i < chunk.size(); i++) {
+                insertRow(chunk.get(i), chunkRows.get(i), progress);
+            }
+        }
+        chunk.clear();
+        chunkRows.clear();
+    }
+
+    private void insertRow(final Product product, final long row, final ImportProgress progress) {
+        // the failed chunk may have assigned an id already
+        product.setId(null);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                productRepository.saveAndFlush(product);
+                outbox.record(ChangeEvent.PRODUCT, product.getId(), product.getId(), product.getVersion(), ChangeType.SAVED);
+            });
+            progress.rowsImported++;
+        } catch (RuntimeException e) {
+            progress.fail(row, "Unable to save product: " + NestedExceptionUtils.getMostSpecificCause(e).getMessage());
+        }
+    }
+
+    /**
+     * Running counters of one import.
+     */
+    private static class ImportProgress {
+        private long rowsRead;
+        private long rowsImported;
+        private long rowsFailed;
+        private final List<ProductImportErrorDTO> errors = new ArrayList<>();
+
+        private void fail(final long row, final String message) {
+            rowsFailed++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new ProductImportErrorDTO(row, message));
+            }
+        }
+    }
+}
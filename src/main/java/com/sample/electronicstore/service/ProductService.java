@@ -1,21 +1,29 @@
 package com.sample.electronicstore.service;
 
+import com.sample.electronicstore.cache.ProductCatalogCache;
+import com.sample.electronicstore.dto.KeysetPageDTO;
 import com.sample.electronicstore.dto.ProductDTO;
 import com.sample.electronicstore.entity.Product;
+import com.sample.electronicstore.event.ChangeEvent;
+import com.sample.electronicstore.event.ChangeType;
+import com.sample.electronicstore.event.Outbox;
+import com.sample.electronicstore.exception.InvalidRequestException;
 import com.sample.electronicstore.exception.StoreOperationException;
+import com.sample.electronicstore.lock.StripedLockManager;
+import com.sample.electronicstore.metrics.StoreMetrics;
 import com.sample.electronicstore.repository.ProductRepository;
 import com.sample.electronicstore.utils.ConvertToDtoUtil;
 import com.sample.electronicstore.utils.ConvertToEntityUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Service class for managing products in an electronic store application.
@@ -23,6 +31,7 @@ import java.util.concurrent.locks.ReentrantLock;
  *
  * <p>Uses pessimistic locking (finer grained locks) to ensure safe concurrent operations on products,
  * making it suitable for scenarios where product updates are less frequent but require high consistency.
+ * Locks are striped per product id (and per product name for new products), so writes on different products run in parallel.
  * This approach is efficient for a single instance application but may not be suitable for distributed environments.</p>
  *
  * <p>The {@link Transactional} annotation ensures that operations are executed within a transaction context,
@@ -32,42 +41,65 @@ import java.util.concurrent.locks.ReentrantLock;
 @Transactional
 public class ProductService {
     private final ProductRepository productRepository;
-    //using finer grained locking here
-    private final ReentrantLock lock = new ReentrantLock();
+    private final ProductCatalogCache productCatalogCache;
+    private final Outbox outbox;
+    //using finer grained locking here, one lock stripe per product
+    private final StripedLockManager lockManager;
+    private final StoreMetrics storeMetrics;
     private static final Logger logger = LoggerFactory.getLogger(ProductService.class);
 
     /**
      * Constructs a ProductService with the required ProductRepository.
      *
      * @param productRepository Repository for product data operations.
+     * @param productCatalogCache Cache of products that is kept up to date by the writes of this service.
+     * @param outbox Outbox the changes of the products are recorded in.
+     * @param lockManager Striped locks keyed by product.
+     * @param storeMetrics Metrics the product saves are recorded in.
      */
     @Autowired
-    public ProductService(final ProductRepository productRepository) {
+    public ProductService(final ProductRepository productRepository, final ProductCatalogCache productCatalogCache,
+                          final Outbox outbox, final StripedLockManager lockManager, final StoreMetrics storeMetrics) {
         this.productRepository = productRepository;
+        this.productCatalogCache = productCatalogCache;
+        this.outbox = outbox;
+        this.lockManager = lockManager;
+        this.storeMetrics = storeMetrics;
     }
 
 
     /**
      * Creates or updates a product in the store.
      * Uses fine-grained locking to ensure thread safety during the operation.
+     * The saved product is written through to the catalog cache once the transaction commits,
+     * and the change is recorded in the outbox in the same transaction.
      *
      * @param productDTO Data Transfer Object containing product details.
      * @return The saved ProductDTO with updated information.
+     * @throws InvalidRequestException if the price of the product is out of range.
      * @throws StoreOperationException if the product cannot be saved.
      */
     public ProductDTO saveProduct(final ProductDTO productDTO) {
-        //taking fine grain locking
-        lock.lock();
-        try {
-            final Product product = ConvertToEntityUtil.convertToProduct(productDTO);
-            final Product savedProduct = productRepository.save(product);
-            logger.info("new product saved {}", product);
-            return ConvertToDtoUtil.convertToProductDTO(savedProduct);
-        } catch(Exception e){
-            throw new StoreOperationException("Failed to save product", e);
-        }finally {
-            lock.unlock();
-        }
+        //taking fine grain locking, product name is unique so creates are locked on the name as well, the timer includes the lock wait
+        return storeMetrics.time(StoreMetrics.PRODUCT_SAVE, () -> lockManager.withLocks(() -> {
+            try {
+                final Product product = ConvertToEntityUtil.convertToProduct(productDTO);
+                // an update carries no version, it applies to the stored product and a concurrent update of it fails
+                if (product.getId() != null) {
+                    productRepository.findById(product.getId()).ifPresent(stored -> product.setVersion(stored.getVersion()));
+                }
+                // flushed so the version recorded in the outbox is the one this change wrote
+                final Product savedProduct = productRepository.saveAndFlush(product);
+                outbox.record(ChangeEvent.PRODUCT, savedProduct.getId(), savedProduct.getId(), savedProduct.getVersion(), ChangeType.SAVED);
+                productCatalogCache.put(savedProduct);
+                logger.info("new product saved {}", product);
+                return ConvertToDtoUtil.convertToProductDTO(savedProduct);
+            } catch(InvalidRequestException e){
+                throw e;
+            } catch(Exception e){
+                throw new StoreOperationException("Failed to save product", e);
+            }
+        }, productLockKeys(productDTO)));
     }
 
     /**
@@ -101,23 +133,62 @@ public class ProductService {
         return productList;
     }
 
+    /**
+     * Retrieves one page of products ordered by id, starting after the given id.
+     * Unlike an offset, the id keeps the cost of a page the same however deep into the catalog it is.
+     *
+     * @param afterId The id of the last product of the previous page, null for the first page.
+     * @param size The size of the page, capped at {@link KeysetPageDTO#MAX_PAGE_SIZE}.
+     * @return The page of ProductDTOs with the id to pass for the next page.
+     */
+    public KeysetPageDTO<ProductDTO> getProductsPage(final Long afterId, final int size) {
+        final int pageSize = Math.min(Math.max(size, 1), KeysetPageDTO.MAX_PAGE_SIZE);
+        final List<Product> products = productRepository.findByIdGreaterThanOrderByIdAsc(afterId != null ? afterId : 0L,
+                PageRequest.of(0, pageSize));
+        final List<ProductDTO> productList = new ArrayList<>(products.size());
+        for (Product product : products) {
+            productList.add(ConvertToDtoUtil.convertToProductDTO(product));
+        }
+        final Long nextAfterId = products.size() == pageSize ? products.get(products.size() - 1).getId() : null;
+        return new KeysetPageDTO<>(productList, nextAfterId);
+    }
+
     /**
      * Removes a product from the store by its ID.
      * Uses fine-grained locking to ensure thread safety during the operation.
+     * The removal is recorded in the outbox in the same transaction.
      *
      * @param id The unique identifier of the product to be removed.
      * @throws StoreOperationException if the product cannot be removed.
      */
     public void removeProduct(final Long id) {
-        lock.lock();
-        try {
-            productRepository.deleteById(id);
-        } catch(Exception e){
-            throw new StoreOperationException("Failed to remove product", e);
-        }finally {
-            lock.unlock();
-        }
+        lockManager.withLock(productLockKey(id), () -> {
+            try {
+                final Product product = productRepository.findById(id).orElseThrow(() -> new StoreOperationException("Product Not Found"));
+                productRepository.delete(product);
+                outbox.record(ChangeEvent.PRODUCT, id, id, product.getVersion() + 1, ChangeType.REMOVED);
+                productCatalogCache.evict(id);
+            } catch(Exception e){
+                throw new StoreOperationException("Failed to remove product", e);
+            }
+        });
     }
-}
 
+    /**
+     * Lock key of a product.
+     *
+     * @param productId The id of the product.
+     * @return The key to lock on.
+     */
+    private static String productLockKey(final Long productId) {
+        return "product:" + productId;
+    }
 
+    private static Object[] productLockKeys(final ProductDTO productDTO) {
+        final String nameKey = "product-name:" + productDTO.getName();
+        if (productDTO.getId() == null) {
+            return new Object[]{nameKey};
+        }
+        return new Object[]{productLockKey(productDTO.getId()), nameKey};
+    }
+}
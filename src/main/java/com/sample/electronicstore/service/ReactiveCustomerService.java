@@ -0,0 +1,230 @@
+package com.sample.electronicstore.service;
+
+import com.sample.electronicstore.cache.BasketTotals;
+import com.sample.electronicstore.cache.LineTotal;
+import com.sample.electronicstore.cache.ProductSnapshot;
+import com.sample.electronicstore.cache.ReceiptTotalsCache;
+import com.sample.electronicstore.discount.DiscountRule;
+import com.sample.electronicstore.discount.DiscountRuleRegistry;
+import com.sample.electronicstore.discount.ReceiptLineEvaluator;
+import com.sample.electronicstore.dto.BasketDTO;
+import com.sample.electronicstore.dto.BasketItemDTO;
+import com.sample.electronicstore.dto.ReceiptDTO;
+import com.sample.electronicstore.entity.DiscountDeal;
+import com.sample.electronicstore.entity.Receipt;
+import com.sample.electronicstore.entity.ReceiptLine;
+import com.sample.electronicstore.exception.StoreOperationException;
+import com.sample.electronicstore.metrics.StoreMetrics;
+import com.sample.electronicstore.repository.ReactiveStoreRepository;
+import com.sample.electronicstore.retry.ConflictRetrier;
+import com.sample.electronicstore.utils.ConvertToDtoUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Reactive counterpart of the customer flows of {@link BasketService} and {@link ReceiptService}, for the endpoints
+ * served by the reactive server. The baskets, products, deals and receipts are the same rows the MVC endpoints use.
+ *
+ * <p>Each flow runs in one R2DBC transaction. A change of a basket first increases the version of the basket,
+ * which locks its row, so the changes of a basket are serialized by the database instead of by a lock in this
+ * instance, and a cached receipt of the basket is no longer returned, like for a change through JPA. A change that loses
+ * a race on a unique key is retried by the {@link ConflictRetrier}, with the backoff on a timer.</p>
+ *
+ * <p>Receipt lines are priced by the same {@link DiscountRuleRegistry} rules and {@link ReceiptLineEvaluator} as
+ * the MVC receipts, and a receipt is written once per state of a basket, so both endpoints return the same receipt
+ * for the same basket.</p>
+ */
+@Service
+public class ReactiveCustomerService {
+    private final ReactiveStoreRepository reactiveStoreRepository;
+    private final DiscountRuleRegistry discountRuleRegistry;
+    private final ReceiptLineEvaluator receiptLineEvaluator;
+    private final ReceiptTotalsCache receiptTotalsCache;
+    private final ConflictRetrier conflictRetrier;
+    private final StoreMetrics storeMetrics;
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveCustomerService.class);
+
+    /**
+     * Constructs a ReactiveCustomerService.
+     *
+     * @param reactiveStoreRepository Repository the baskets and receipts are read and written with.
+     * @param discountRuleRegistry Registry of compiled discount rules.
+     * @param receiptLineEvaluator Evaluates the lines of a receipt, in parallel for large baskets.
+     * @param receiptTotalsCache Cache of receipt totals, the changed lines of a basket are dropped from it.
+     * @param conflictRetrier Retries changes that conflict with a concurrent change.
+     * @param storeMetrics Metrics the operations are recorded in.
+     */
+    @Autowired
+    public ReactiveCustomerService(final ReactiveStoreRepository reactiveStoreRepository, final DiscountRuleRegistry discountRuleRegistry,
+                                   final ReceiptLineEvaluator receiptLineEvaluator, final ReceiptTotalsCache receiptTotalsCache,
+                                   final ConflictRetrier conflictRetrier, final StoreMetrics storeMetrics) {
+        this.reactiveStoreRepository = reactiveStoreRepository;
+        this.discountRuleRegistry = discountRuleRegistry;
+        this.receiptLineEvaluator = receiptLineEvaluator;
+        this.receiptTotalsCache = receiptTotalsCache;
+        this.conflictRetrier = conflictRetrier;
+        this.storeMetrics = storeMetrics;
+    }
+
+    /**
+     * Adds a product to a customer's basket. If the basket does not exist, a new one is created.
+     * If the basket already holds the product, the quantity of its line is increased.
+     *
+     * @param customerId The ID of the customer.
+     * @param productId The ID of the product to add to the basket.
+     * @param quantity The quantity of the product to add.
+     * @return The updated basket.
+     */
+    public Mono<BasketDTO> addToBasket(final Long customerId, final Long productId, final int quantity) {
+        final Mono<BasketDTO> attempt = reactiveStoreRepository.transactional(reactiveStoreRepository.findProduct(productId)
+                .switchIfEmpty(Mono.error(() -> new StoreOperationException("Product not found for" + productId)))
+                .flatMap(product -> reactiveStoreRepository.findBasketIdByCustomerId(customerId)
+                        .switchIfEmpty(Mono.defer(() -> reactiveStoreRepository.insertBasket(customerId))))
+                .flatMap(basketId -> reactiveStoreRepository.incrementBasketVersion(basketId)
+                        .then(reactiveStoreRepository.addQuantity(basketId, productId, quantity))
+                        .flatMap(updated -> updated > 0 ? Mono.<Void>empty() : reactiveStoreRepository.insertItem(basketId, productId, quantity))
+                        .then(reactiveStoreRepository.findBasket(basketId))))
+                .onErrorMap(DataIntegrityViolationException.class,
+                        e -> new ConcurrencyFailureException("Basket of customer " + customerId + " was changed concurrently", e));
+
+        return storeMetrics.time(StoreMetrics.REACTIVE_BASKET_ADD, conflictRetrier
+                .execute("basket", "add product " + productId + " to basket of customer " + customerId, attempt)
+                .doOnSuccess(basket -> logger.info("added quantity {} of productId {} to basketId {} for customerId {}",
+                        quantity, productId, basket.getId(), customerId))
+                .onErrorMap(ConcurrencyFailureException.class, e -> new StoreOperationException("Basket was updated concurrently", e)));
+    }
+
+    /**
+     * Removes an item from the basket. The version of the basket is increased, like for any other change of its lines.
+     *
+     * @param basketItemId The ID of the basket item to remove.
+     * @return Completes once the item is removed.
+     */
+    public Mono<Void> removeFromBasket(final Long basketItemId) {
+        final Mono<BasketItemDTO> attempt = reactiveStoreRepository.transactional(reactiveStoreRepository.findItem(basketItemId)
+                .switchIfEmpty(Mono.error(() -> new StoreOperationException("Unable to remove basketItem, not found for " + basketItemId)))
+                .flatMap(item -> reactiveStoreRepository.incrementBasketVersion(item.getBasketId())
+                        .then(reactiveStoreRepository.deleteItem(basketItemId))
+                        .flatMap(deleted -> deleted > 0 ? Mono.just(item)
+                                : Mono.error(new StoreOperationException("Unable to remove basketItem, not found for " + basketItemId)))));
+
+        return storeMetrics.time(StoreMetrics.REACTIVE_BASKET_REMOVE, conflictRetrier
+                .execute("basket", "remove basketItem " + basketItemId, attempt)
+                .onErrorMap(ConcurrencyFailureException.class, e -> new StoreOperationException("Basket was updated concurrently", e))
+                .then());
+    }
+
+    /**
+     * Calculates the receipt for a given basket, or returns the receipt already written for the same version
+     * of the basket with the same prices and deals.
+     *
+     * @param basketId The ID of the customer's basket.
+     * @return The receipt, fails with a NoSuchElementException if the basket is not found.
+     */
+    public Mono<ReceiptDTO> calculateReceipt(final Long basketId) {
+        final Mono<BasketTotals> attempt = reactiveStoreRepository.transactional(reactiveStoreRepository.findBasketVersion(basketId)
+                .switchIfEmpty(Mono.error(() -> new NoSuchElementException("Basket not found for Id {}" + basketId)))
+                .flatMap(version -> reactiveStoreRepository.findLines(basketId).collectList()
+                        .flatMap(lines -> reactiveStoreRepository.findActiveDeals(productIds(lines))
+                                .collectMap(DiscountDeal::getProductId)
+                                .flatMap(deals -> writeReceipt(basketId, version, evaluate(basketId, lines, deals))))))
+                .onErrorMap(DataIntegrityViolationException.class,
+                        e -> new ConcurrencyFailureException("Receipt of basket " + basketId + " was saved concurrently", e));
+
+        return storeMetrics.time(StoreMetrics.REACTIVE_RECEIPT_CALCULATE, conflictRetrier
+                .execute("receipt", "calculate receipt of basket " + basketId, attempt)
+                .map(totals -> {
+                    receiptTotalsCache.put(basketId, totals);
+                    return totals.getReceipt();
+                }));
+    }
+
+    /**
+     * Prices the lines of a basket with the compiled rules of their active deals.
+     *
+     * @return The line totals keyed by product id, in the order of the basket lines.
+     */
+    private Map<Long, LineTotal> evaluate(final Long basketId, final List<ReactiveStoreRepository.BasketLine> basketLines,
+                                          final Map<Long, DiscountDeal> activeDeals) {
+        final LineTotal[] lineTotals = new LineTotal[basketLines.size()];
+        final ProductSnapshot[] products = new ProductSnapshot[basketLines.size()];
+        final int[] quantities = new int[basketLines.size()];
+        final DiscountDeal[] deals = new DiscountDeal[basketLines.size()];
+        final DiscountRule[] rules = new DiscountRule[basketLines.size()];
+        for (int i = 0; i < basketLines.size(); i++) {
+            // the row read in this transaction, as the MVC receipt does, so both hash the same prices and write the same receipt
+            products[i] = ProductSnapshot.of(basketLines.get(i).getProduct());
+            quantities[i] = basketLines.get(i).getQuantity();
+            deals[i] = activeDeals.get(products[i].getId());
+            if (deals[i] != null) {
+                rules[i] = discountRuleRegistry.ruleFor(deals[i]);
+            }
+        }
+        receiptLineEvaluator.evaluate(lineTotals, products, quantities, deals, rules);
+
+        final Map<Long, LineTotal> lines = new LinkedHashMap<>();
+        int discountedLines = 0;
+        for (int i = 0; i < lineTotals.length; i++) {
+            lines.put(products[i].getId(), lineTotals[i]);
+            if (lineTotals[i].isDiscounted()) {
+                discountedLines++;
+            }
+        }
+        logger.info("evaluated {} lines of basket {}", lineTotals.length, basketId);
+        storeMetrics.recordReceipt(lineTotals.length, discountedLines);
+        return lines;
+    }
+
+    /**
+     * Returns the receipt already written for this state of the basket, or writes it.
+     */
+    private Mono<BasketTotals> writeReceipt(final Long basketId, final int basketVersion, final Map<Long, LineTotal> lines) {
+        final String dealSetHash = ReceiptService.dealSetHash(lines.values());
+        return reactiveStoreRepository.findReceipt(basketId, basketVersion, dealSetHash)
+                .flatMap(existing -> reactiveStoreRepository.findReceiptLines(existing.getId()).collectList()
+                        .map(receiptLines -> ConvertToDtoUtil.convertToReceiptDTO(existing, receiptLines)))
+                .switchIfEmpty(Mono.defer(() -> {
+                    final Receipt receipt = new Receipt();
+                    receipt.setBasketId(basketId);
+                    receipt.setBasketVersion(basketVersion);
+                    receipt.setDealSetHash(dealSetHash);
+                    final Set<DiscountDeal> appliedDeals = new HashSet<>();
+                    long total = 0;
+                    for (final LineTotal line : lines.values()) {
+                        if (line.isDiscounted()) {
+                            final DiscountDeal deal = new DiscountDeal();
+                            deal.setId(line.getDealId());
+                            appliedDeals.add(deal);
+                        }
+                        total += line.getSubtotal();
+                    }
+                    receipt.setDiscountDeals(appliedDeals);
+                    receipt.setTotal(total);
+                    final List<ReceiptLine> receiptLines = ReceiptService.receiptLines(null, lines.values());
+                    return reactiveStoreRepository.insertReceipt(receipt, receiptLines)
+                            .map(saved -> ConvertToDtoUtil.convertToReceiptDTO(saved, receiptLines));
+                }))
+                .map(receipt -> new BasketTotals(basketVersion, lines, receipt));
+    }
+
+    private static Set<Long> productIds(final List<ReactiveStoreRepository.BasketLine> lines) {
+        final Set<Long> productIds = new HashSet<>();
+        for (final ReactiveStoreRepository.BasketLine line : lines) {
+            productIds.add(line.getProduct().getId());
+        }
+        return productIds;
+    }
+}
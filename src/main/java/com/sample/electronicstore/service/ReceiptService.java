@@ -1,216 +1,400 @@
 package com.sample.electronicstore.service;
 
+import com.sample.electronicstore.cache.BasketTotals;
+import com.sample.electronicstore.cache.LineTotal;
+import com.sample.electronicstore.cache.ProductCatalogCache;
+import com.sample.electronicstore.cache.ProductSnapshot;
+import com.sample.electronicstore.cache.ReceiptTotalsCache;
+import com.sample.electronicstore.discount.DiscountRule;
+import com.sample.electronicstore.discount.DiscountRuleRegistry;
+import com.sample.electronicstore.discount.ReceiptLineEvaluator;
 import com.sample.electronicstore.dto.ReceiptDTO;
+import com.sample.electronicstore.dto.ReceiptLineDTO;
 import com.sample.electronicstore.entity.Basket;
 import com.sample.electronicstore.entity.BasketItem;
 import com.sample.electronicstore.entity.DiscountDeal;
-import com.sample.electronicstore.entity.Product;
 import com.sample.electronicstore.entity.Receipt;
+import com.sample.electronicstore.entity.ReceiptIdempotency;
+import com.sample.electronicstore.entity.ReceiptLine;
+import com.sample.electronicstore.exception.StoreOperationException;
+import com.sample.electronicstore.metrics.StoreMetrics;
+import com.sample.electronicstore.money.Money;
+import com.sample.electronicstore.repository.BasketItemRepository;
 import com.sample.electronicstore.repository.BasketRepository;
 import com.sample.electronicstore.repository.DiscountDealRepository;
+import com.sample.electronicstore.repository.ReceiptIdempotencyRepository;
+import com.sample.electronicstore.repository.ReceiptLineRepository;
 import com.sample.electronicstore.repository.ReceiptRepository;
+import com.sample.electronicstore.retry.ConflictRetrier;
 import com.sample.electronicstore.utils.ConvertToDtoUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Service class for managing receipts in an electronic store application.
  * This class provides functionality to calculate receipts for customer baskets,
  * taking into account the current discount deals applicable to the products in the basket.
  *
- * <p>It supports dynamic discount rules based on the descriptions provided in the DiscountDeal entities.</p>
+ * <p>It supports dynamic discount rules based on the descriptions provided in the DiscountDeal entities.
+ * The descriptions are compiled into rules by the {@link DiscountRuleRegistry} when deals are saved,
+ * so calculating a receipt only looks up the rule and evaluates it.</p>
+ *
+ * <p>The last receipt of each basket is kept in the {@link ReceiptTotalsCache}, a basket that is unchanged (same
+ * version, prices and deals) gets its previous receipt back without calculation and without a new receipt row.</p>
+ *
+ * <p>Receipts are unique per basket, basket version and deal set hash, so a receipt is written once for each
+ * state of a basket even across instances of the application.</p>
+ *
+ * <p>The lines of a receipt are stored in the receipt_line table and returned as structured lines. The text view of
+ * a receipt is only rendered on request by {@link #withDetails(ReceiptDTO)}.</p>
+ *
+ * <p>The lines are evaluated by the {@link ReceiptLineEvaluator}, in parallel once a basket has enough lines to evaluate.</p>
  */
 @Service
 @Transactional
 public class ReceiptService {
     private final ReceiptRepository receiptRepository;
+    private final ReceiptLineRepository receiptLineRepository;
+    private final ReceiptIdempotencyRepository receiptIdempotencyRepository;
     private final BasketRepository basketRepository;
+    private final BasketItemRepository basketItemRepository;
     private final DiscountDealRepository discountDealRepository;
+    private final DiscountRuleRegistry discountRuleRegistry;
+    private final ProductCatalogCache productCatalogCache;
+    private final StoreMetrics storeMetrics;
+    private final ReceiptTotalsCache receiptTotalsCache;
+    private final ConflictRetrier conflictRetrier;
+    private final TransactionTemplate transactionTemplate;
+    private final ReceiptLineEvaluator receiptLineEvaluator;
 
     private static final Logger logger = LoggerFactory.getLogger(ReceiptService.class);
 
-    private static final Pattern BUY_N_GET_M_FREE_PATTERN = Pattern.compile("Buy (\\d+) Get (\\d+) Free", Pattern.CASE_INSENSITIVE);
-    private static final Pattern BUY_N_GET_M_PERCENT_OFF_PATTERN = Pattern.compile("Buy (\\d+) Get (\\d+)% off on the next", Pattern.CASE_INSENSITIVE);
-
     /**
      * Constructs a ReceiptService with necessary repositories.
      *
      * @param receiptRepository      Repository for receipt data operations.
+     * @param receiptLineRepository  Repository for receipt line data operations.
+     * @param receiptIdempotencyRepository Repository linking idempotency keys to the receipts they returned.
      * @param basketRepository       Repository for basket data operations.
+     * @param basketItemRepository   Repository the current prices of the products in a basket are read from.
      * @param discountDealRepository Repository for discount deal data operations.
+     * @param discountRuleRegistry   Registry of compiled discount rules.
+     * @param productCatalogCache    Cache the product names of the receipt details are read from.
+     * @param storeMetrics           Metrics the receipt calculations are recorded in.
+     * @param receiptTotalsCache     Cache of the line totals and last receipt of each basket.
+     * @param conflictRetrier        Retries a calculation whose receipt was saved concurrently.
+     * @param transactionManager     Transaction manager used to run each calculation attempt in its own transaction.
+     * @param receiptLineEvaluator   Evaluates the lines of a receipt, in parallel for large baskets.
      */
     @Autowired
-    public ReceiptService(final ReceiptRepository receiptRepository, final BasketRepository basketRepository, final DiscountDealRepository discountDealRepository) {
+    public ReceiptService(final ReceiptRepository receiptRepository, final ReceiptLineRepository receiptLineRepository,
+                          final ReceiptIdempotencyRepository receiptIdempotencyRepository, final BasketRepository basketRepository,
+                          final BasketItemRepository basketItemRepository, final DiscountDealRepository discountDealRepository,
+                          final DiscountRuleRegistry discountRuleRegistry, final ProductCatalogCache productCatalogCache,
+                          final StoreMetrics storeMetrics, final ReceiptTotalsCache receiptTotalsCache,
+                          final ConflictRetrier conflictRetrier, final PlatformTransactionManager transactionManager,
+                          final ReceiptLineEvaluator receiptLineEvaluator) {
         this.receiptRepository = receiptRepository;
+        this.receiptLineRepository = receiptLineRepository;
+        this.receiptIdempotencyRepository = receiptIdempotencyRepository;
         this.basketRepository = basketRepository;
+        this.basketItemRepository = basketItemRepository;
         this.discountDealRepository = discountDealRepository;
+        this.discountRuleRegistry = discountRuleRegistry;
+        this.productCatalogCache = productCatalogCache;
+        this.storeMetrics = storeMetrics;
+        this.receiptTotalsCache = receiptTotalsCache;
+        this.conflictRetrier = conflictRetrier;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.receiptLineEvaluator = receiptLineEvaluator;
     }
 
     /**
      * Calculates the receipt for a given basket ID. This includes the total price,
-     * with discounts applied if applicable, and details of all items and discounts.
+     * with discounts applied if applicable, and the lines of all items and discounts.
      *
      * @param basketId The ID of the customer's basket.
-     * @return A ReceiptDTO that contains the calculated total and details of the receipt.
+     * @return A ReceiptDTO that contains the calculated total and lines of the receipt.
      * @throws NoSuchElementException if the basket is not found.
      */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public ReceiptDTO calculateReceipt(final Long basketId) {
-        final Basket basket = basketRepository.findById(basketId)
-                .orElseThrow(() -> new NoSuchElementException("Basket not found for Id {}" + basketId));
+        return calculateReceipt(basketId, null);
+    }
 
-        double total = 0;
-        final Set<DiscountDeal> appliedDeals = new HashSet<>();
-        final StringBuilder detailsBuilder = new StringBuilder();
-        final StringBuilder itemsBuilder = new StringBuilder();
+    /**
+     * Calculates the receipt for a given basket ID, or returns the receipt already calculated for the same
+     * version of the basket with the same prices and deals, so repeated calls don't write new receipts.
+     *
+     * <p>If an idempotency key is given, it is linked to the returned receipt, whether the receipt is new or was already
+     * calculated. A later call with the same key returns that receipt without calculation, even if the basket changed since.</p>
+     *
+     * @param basketId The ID of the customer's basket.
+     * @param idempotencyKey Key of the client request, or null.
+     * @return A ReceiptDTO that contains the calculated total and lines of the receipt.
+     * @throws NoSuchElementException if the basket is not found.
+     * @throws StoreOperationException if the idempotency key was used for another basket.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ReceiptDTO calculateReceipt(final Long basketId, final String idempotencyKey) {
+        // a concurrent calculation of the same receipt makes the insert fail on the unique key,
+        // the retry then finds and returns the receipt the other calculation saved
+        return storeMetrics.time(StoreMetrics.RECEIPT_CALCULATE, () -> conflictRetrier.execute("receipt",
+                "calculate receipt of basket " + basketId, () -> transactionTemplate.execute(status -> calculate(basketId, idempotencyKey))));
+    }
 
+    private ReceiptDTO calculate(final Long basketId, final String idempotencyKey) {
+        if (idempotencyKey != null) {
+            final Optional<ReceiptIdempotency> known = receiptIdempotencyRepository.findById(idempotencyKey);
+            if (known.isPresent()) {
+                return replay(basketId, known.get());
+            }
+        }
+
+        final BasketTotals cached = receiptTotalsCache.get(basketId);
+        if (cached != null && isCurrent(basketId, cached)) {
+            logger.info("basket {} is unchanged since receipt {}, returning it", basketId, cached.getReceipt().getId());
+            storeMetrics.recordReceipt(cached.getLines().size(), cached.getDiscountedLines());
+            storeMetrics.recordReceiptCache(true, 0);
+            linkIdempotencyKey(idempotencyKey, basketId, cached.getReceipt().getId());
+            return cached.getReceipt();
+        }
+
+        final Basket basket = basketRepository.findWithItemsAndProductsById(basketId)
+                .orElseThrow(() -> new NoSuchElementException("Basket not found for Id {}" + basketId));
+
+        // fetch the active deals of all products in the basket at once instead of one query per item
+        final Set<Long> productIds = new HashSet<>();
         for (final BasketItem item : basket.getItems()) {
-            final Product product = item.getProduct();
-            int quantity = item.getQuantity();
-            double price = product.getPrice() * quantity;
-
-            itemsBuilder.append(" - Product: ").append(product.getName())
-                    .append(", Quantity: ").append(item.getQuantity()).append("\n");
-
-            final DiscountDeal deal = discountDealRepository.findByProductIdAndActive(product.getId(), true)
-                    .orElse(null);
-
-            logger.info("found discount deal {} for product id {}", deal, product.getId());
-            itemsBuilder.append("Applied Discounts:\n");
-            if (deal != null) {
-                // Parse the deal description and apply the discount
-                final DiscountAppliedResult result = applyDiscount(deal, product, quantity);
-                price = result.getPriceAfterDiscount();
-                if (result.isDiscountApplied()) {
-                    logger.info("price calculated with discount for basketItem {} is {}", item.getId(), price);
-                    itemsBuilder.append(" - ").append(deal.getDealDescription()).append("\n");
-                    appliedDeals.add(deal);
-                }
-            } else {
-                logger.info("No discount applied for product {} and after discount price is {}", product, price);
+            productIds.add(item.getProduct().getId());
+        }
+        final Map<Long, DiscountDeal> activeDeals = discountDealRepository.findActiveByProductIds(productIds);
+
+        // collect the inputs of the lines first, the evaluation itself makes no repository or cache calls
+        final List<BasketItem> items = basket.getItems();
+        final LineTotal[] lineTotals = new LineTotal[items.size()];
+        final ProductSnapshot[] products = new ProductSnapshot[items.size()];
+        final int[] quantities = new int[items.size()];
+        final DiscountDeal[] deals = new DiscountDeal[items.size()];
+        final DiscountRule[] rules = new DiscountRule[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            final BasketItem item = items.get(i);
+            products[i] = ProductSnapshot.of(item.getProduct());
+            quantities[i] = item.getQuantity();
+            deals[i] = activeDeals.get(products[i].getId());
+            if (deals[i] != null) {
+                rules[i] = discountRuleRegistry.ruleFor(deals[i]);
+            }
+        }
+        final int evaluatedLines = receiptLineEvaluator.evaluate(lineTotals, products, quantities, deals, rules);
+
+        long total = 0;
+        int discountedLines = 0;
+        final Map<Long, LineTotal> lines = new LinkedHashMap<>();
+        final Set<DiscountDeal> appliedDeals = new HashSet<>();
+        for (int i = 0; i < lineTotals.length; i++) {
+            final LineTotal line = lineTotals[i];
+            lines.put(products[i].getId(), line);
+            if (line.isDiscounted()) {
+                appliedDeals.add(deals[i]);
+                discountedLines++;
             }
-            total += price;
+            total += line.getSubtotal();
+        }
+        logger.info("evaluated {} lines of basket {}", evaluatedLines, basketId);
+
+        storeMetrics.recordReceipt(basket.getItems().size(), discountedLines);
+        storeMetrics.recordReceiptCache(false, evaluatedLines);
+
+        final String dealSetHash = dealSetHash(lines.values());
+        final Optional<Receipt> existing = receiptRepository.findByBasketIdAndBasketVersionAndDealSetHash(basketId, basket.getVersion(), dealSetHash);
+        final Receipt savedReceipt = existing.isPresent() ? existing.get()
+                : saveReceipt(basketId, basket.getVersion(), dealSetHash, appliedDeals, total);
+        linkIdempotencyKey(idempotencyKey, basketId, savedReceipt.getId());
+        final List<ReceiptLine> receiptLines = receiptLines(savedReceipt.getId(), lines.values());
+        if (!existing.isPresent()) {
+            // new lines get their ids from the pooled sequence and are sent as one batch on commit
+            receiptLineRepository.saveAll(receiptLines);
         }
 
+        final ReceiptDTO receiptDTO = ConvertToDtoUtil.convertToReceiptDTO(savedReceipt, receiptLines);
+        receiptTotalsCache.put(basketId, new BasketTotals(basket.getVersion(), lines, receiptDTO));
+        return receiptDTO;
+    }
+
+    private Receipt saveReceipt(final Long basketId, final int basketVersion, final String dealSetHash,
+                                final Set<DiscountDeal> appliedDeals, final long total) {
         final Receipt receipt = new Receipt();
         receipt.setBasketId(basketId);
+        receipt.setBasketVersion(basketVersion);
+        receipt.setDealSetHash(dealSetHash);
         receipt.setDiscountDeals(appliedDeals);
         receipt.setTotal(total);
-        final Receipt savedReceipt = receiptRepository.save(receipt);
-        detailsBuilder.append("Receipt ID: ").append(savedReceipt.getId()).append("\n");
-        detailsBuilder.append("Items:\n");
-        detailsBuilder.append(itemsBuilder);
-        detailsBuilder.append("Total: ").append(savedReceipt.getTotal()).append("\n");
+        try {
+            // flushing here surfaces a receipt saved concurrently for the same key inside the attempt
+            return receiptRepository.saveAndFlush(receipt);
+        } catch (DataIntegrityViolationException e) {
+            throw new ConcurrencyFailureException("Receipt of basket " + basketId + " was saved concurrently", e);
+        }
+    }
+
+    /**
+     * Links the idempotency key of the request, if any, to the returned receipt, in the transaction of the calculation.
+     */
+    private void linkIdempotencyKey(final String idempotencyKey, final Long basketId, final Long receiptId) {
+        if (idempotencyKey == null) {
+            return;
+        }
+        try {
+            // flushing here surfaces a concurrent request with the same key inside the attempt, the retry replays its receipt
+            receiptIdempotencyRepository.saveAndFlush(new ReceiptIdempotency(idempotencyKey, receiptId, basketId));
+        } catch (DataIntegrityViolationException e) {
+            throw new ConcurrencyFailureException("Idempotency-Key " + idempotencyKey + " was used concurrently", e);
+        }
+    }
 
-        return ConvertToDtoUtil.convertToReceiptDTO(savedReceipt, detailsBuilder.toString());
+    /**
+     * Returns the receipt returned by an earlier request with the same idempotency key.
+     */
+    private ReceiptDTO replay(final Long basketId, final ReceiptIdempotency known) {
+        if (!known.getBasketId().equals(basketId)) {
+            throw new StoreOperationException("Idempotency-Key " + known.getIdempotencyKey() + " was already used for another basket");
+        }
+        final Receipt receipt = receiptRepository.findById(known.getReceiptId())
+                .orElseThrow(() -> new StoreOperationException("Receipt " + known.getReceiptId() + " of Idempotency-Key " + known.getIdempotencyKey() + " not found"));
+        logger.info("returning receipt {} of idempotency key {}", receipt.getId(), known.getIdempotencyKey());
+        final BasketTotals cached = receiptTotalsCache.get(basketId);
+        if (cached != null && receipt.getId().equals(cached.getReceipt().getId())) {
+            return cached.getReceipt();
+        }
+        return ConvertToDtoUtil.convertToReceiptDTO(receipt, receiptLineRepository.findByReceiptIdOrderByIdAsc(receipt.getId()));
     }
 
     /**
-     * Explanation of the Generic Discount Logic:
-     * <p>
-     * 1. **Deal Description Parsing**: The `applyDiscount` method takes a `DiscountDeal` object and matches its description.
-     * <p>
-     * 2. **Applying the Discount**: Based on the extracted numbers and the quantity of the product in the basket, the discount is calculated.
-     * <p>
-     * 3. **Flexible Discount Application**: This method can be extended or modified to handle different types of discounts. The key is how the deal description is structured and pattern matched.
-     * <p>
-     * 4. **Handling Complex Deals**: For more complex deals we might need a more sophisticated parser or even a small rule engine.
+     * Renders the text view of a receipt, with the current names of its products and the descriptions of its deals.
+     * The given receipt is not changed, it can be shared by other requests.
      *
-     * @param deal
-     * @param product
-     * @param quantity
-     * @return
+     * @param receipt The receipt to render.
+     * @return A copy of the receipt with its details text set.
      */
-    private DiscountAppliedResult applyDiscount(final DiscountDeal deal, final Product product, final int quantity) {
-        final Matcher freeMatcher = BUY_N_GET_M_FREE_PATTERN.matcher(deal.getDealDescription());
-        final Matcher percentOffMatcher = BUY_N_GET_M_PERCENT_OFF_PATTERN.matcher(deal.getDealDescription());
-
-        if (freeMatcher.matches()) {
-            int n = Integer.parseInt(freeMatcher.group(1));
-            int m = Integer.parseInt(freeMatcher.group(2));
-            return applyBuyNGetMFree(n, m, product, quantity);
-        } else if (percentOffMatcher.matches()) {
-            int n = Integer.parseInt(percentOffMatcher.group(1));
-            int m = Integer.parseInt(percentOffMatcher.group(2));
-            return applyBuyNGetMPercentOff(n, m, product, quantity);
-        } else {
-            double price = product.getPrice() * quantity;
-            logger.info("No discount applied for product {} and after discount price is {}", product, price);
-            return new DiscountAppliedResult(false, price);
+    @Transactional(readOnly = true)
+    public ReceiptDTO withDetails(final ReceiptDTO receipt) {
+        final Set<Long> dealIds = new HashSet<>();
+        for (final ReceiptLineDTO line : receipt.getLines()) {
+            if (line.getDealId() != null) {
+                dealIds.add(line.getDealId());
+            }
         }
+        final Map<Long, String> dealDescriptions = new HashMap<>();
+        if (!dealIds.isEmpty()) {
+            for (final DiscountDeal deal : discountDealRepository.findAllById(dealIds)) {
+                dealDescriptions.put(deal.getId(), deal.getDealDescription());
+            }
+        }
+
+        final StringBuilder detailsBuilder = new StringBuilder();
+        detailsBuilder.append("Receipt ID: ").append(receipt.getId()).append("\n");
+        detailsBuilder.append("Items:\n");
+        for (final ReceiptLineDTO line : receipt.getLines()) {
+            final Optional<ProductSnapshot> product = productCatalogCache.get(line.getProductId());
+            detailsBuilder.append(" - Product: ").append(product.isPresent() ? product.get().getName() : "#" + line.getProductId())
+                    .append(", Quantity: ").append(line.getQuantity()).append("\n");
+            detailsBuilder.append("Applied Discounts:\n");
+            if (line.getDealId() != null) {
+                detailsBuilder.append(" - ").append(dealDescriptions.get(line.getDealId())).append("\n");
+            }
+        }
+        detailsBuilder.append("Total: ").append(Money.format(Money.ofMajor(receipt.getTotal()))).append("\n");
 
+        return new ReceiptDTO(receipt.getId(), receipt.getBasketId(), receipt.getDiscountDealIds(), receipt.getTotal(),
+                receipt.getLines(), detailsBuilder.toString(), receipt.getLastUpdated());
     }
 
     /**
-     * This method doesn't support fractional as int division automatically truncates the value
-     *
-     * @param buyN
-     * @param getM
-     * @param product
-     * @param quantity
-     * @return
+     * Builds the receipt lines of the evaluated line totals, the discount is the difference to the undiscounted price.
      */
-    private DiscountAppliedResult applyBuyNGetMFree(int buyN, int getM, Product product, int quantity) {
-        int totalSets = quantity / (buyN + getM); // Calculate total complete sets
-        int freeItems = totalSets * getM; // Calculates free items based on totalSets only
-        logger.info("number of free items {} is for given quantity {}", freeItems, quantity);
-        double priceAfterDiscount = product.getPrice() * (quantity - freeItems);
-        return new DiscountAppliedResult(true, priceAfterDiscount);
+    static List<ReceiptLine> receiptLines(final Long receiptId, final Collection<LineTotal> lines) {
+        final List<ReceiptLine> receiptLines = new ArrayList<>(lines.size());
+        for (final LineTotal line : lines) {
+            final long unitPrice = line.getProduct().getPrice();
+            final long discount = Money.times(unitPrice, line.getQuantity()) - line.getSubtotal();
+            receiptLines.add(new ReceiptLine(null, receiptId, line.getProduct().getId(), line.getQuantity(), unitPrice, discount,
+                    line.isDiscounted() ? line.getDealId() : null));
+        }
+        return receiptLines;
     }
 
-    private DiscountAppliedResult applyBuyNGetMPercentOff(int buyN, int percent, Product product, int quantity) {
-        if (quantity > buyN) {
-            int discountableItems = (quantity - buyN) / (buyN + 1);
-            double discount = product.getPrice() * discountableItems * (percent / 100.0);
-            logger.info("discount items {} and follwing percent {} is applied resulting in discount of {}", discountableItems, percent, discount);
-            double priceAfterDiscount = (product.getPrice() * quantity) - discount;
-            logger.info("discount applied for product {} and after discount price is {}", product, priceAfterDiscount);
-            return new DiscountAppliedResult(true, priceAfterDiscount);
-        } else {
-            return new DiscountAppliedResult(false, product.getPrice() * quantity);
+    /**
+     * Hashes the prices and the active deals the lines were evaluated with. Quantities are covered by the
+     * basket version, product prices are included as a price change doesn't change the basket version.
+     * Products and deals are identified by their optimistic lock versions and not by update timestamps, which
+     * come from the clock of the writing instance.
+     */
+    static String dealSetHash(final Collection<LineTotal> lines) {
+        final List<LineTotal> sorted = new ArrayList<>(lines);
+        sorted.sort(Comparator.comparing(line -> line.getProduct().getId()));
+        final StringBuilder key = new StringBuilder();
+        for (final LineTotal line : sorted) {
+            key.append(line.getProduct().getId()).append(':').append(line.getProduct().getPrice())
+                    .append(':').append(line.getProduct().getVersion())
+                    .append(':').append(line.getDealId()).append(':').append(line.getDealVersion()).append(';');
+        }
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.toString().getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (final byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
         }
     }
 
     /**
-     * Inner class representing the result of a discount application. It holds information
-     * about whether a discount was applied and the price after applying the discount.
+     * Checks if the basket, the prices and the active deals of the cached totals are unchanged.
+     * Costs a version lookup, one price query and one deal query, and no receipt is written. The prices are read
+     * from the database and not from the catalog cache, which misses the price changes of other instances.
      */
-    private static class DiscountAppliedResult {
-        private final boolean discountApplied;
-        private final double priceAfterDiscount;
-        /**
-         * Constructs a DiscountAppliedResult.
-         *
-         * @param discountApplied Indicates if a discount was applied.
-         * @param priceAfterDiscount The total price after applying the discount, if any.
-         */
-        public DiscountAppliedResult(final boolean discountApplied, final double priceAfterDiscount) {
-            this.discountApplied = discountApplied;
-            this.priceAfterDiscount = priceAfterDiscount;
-        }
-        /**
-         * Checks if a discount was applied.
-         *
-         * @return True if a discount was applied, otherwise false.
-         */
-        public boolean isDiscountApplied() {
-            return discountApplied;
-        }
-        /**
-         * Retrieves the price after discount.
-         *
-         * @return The price after applying the discount.
-         */
-        public double getPriceAfterDiscount() {
-            return priceAfterDiscount;
+    private boolean isCurrent(final Long basketId, final BasketTotals cached) {
+        final Optional<Integer> version = basketRepository.findVersionById(basketId);
+        if (!version.isPresent() || version.get() != cached.getBasketVersion()) {
+            return false;
+        }
+        final List<BasketItemRepository.ProductPriceView> prices = basketItemRepository.findProductPrices(basketId);
+        if (prices.size() != cached.getLines().size()) {
+            return false;
+        }
+        final Map<Long, DiscountDeal> activeDeals = discountDealRepository.findActiveByProductIds(cached.getLines().keySet());
+        for (final BasketItemRepository.ProductPriceView price : prices) {
+            final LineTotal line = cached.getLines().get(price.getProductId());
+            if (line == null || line.getProduct().getPrice() != price.getPrice() || !line.matchesDeal(activeDeals.get(price.getProductId()))) {
+                return false;
+            }
         }
+        return true;
     }
 }
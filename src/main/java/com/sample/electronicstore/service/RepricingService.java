@@ -0,0 +1,308 @@
+package com.sample.electronicstore.service;
+
+import com.sample.electronicstore.discount.DiscountRule;
+import com.sample.electronicstore.discount.DiscountRuleRegistry;
+import com.sample.electronicstore.discount.DiscountRules;
+import com.sample.electronicstore.dto.DiscountDealDTO;
+import com.sample.electronicstore.dto.RepricingReportDTO;
+import com.sample.electronicstore.entity.DiscountDeal;
+import com.sample.electronicstore.exception.StoreOperationException;
+import com.sample.electronicstore.metrics.StoreMetrics;
+import com.sample.electronicstore.money.Money;
+import com.sample.electronicstore.repository.BasketItemRepository;
+import com.sample.electronicstore.repository.DiscountDealRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Service class for what-if repricing, the effect of proposed discount deals on all open baskets.
+ *
+ * <p>The discount of a line only depends on the line, so the change of a basket total is the sum of the changes of
+ * its lines, and only the lines of the products of the proposed deals are read. The baskets holding them are scanned
+ * by id in chunks of {@code store.repricing.chunk-size} baskets, the lines of each chunk are read in one statement
+ * and priced with the compiled rules of the current and of the proposed deals on a pool of
+ * {@code store.repricing.workers} threads. The current active deals of the proposed products are read once at the
+ * start of a run. At most two chunks per worker are held in memory at once, so the memory
+ * used by a run doesn't grow with the number of baskets.</p>
+ *
+ * <p>A run is called on the request thread and fails once it takes longer than {@code store.repricing.timeout-ms}
+ * or its thread is interrupted. Both are checked between chunks, the chunks not yet priced are then dropped.</p>
+ *
+ * <p>Nothing is written, the current deals, baskets and receipts are unchanged by a run.</p>
+ */
+@Service
+public class RepricingService {
+    private final BasketItemRepository basketItemRepository;
+    private final DiscountDealRepository discountDealRepository;
+    private final DiscountRuleRegistry discountRuleRegistry;
+    private final StoreMetrics storeMetrics;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int chunkSize;
+    private final int workers;
+    private final long timeoutMillis;
+    private final ExecutorService executor;
+
+    private static final Logger logger = LoggerFactory.getLogger(RepricingService.class);
+
+    /**
+     * Constructs a RepricingService.
+     *
+     * @param basketItemRepository Repository the basket lines are read from.
+     * @param discountDealRepository Repository the current active deals of the proposed products are read from.
+     * @param discountRuleRegistry Registry of the compiled rules of the current deals.
+     * @param storeMetrics Metrics the runs are timed in.
+     * @param transactionManager Transaction manager used to run each read in its own read-only transaction.
+     * @param chunkSize The number of baskets read and priced at once.
+     * @param workers The number of threads pricing the chunks, zero or less for the number of available processors.
+     * @param timeoutMillis The time a run may take before it fails.
+     */
+    @Autowired
+    public RepricingService(final BasketItemRepository basketItemRepository, final DiscountDealRepository discountDealRepository,
+                            final DiscountRuleRegistry discountRuleRegistry, final StoreMetrics storeMetrics,
+                            final PlatformTransactionManager transactionManager,
+                            @Value("${store.repricing.chunk-size:1000}") final int chunkSize,
+                            @Value("${store.repricing.workers:0}") final int workers,
+                            @Value("${store.repricing.timeout-ms:30000}") final long timeoutMillis) {
+        this.basketItemRepository = basketItemRepository;
+        this.discountDealRepository = discountDealRepository;
+        this.discountRuleRegistry = discountRuleRegistry;
+        this.storeMetrics = storeMetrics;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.workers = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        this.timeoutMillis = Math.max(1, timeoutMillis);
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.workers, runnable -> {
+            final Thread thread = new Thread(runnable, "repricing-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Prices all open baskets with the current deals and with the proposed deals and reports the difference.
+     *
+     * <p>A proposed deal replaces the active deal of its product, an inactive proposed deal removes it.</p>
+     *
+     * @param proposedDeals The proposed deals, at most one per product.
+     * @return The aggregate impact of the proposed deals.
+     * @throws StoreOperationException if the proposal is invalid, a chunk could not be priced, or the run timed out
+     * or was interrupted.
+     */
+    public RepricingReportDTO whatIf(final List<DiscountDealDTO> proposedDeals) {
+        final Map<Long, DiscountRule> proposedRules = compileProposal(proposedDeals);
+        return storeMetrics.time(StoreMetrics.DEAL_WHAT_IF, () -> run(proposedRules));
+    }
+
+    private RepricingReportDTO run(final Map<Long, DiscountRule> proposedRules) {
+        final long start = System.nanoTime();
+        final long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        final Map<Long, DiscountRule> currentRules = currentRules(proposedRules.keySet());
+
+        final RepricingTotals totals = new RepricingTotals();
+        final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        final int maxChunksInFlight = workers * 2;
+        final Semaphore chunksInFlight = new Semaphore(maxChunksInFlight);
+        long afterId = 0;
+        try {
+            while (failure.get() == null) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (System.nanoTime() - deadline >= 0) {
+                    throw timedOut(failure);
+                }
+                final long lastId = afterId;
+                final List<Long> basketIds = readOnlyTransaction.execute(status -> basketItemRepository.findBasketIdsWithProducts(
+                        proposedRules.keySet(), lastId, PageRequest.of(0, chunkSize)));
+                if (basketIds.isEmpty()) {
+                    break;
+                }
+                afterId = basketIds.get(basketIds.size() - 1);
+                final List<BasketItemRepository.LineView> lines = readOnlyTransaction.execute(status ->
+                        basketItemRepository.findLines(basketIds, proposedRules.keySet()));
+                if (!chunksInFlight.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    throw timedOut(failure);
+                }
+                executor.execute(() -> {
+                    try {
+                        // the chunks queued when the run failed are dropped
+                        if (failure.get() == null) {
+                            totals.add(price(lines, currentRules, proposedRules));
+                        }
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        chunksInFlight.release();
+                    }
+                });
+            }
+            // waits for the last chunks
+            if (!chunksInFlight.tryAcquire(maxChunksInFlight, deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                throw timedOut(failure);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            final StoreOperationException interrupted = new StoreOperationException("What-if repricing was interrupted", e);
+            failure.compareAndSet(null, interrupted);
+            throw interrupted;
+        }
+        if (failure.get() != null) {
+            throw new StoreOperationException("What-if repricing failed: " + failure.get().getMessage(), failure.get());
+        }
+
+        final long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        logger.info("what-if repricing of {} deals evaluated {} baskets, {} affected, revenue delta {}, in {} ms",
+                proposedRules.size(), totals.basketsEvaluated, totals.basketsAffected,
+                Money.format(totals.proposedTotal - totals.currentTotal), elapsedMillis);
+        return totals.toReport(elapsedMillis);
+    }
+
+    /**
+     * Fails the run, so the workers drop its queued chunks.
+     */
+    private StoreOperationException timedOut(final AtomicReference<RuntimeException> failure) {
+        final StoreOperationException timeout = new StoreOperationException("What-if repricing took longer than " + timeoutMillis + " ms");
+        failure.compareAndSet(null, timeout);
+        return timeout;
+    }
+
+    /**
+     * Compiles the current active deals of the given products by product id, products without active deal are absent.
+     */
+    private Map<Long, DiscountRule> currentRules(final Collection<Long> productIds) {
+        final Map<Long, DiscountDeal> activeDeals = readOnlyTransaction.execute(status -> discountDealRepository.findActiveByProductIds(productIds));
+        final Map<Long, DiscountRule> rules = new HashMap<>();
+        for (final Map.Entry<Long, DiscountDeal> activeDeal : activeDeals.entrySet()) {
+            rules.put(activeDeal.getKey(), discountRuleRegistry.ruleFor(activeDeal.getValue()));
+        }
+        return rules;
+    }
+
+    /**
+     * Prices the lines of a chunk, which are ordered by basket, with the current and the proposed rules.
+     */
+    private ChunkTotals price(final List<BasketItemRepository.LineView> lines, final Map<Long, DiscountRule> currentRules,
+                              final Map<Long, DiscountRule> proposedRules) {
+        final ChunkTotals chunk = new ChunkTotals();
+        Long basketId = null;
+        long basketDelta = 0;
+        for (final BasketItemRepository.LineView line : lines) {
+            if (!line.getBasketId().equals(basketId)) {
+                chunk.closeBasket(basketId, basketDelta);
+                basketId = line.getBasketId();
+                basketDelta = 0;
+            }
+            final long current = priceAfterDiscount(currentRules.get(line.getProductId()), line);
+            final long proposed = priceAfterDiscount(proposedRules.get(line.getProductId()), line);
+            chunk.lines++;
+            chunk.currentTotal += current;
+            chunk.proposedTotal += proposed;
+            basketDelta += proposed - current;
+        }
+        chunk.closeBasket(basketId, basketDelta);
+        return chunk;
+    }
+
+    private static long priceAfterDiscount(final DiscountRule rule, final BasketItemRepository.LineView line) {
+        return rule != null
+                ? rule.priceAfterDiscount(line.getUnitPrice(), line.getQuantity())
+                : Money.times(line.getUnitPrice(), line.getQuantity());
+    }
+
+    /**
+     * Compiles the proposed deals by product id, an inactive deal maps its product to no rule.
+     */
+    private static Map<Long, DiscountRule> compileProposal(final List<DiscountDealDTO> proposedDeals) {
+        if (proposedDeals == null || proposedDeals.isEmpty()) {
+            throw new StoreOperationException("At least one proposed deal is required");
+        }
+        if (proposedDeals.size() > DiscountDealRepository.IN_CLAUSE_CHUNK_SIZE) {
+            throw new StoreOperationException("At most " + DiscountDealRepository.IN_CLAUSE_CHUNK_SIZE + " deals can be proposed at once");
+        }
+        final Map<Long, DiscountRule> rules = new HashMap<>();
+        for (int i = 0; i < proposedDeals.size(); i++) {
+            final DiscountDealDTO proposedDeal = proposedDeals.get(i);
+            if (proposedDeal.getProductId() == null) {
+                throw new StoreOperationException("Proposed deal " + i + ": productId is required");
+            }
+            if (rules.containsKey(proposedDeal.getProductId())) {
+                throw new StoreOperationException("Proposed deal " + i + ": product " + proposedDeal.getProductId() + " has more than one proposed deal");
+            }
+            rules.put(proposedDeal.getProductId(), proposedDeal.isActive()
+                    ? DiscountRules.compile(new DiscountDeal(null, proposedDeal.getProductId(), proposedDeal.getDealDescription(), true, null, 0))
+                    : null);
+        }
+        return rules;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Totals of one chunk, only touched by the worker pricing it.
+     */
+    private static final class ChunkTotals {
+        private long baskets;
+        private long basketsAffected;
+        private long lines;
+        private long currentTotal;
+        private long proposedTotal;
+
+        private void closeBasket(final Long basketId, final long basketDelta) {
+            if (basketId == null) {
+                return;
+            }
+            baskets++;
+            if (basketDelta != 0) {
+                basketsAffected++;
+            }
+        }
+    }
+
+    /**
+     * Totals of a run, the chunks are added by the workers. The sums are exact, so the report doesn't depend
+     * on the order the chunks finish in.
+     */
+    private static final class RepricingTotals {
+        private long basketsEvaluated;
+        private long basketsAffected;
+        private long linesEvaluated;
+        private long currentTotal;
+        private long proposedTotal;
+
+        private synchronized void add(final ChunkTotals chunk) {
+            basketsEvaluated += chunk.baskets;
+            basketsAffected += chunk.basketsAffected;
+            linesEvaluated += chunk.lines;
+            currentTotal += chunk.currentTotal;
+            proposedTotal += chunk.proposedTotal;
+        }
+
+        private synchronized RepricingReportDTO toReport(final long elapsedMillis) {
+            return new RepricingReportDTO(basketsEvaluated, basketsAffected, linesEvaluated, Money.toMajor(currentTotal),
+                    Money.toMajor(proposedTotal), Money.toMajor(proposedTotal - currentTotal), elapsedMillis);
+        }
+    }
+}
@@ -5,11 +5,14 @@ import com.sample.electronicstore.dto.BasketItemDTO;
 import com.sample.electronicstore.dto.DiscountDealDTO;
 import com.sample.electronicstore.dto.ProductDTO;
 import com.sample.electronicstore.dto.ReceiptDTO;
+import com.sample.electronicstore.dto.ReceiptLineDTO;
 import com.sample.electronicstore.entity.Basket;
 import com.sample.electronicstore.entity.BasketItem;
 import com.sample.electronicstore.entity.DiscountDeal;
 import com.sample.electronicstore.entity.Product;
 import com.sample.electronicstore.entity.Receipt;
+import com.sample.electronicstore.entity.ReceiptLine;
+import com.sample.electronicstore.money.Money;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -20,7 +23,7 @@ public class ConvertToDtoUtil {
     private ConvertToDtoUtil(){}
 
     public static ProductDTO convertToProductDTO(final Product product) {
-        return new ProductDTO(product.getId(), product.getName(), product.getDescription(), product.getPrice(), product.getLastUpdated() != null ? product.getLastUpdated().toEpochMilli(): 0);
+        return new ProductDTO(product.getId(), product.getName(), product.getDescription(), Money.toMajor(product.getPrice()), product.getLastUpdated() != null ? product.getLastUpdated().toEpochMilli(): 0);
     }
 
     public static DiscountDealDTO convertToDiscountDealDTO(final DiscountDeal discountDeal){
@@ -36,10 +39,15 @@ public class ConvertToDtoUtil {
         return new BasketDTO(basket.getId(), basket.getCustomerId(), itemDTOs, basket.getLastUpdated() != null ? basket.getLastUpdated().toEpochMilli() : 0);
     }
 
-    public static ReceiptDTO convertToReceiptDTO(final Receipt receipt, final String details) {
+    public static ReceiptDTO convertToReceiptDTO(final Receipt receipt, final List<ReceiptLine> lines) {
         final Set<Long> discountDealIds = receipt.getDiscountDeals().stream()
                 .map(DiscountDeal::getId)
                 .collect(Collectors.toSet());
-        return new ReceiptDTO(receipt.getId(), receipt.getBasketId(), discountDealIds, details, receipt.getLastUpdated() !=null ? receipt.getLastUpdated().toEpochMilli() : 0);
+        final List<ReceiptLineDTO> lineDTOs = new ArrayList<>(lines.size());
+        for (ReceiptLine line : lines) {
+            lineDTOs.add(new ReceiptLineDTO(line.getProductId(), line.getQuantity(), Money.toMajor(line.getUnitPrice()), Money.toMajor(line.getDiscount()), line.getDealId()));
+        }
+        return new ReceiptDTO(receipt.getId(), receipt.getBasketId(), discountDealIds, Money.toMajor(receipt.getTotal()), lineDTOs, null,
+                receipt.getLastUpdated() !=null ? receipt.getLastUpdated().toEpochMilli() : 0);
     }
 }
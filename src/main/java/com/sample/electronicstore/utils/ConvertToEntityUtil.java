@@ -4,6 +4,8 @@ import com.sample.electronicstore.dto.DiscountDealDTO;
 import com.sample.electronicstore.dto.ProductDTO;
 import com.sample.electronicstore.entity.DiscountDeal;
 import com.sample.electronicstore.entity.Product;
+import com.sample.electronicstore.exception.InvalidRequestException;
+import com.sample.electronicstore.money.Money;
 
 public class ConvertToEntityUtil {
 
@@ -16,7 +18,7 @@ public class ConvertToEntityUtil {
             final Product product = new Product();
             product.setName(productDTO.getName());
             product.setDescription(productDTO.getDescription());
-            product.setPrice(productDTO.getPrice());
+            product.setPrice(toMinorPrice(productDTO.getPrice()));
             return product;
         } else {
             // For updates, use the provided ID
@@ -24,7 +26,7 @@ public class ConvertToEntityUtil {
             product.setId(productDTO.getId());
             product.setName(productDTO.getName());
             product.setDescription(productDTO.getDescription());
-            product.setPrice(productDTO.getPrice());
+            product.setPrice(toMinorPrice(productDTO.getPrice()));
             return product;
         }
     }
@@ -45,4 +47,23 @@ public class ConvertToEntityUtil {
             return discountDeal;
         }
     }
+
+    /**
+     * Converts a price to minor units, rejecting a price that isn't a finite amount or doesn't fit in a long
+     * number of minor units.
+     *
+     * @param price The price in major units.
+     * @return The price in minor units.
+     * @throws InvalidRequestException if the price is out of range.
+     */
+    private static long toMinorPrice(final double price) {
+        if (!Double.isFinite(price)) {
+            throw new InvalidRequestException("Product price must be a finite amount");
+        }
+        try {
+            return Money.ofMajor(price);
+        } catch (ArithmeticException e) {
+            throw new InvalidRequestException("Product price " + price + " is out of range", e);
+        }
+    }
 }
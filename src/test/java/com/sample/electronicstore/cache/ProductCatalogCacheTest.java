@@ -0,0 +1,81 @@
+package com.sample.electronicstore.cache;
+
+import com.sample.electronicstore.entity.Product;
+import com.sample.electronicstore.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ProductCatalogCacheTest {
+
+    @Mock
+    private ProductRepository productRepository;
+
+    private ProductCatalogCache productCatalogCache;
+
+    private Product product;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        productCatalogCache = new ProductCatalogCache(productRepository, 2);
+        product = new Product(1L, "Crypto", "High-end crypto", 150000L, Instant.parse("2024-01-15T18:35:24.00Z"), 0);
+    }
+
+    @Test
+    public void testGetLoadsOnMissAndServesHits() {
+        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
+
+        assertEquals(150000L, productCatalogCache.get(1L).get().getPrice());
+        assertEquals(150000L, productCatalogCache.get(1L).get().getPrice());
+
+        verify(productRepository, times(1)).findById(anyLong());
+        assertEquals(1, productCatalogCache.getMisses());
+        assertEquals(1, productCatalogCache.getHits());
+    }
+
+    @Test
+    public void testGetUnknownProduct() {
+        when(productRepository.findById(anyLong())).thenReturn(Optional.empty());
+
+        assertFalse(productCatalogCache.get(2L).isPresent());
+    }
+
+    @Test
+    public void testOlderSnapshotDoesNotReplaceNewer() {
+        product.setVersion(1);
+        productCatalogCache.put(product);
+
+        // a lower version is older even with a later timestamp from a writer whose clock is ahead
+        final Product staleProduct = new Product(1L, "Crypto", "High-end crypto", 100000L, Instant.parse("2024-01-16T18:35:24.00Z"), 0);
+        assertEquals(150000L, productCatalogCache.refresh(staleProduct).getPrice());
+
+        // a higher version is newer even with an earlier timestamp from a writer whose clock is behind
+        final Product updatedProduct = new Product(1L, "Crypto", "High-end crypto", 200000L, Instant.parse("2024-01-14T18:35:24.00Z"), 2);
+        assertEquals(200000L, productCatalogCache.refresh(updatedProduct).getPrice());
+    }
+
+    @Test
+    public void testSizeIsBoundedAndEvict() {
+        productCatalogCache.put(product);
+        productCatalogCache.put(new Product(2L, "Phone", "Phone", 1000L, null, 0));
+        productCatalogCache.put(new Product(3L, "Laptop", "Laptop", 2000L, null, 0));
+
+        assertEquals(2, productCatalogCache.size());
+
+        productCatalogCache.evict(3L);
+        assertTrue(productCatalogCache.size() <= 1);
+    }
+}
@@ -0,0 +1,62 @@
+package com.sample.electronicstore.config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+// virtual threads are final from JDK 21 on, run with the jdk21 profile on a JDK 21 toolchain
+@EnabledIfSystemProperty(named = "java.specification.version", matches = "2[1-9]|[3-9][0-9]")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "store.web.virtual-threads=true")
+public class VirtualThreadRequestIntegrationTest {
+
+    private static final AtomicReference<Thread> requestThread = new AtomicReference<>();
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Test
+    public void testRequestRunsOnVirtualThread() throws Exception {
+        requestThread.set(null);
+
+        final ResponseEntity<String> response = restTemplate.getForEntity("/admin/products", String.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        final Thread thread = requestThread.get();
+        assertNotNull(thread);
+        assertEquals(Boolean.TRUE, Thread.class.getMethod("isVirtual").invoke(thread), "request ran on " + thread);
+    }
+
+    @TestConfiguration
+    static class RequestThreadConfig {
+
+        @Bean
+        public Filter requestThreadFilter() {
+            return new OncePerRequestFilter() {
+                @Override
+                protected void doFilterInternal(final HttpServletRequest request, final HttpServletResponse response,
+                                                final FilterChain chain) throws ServletException, IOException {
+                    requestThread.set(Thread.currentThread());
+                    chain.doFilter(request, response);
+                }
+            };
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package com.sample.electronicstore.controller;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sample.electronicstore.dto.DiscountDealDTO;
+import com.sample.electronicstore.dto.KeysetPageDTO;
 import com.sample.electronicstore.dto.ProductDTO;
+import com.sample.electronicstore.repository.ProductRepository;
 import com.sample.electronicstore.service.DiscountDealService;
 import com.sample.electronicstore.service.ProductService;
 import org.junit.jupiter.api.Test;
@@ -10,14 +14,24 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -33,6 +47,12 @@ public class AdminControllerIntegrationTest {
     @Autowired
     private DiscountDealService discountDealService;
 
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
 
     @Test
     public void testCreateProduct() throws Exception {
@@ -108,5 +128,84 @@ public class AdminControllerIntegrationTest {
                 .andExpect(jsonPath("$", hasSize(greaterThanOrEqualTo(0)))); // Assuming the list can be empty
     }
 
-}
+    @Test
+    public void testImportProducts() throws Exception {
+        productService.saveProduct(new ProductDTO(null, "Imported Existing", "Already in store", 1.0, 0));
+        final String products = "{\"name\":\"Imported TV\", \"description\":\"TV\", \"price\":400.0}\n"
+                + "{\"name\":\"Imported Radio\", \"description\":\"Radio\", \"price\":40.0}\n"
+                + "\n"
+                + "{\"name\":\"Imported Broken\", \"price\":\n"
+                + "{\"name\":\"Imported Existing\", \"description\":\"Duplicate name\", \"price\":2.0}\n"
+                + "{\"name\":\"Imported Speaker\", \"description\":\"Speaker\", \"price\":-1.0}\n"
+                + "{\"name\":\"Imported Yacht\", \"description\":\"Overflows\", \"price\":1e300}\n"
+                + "{\"name\":\"Imported Planet\", \"description\":\"Not finite\", \"price\":1e400}\n";
+
+        mockMvc.perform(post("/admin/products/import")
+                        .contentType("application/x-ndjson")
+                        .content(products))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rowsRead").value(7))
+                .andExpect(jsonPath("$.rowsImported").value(2))
+                .andExpect(jsonPath("$.rowsFailed").value(5))
+                .andExpect(jsonPath("$.errors[*].row", containsInAnyOrder(4, 5, 6, 7, 8)));
+    }
+
+    @Test
+    public void testCreateProductRejectsPriceOutOfRange() throws Exception {
+        mockMvc.perform(post("/admin/products")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Priceless\", \"description\":\"Overflows\", \"price\":1e300}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testProductsPagesCoverTheCatalogOnce() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            productService.saveProduct(new ProductDTO(null, "Paged Product " + i, "Paged", i, 0));
+        }
+        final long total = productRepository.count();
+        final Set<Long> seenIds = new HashSet<>();
+        String afterId = null;
+        do {
+            final MockHttpServletRequestBuilder request = get("/admin/products").param("size", "2");
+            if (afterId != null) {
+                request.param("afterId", afterId);
+            }
+            final KeysetPageDTO<ProductDTO> page = objectMapper.readValue(
+                    mockMvc.perform(request).andExpect(status().isOk()).andReturn().getResponse().getContentAsString(),
+                    new TypeReference<KeysetPageDTO<ProductDTO>>() { });
+            assertTrue(page.getItems().size() <= 2);
+            for (final ProductDTO product : page.getItems()) {
+                assertTrue(seenIds.add(product.getId()), "product returned twice " + product.getId());
+            }
+            afterId = page.getNextAfterId() != null ? page.getNextAfterId().toString() : null;
+        } while (afterId != null);
+        assertEquals(total, seenIds.size());
+    }
 
+    @Test
+    public void testExportProducts() throws Exception {
+        final ProductDTO productDTO = productService.saveProduct(new ProductDTO(null, "Exported Product", "Exported", 3.0, 0));
+
+        final MvcResult result = mockMvc.perform(get("/admin/products/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize((int) productRepository.count())))
+                .andExpect(jsonPath("$[?(@.id == " + productDTO.getId() + ")].name").value("Exported Product"));
+    }
+
+    @Test
+    public void testExportDiscountDeals() throws Exception {
+        final ProductDTO productDTO = productService.saveProduct(new ProductDTO(null, "Exported Deal Product", "Exported", 3.0, 0));
+        discountDealService.saveDiscountDeal(new DiscountDealDTO(null, productDTO.getId(), "Buy 1 Get 1 Free", true, 0));
+
+        final MvcResult result = mockMvc.perform(get("/admin/discount-deals/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[?(@.productId == " + productDTO.getId() + ")].dealDescription").value("BUY 1 GET 1 FREE"));
+    }
+}
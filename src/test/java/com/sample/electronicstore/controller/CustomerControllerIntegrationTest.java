@@ -6,16 +6,22 @@ import com.sample.electronicstore.entity.Product;
 import com.sample.electronicstore.repository.BasketItemRepository;
 import com.sample.electronicstore.repository.BasketRepository;
 import com.sample.electronicstore.repository.ProductRepository;
+import com.sample.electronicstore.repository.ReceiptRepository;
+import com.jayway.jsonpath.JsonPath;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.util.ArrayList;
 
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -25,6 +31,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 
 @SpringBootTest
 @AutoConfigureMockMvc
+@AutoConfigureMetrics
 public class CustomerControllerIntegrationTest {
 
     @Autowired
@@ -39,12 +46,15 @@ public class CustomerControllerIntegrationTest {
     @Autowired
     private BasketItemRepository basketItemRepository;
 
+    @Autowired
+    private ReceiptRepository receiptRepository;
+
     private Product savedProduct;
     private Basket savedBasket;
 
     @BeforeEach
     public void setUp(){
-        savedProduct = productRepository.save(new Product(null, "Soft Drink", "Cold Drinks", 6.0, null));
+        savedProduct = productRepository.save(new Product(null, "Soft Drink", "Cold Drinks", 600L, null, 0));
 
         final Basket basket = new Basket(999L);
         final BasketItem basketItem = new BasketItem();
@@ -73,11 +83,44 @@ public class CustomerControllerIntegrationTest {
                         .param("productId", ""+savedProduct.getId())
                         .param("quantity", "2"))
                 .andExpect(status().isCreated())
-                .andExpect(jsonPath("$.customerId").value(999));
+                .andExpect(jsonPath("$.customerId").value(999))
+                // the basket already holds the product, its line is merged
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.items[0].quantity").value(5));
 
     }
 
 
+    @Test
+    public void testApplyBasketOperations() throws Exception {
+        final Product otherProduct = productRepository.save(new Product(null, "Juice", "Cold Drinks", 400L, null, 0));
+        mockMvc.perform(post("/customer/basket/batch")
+                        .param("customerId", "999")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"type\":\"REMOVE\",\"productId\":" + savedProduct.getId() + "},"
+                                + "{\"type\":\"ADD\",\"productId\":" + otherProduct.getId() + ",\"quantity\":2},"
+                                + "{\"type\":\"ADD\",\"productId\":" + savedProduct.getId() + ",\"quantity\":1},"
+                                + "{\"type\":\"SET_QUANTITY\",\"productId\":" + otherProduct.getId() + ",\"quantity\":7}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.customerId").value(999))
+                .andExpect(jsonPath("$.items.length()").value(2))
+                .andExpect(jsonPath("$.items[?(@.productId == " + savedProduct.getId() + ")].quantity").value(1))
+                .andExpect(jsonPath("$.items[?(@.productId == " + otherProduct.getId() + ")].quantity").value(7));
+    }
+
+    @Test
+    public void testApplyBasketOperationsIsAllOrNothing() throws Exception {
+        mockMvc.perform(post("/customer/basket/batch")
+                        .param("customerId", "999")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"type\":\"ADD\",\"productId\":" + savedProduct.getId() + ",\"quantity\":2},"
+                                + "{\"type\":\"ADD\",\"productId\":-1,\"quantity\":1}]"))
+                .andExpect(status().isInternalServerError())
+                .andExpect(content().string(containsString("Operation 1")));
+
+        assertEquals(3, basketRepository.findWithItemsAndProductsByCustomerId(999L).get().getItems().get(0).getQuantity());
+    }
+
     @Test
     public void testRemoveFromBasket() throws Exception {
         // Assuming basketItemId 1 exists in the basket
@@ -92,8 +135,75 @@ public class CustomerControllerIntegrationTest {
         // Assuming basketId 1 exists and has items
         mockMvc.perform(get("/customer/receipt/"+ savedBasket.getId()))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.basketId").value(savedBasket.getId()));
+                .andExpect(jsonPath("$.basketId").value(savedBasket.getId()))
+                .andExpect(jsonPath("$.total").value(18.0))
+                .andExpect(jsonPath("$.lines[0].productId").value(savedProduct.getId()))
+                .andExpect(jsonPath("$.lines[0].quantity").value(3))
+                .andExpect(jsonPath("$.lines[0].unitPrice").value(6.0))
+                .andExpect(jsonPath("$.lines[0].discount").value(0.0))
+                // the text view is only rendered on request
+                .andExpect(jsonPath("$.details").doesNotExist());
     }
 
-}
+    @Test
+    public void testUnchangedBasketReusesReceipt() throws Exception {
+        final long receiptsBefore = receiptRepository.count();
+        final String first = mockMvc.perform(get("/customer/receipt/" + savedBasket.getId()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        mockMvc.perform(get("/customer/receipt/" + savedBasket.getId()))
+                .andExpect(status().isOk())
+                .andExpect(content().json(first));
+        assertEquals(receiptsBefore + 1, receiptRepository.count());
+
+        // a change of the basket is picked up by the next receipt
+        mockMvc.perform(post("/customer/basket")
+                        .param("customerId", "999")
+                        .param("productId", "" + savedProduct.getId())
+                        .param("quantity", "1"))
+                .andExpect(status().isCreated());
+        mockMvc.perform(get("/customer/receipt/" + savedBasket.getId()).param("details", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.lines[0].quantity").value(4))
+                .andExpect(jsonPath("$.details").value(containsString("Product: Soft Drink, Quantity: 4")))
+                .andExpect(jsonPath("$.details").value(containsString("Total: 24.00")));
+        assertEquals(receiptsBefore + 2, receiptRepository.count());
+    }
+
+    @Test
+    public void testIdempotencyKeyReplaysFirstReceipt() throws Exception {
+        final String first = mockMvc.perform(get("/customer/receipt/" + savedBasket.getId())
+                        .header("Idempotency-Key", "checkout-" + savedBasket.getId()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        final long receiptsAfterFirst = receiptRepository.count();
+
+        // a retry with the same key returns the first receipt, even though the basket changed in between
+        mockMvc.perform(post("/customer/basket")
+                        .param("customerId", "999")
+                        .param("productId", "" + savedProduct.getId())
+                        .param("quantity", "1"))
+                .andExpect(status().isCreated());
+        mockMvc.perform(get("/customer/receipt/" + savedBasket.getId())
+                        .header("Idempotency-Key", "checkout-" + savedBasket.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(JsonPath.<Integer>read(first, "$.id")))
+                // the lines of the first receipt are read back from receipt_line
+                .andExpect(jsonPath("$.lines[0].quantity").value(3));
+        assertEquals(receiptsAfterFirst, receiptRepository.count());
+    }
+
+    @Test
+    public void testReceiptMetricsAreScraped() throws Exception {
+        mockMvc.perform(get("/customer/receipt/"+ savedBasket.getId()))
+                .andExpect(status().isOk());
 
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("store_operation_seconds_bucket{operation=\"receipt.calculate\",outcome=\"success\"")))
+                .andExpect(content().string(containsString("store_basket_size_lines_count")))
+                .andExpect(content().string(containsString("store_receipt_lines_total{discount=\"none\"")))
+                .andExpect(content().string(containsString("store_locks_wait_seconds_count")));
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.sample.electronicstore.discount;
+
+import com.sample.electronicstore.entity.DiscountDeal;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DiscountRuleRegistryTest {
+
+    private DiscountRuleRegistry discountRuleRegistry;
+
+    @BeforeEach
+    public void setup() {
+        discountRuleRegistry = new DiscountRuleRegistry();
+    }
+
+    @Test
+    public void testCompileBuyNGetMFree() {
+        final DiscountRule rule = DiscountRules.compile(new DiscountDeal(1L, 1L, "BUY 2 GET 1 FREE", true, null, 0));
+
+        assertTrue(rule instanceof BuyNGetMFree);
+        assertTrue(rule.isApplicable(3));
+        // 7 items make 2 complete sets of 3, so 2 items are free
+        assertEquals(5000L, rule.priceAfterDiscount(1000L, 7));
+    }
+
+    @Test
+    public void testCompileBuyNGetPercentOff() {
+        final DiscountRule rule = DiscountRules.compile(new DiscountDeal(2L, 1L, "BUY 1 GET 50% OFF ON THE NEXT", true, null, 0));
+
+        assertTrue(rule instanceof BuyNGetPercentOff);
+        assertFalse(rule.isApplicable(1));
+        assertEquals(1000L, rule.priceAfterDiscount(1000L, 1));
+        assertTrue(rule.isApplicable(3));
+        assertEquals(2500L, rule.priceAfterDiscount(1000L, 3));
+    }
+
+    @Test
+    public void testPercentOffIsRoundedToWholeCents() {
+        final DiscountRule rule = DiscountRules.compile(new DiscountDeal(5L, 1L, "BUY 1 GET 50% OFF ON THE NEXT", true, null, 0));
+
+        // half of 10.01 is 5.005, the tie is rounded to the even cent 5.00
+        assertEquals(2503L, rule.priceAfterDiscount(1001L, 3));
+        assertEquals(DiscountRules.DISCOUNT_ROUNDING, ((BuyNGetPercentOff) rule).getRoundingMode());
+    }
+
+    @Test
+    public void testCompileUnsupportedDescription() {
+        final DiscountRule rule = DiscountRules.compile(new DiscountDeal(3L, 1L, "HALF PRICE ON MONDAYS", true, null, 0));
+
+        assertTrue(rule instanceof NoDiscount);
+        assertFalse(rule.isApplicable(10));
+        assertEquals(10000L, rule.priceAfterDiscount(1000L, 10));
+    }
+
+    @Test
+    public void testRegisterAndEvict() {
+        final DiscountDeal deal = new DiscountDeal(4L, 7L, "BUY 1 GET 1 FREE", true, null, 0);
+        discountRuleRegistry.register(deal);
+
+        final DiscountRule rule = discountRuleRegistry.findByProductId(7L);
+        assertEquals(4L, rule.getDealId());
+        assertSame(rule, discountRuleRegistry.ruleFor(deal));
+
+        deal.setActive(false);
+        discountRuleRegistry.register(deal);
+        assertNull(discountRuleRegistry.findByProductId(7L));
+    }
+
+    @Test
+    public void testRuleForCompilesUnknownDeal() {
+        discountRuleRegistry.register(new DiscountDeal(5L, 8L, "BUY 1 GET 1 FREE", true, null, 0));
+
+        // a newer deal saved elsewhere replaces the registered rule on first lookup
+        final DiscountDeal newerDeal = new DiscountDeal(6L, 8L, "BUY 2 GET 1 FREE", true, null, 0);
+        final DiscountRule rule = discountRuleRegistry.ruleFor(newerDeal);
+
+        assertEquals(6L, rule.getDealId());
+        assertSame(rule, discountRuleRegistry.findByProductId(8L));
+    }
+}
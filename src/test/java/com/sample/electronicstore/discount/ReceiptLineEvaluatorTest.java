@@ -0,0 +1,72 @@
+package com.sample.electronicstore.discount;
+
+import com.sample.electronicstore.cache.LineTotal;
+import com.sample.electronicstore.cache.ProductSnapshot;
+import com.sample.electronicstore.entity.DiscountDeal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class ReceiptLineEvaluatorTest {
+
+    private static final String[] DESCRIPTIONS = {"BUY 1 GET 1 FREE", "BUY 2 GET 33% OFF ON THE NEXT", "BUY 1 GET 50% OFF ON THE NEXT"};
+    private static final int LINE_COUNT = 10_000;
+
+    private final ReceiptLineEvaluator sequential = new ReceiptLineEvaluator(Integer.MAX_VALUE, 4);
+    private final ReceiptLineEvaluator parallel = new ReceiptLineEvaluator(1, 4);
+
+    private final ProductSnapshot[] products = new ProductSnapshot[LINE_COUNT];
+    private final int[] quantities = new int[LINE_COUNT];
+    private final DiscountDeal[] deals = new DiscountDeal[LINE_COUNT];
+    private final DiscountRule[] rules = new DiscountRule[LINE_COUNT];
+
+    public ReceiptLineEvaluatorTest() {
+        final Random random = new Random(42);
+        for (int i = 0; i < LINE_COUNT; i++) {
+            products[i] = new ProductSnapshot((long) i, "Product " + i, "Description", 100L + random.nextInt(100_000), Instant.EPOCH, 0);
+            quantities[i] = 1 + random.nextInt(20);
+            if (i % 3 != 0) {
+                deals[i] = new DiscountDeal((long) i, (long) i, DESCRIPTIONS[i % DESCRIPTIONS.length], true, Instant.EPOCH, 0);
+                rules[i] = DiscountRules.compile(deals[i]);
+            }
+        }
+    }
+
+    @AfterEach
+    public void shutdown() {
+        sequential.shutdown();
+        parallel.shutdown();
+    }
+
+    @Test
+    public void testParallelEvaluationMatchesSequential() {
+        final LineTotal[] sequentialLines = new LineTotal[LINE_COUNT];
+        final LineTotal[] parallelLines = new LineTotal[LINE_COUNT];
+
+        assertEquals(LINE_COUNT, sequential.evaluate(sequentialLines, products, quantities, deals, rules));
+        assertEquals(LINE_COUNT, parallel.evaluate(parallelLines, products, quantities, deals, rules));
+
+        assertArrayEquals(sequentialLines, parallelLines);
+    }
+
+    @Test
+    public void testOnlyMissingLinesAreEvaluated() {
+        final LineTotal[] lines = new LineTotal[LINE_COUNT];
+        final LineTotal kept = ReceiptLineEvaluator.evaluateLine(products[5], quantities[5], deals[5], rules[5]);
+        lines[5] = kept;
+
+        assertEquals(LINE_COUNT - 1, parallel.evaluate(lines, products, quantities, deals, rules));
+
+        assertSame(kept, lines[5]);
+        for (final LineTotal line : lines) {
+            assertNotNull(line);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.sample.electronicstore.event;
+
+import com.sample.electronicstore.cache.ProductCatalogCache;
+import com.sample.electronicstore.discount.DiscountRuleRegistry;
+import com.sample.electronicstore.dto.DiscountDealDTO;
+import com.sample.electronicstore.dto.ProductDTO;
+import com.sample.electronicstore.entity.DiscountDeal;
+import com.sample.electronicstore.entity.Product;
+import com.sample.electronicstore.metrics.StoreMetrics;
+import com.sample.electronicstore.repository.ActiveDealRepository;
+import com.sample.electronicstore.repository.DiscountDealRepository;
+import com.sample.electronicstore.repository.OutboxEventRepository;
+import com.sample.electronicstore.repository.ProductRepository;
+import com.sample.electronicstore.service.DiscountDealService;
+import com.sample.electronicstore.service.ProductService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+public class OutboxIntegrationTest {
+
+    @Autowired
+    private InMemoryChangeEventBus changeEventBus;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private DiscountDealService discountDealService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private Outbox outbox;
+
+    @Autowired
+    private OutboxDispatcher outboxDispatcher;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private DiscountDealRepository discountDealRepository;
+
+    @Autowired
+    private ActiveDealRepository activeDealRepository;
+
+    @Autowired
+    private ProductCatalogCache productCatalogCache;
+
+    @Autowired
+    private DiscountRuleRegistry discountRuleRegistry;
+
+    @Autowired
+    private StoreMetrics storeMetrics;
+
+    private final BlockingQueue<ChangeEvent> events = new LinkedBlockingQueue<>();
+    private AutoCloseable registration;
+
+    @BeforeEach
+    public void setUp() {
+        registration = changeEventBus.register(events::add);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        registration.close();
+    }
+
+    @Test
+    public void testProductChangesArePublishedInOrder() throws InterruptedException {
+        final ProductDTO product = productService.saveProduct(new ProductDTO(null, "Outbox Headphones", "Headphones", 80.0, 0));
+        product.setPrice(70.0);
+        productService.saveProduct(product);
+        productService.removeProduct(product.getId());
+
+        final List<ChangeEvent> productEvents = next(ChangeEvent.PRODUCT, product.getId(), 3);
+
+        assertEquals(ChangeType.SAVED, productEvents.get(0).getChangeType());
+        assertEquals(ChangeType.SAVED, productEvents.get(1).getChangeType());
+        assertEquals(ChangeType.REMOVED, productEvents.get(2).getChangeType());
+        // the versions are the product's own, the removal follows its last save
+        assertEquals(0, productEvents.get(0).getVersion());
+        assertEquals(1, productEvents.get(1).getVersion());
+        assertEquals(2, productEvents.get(2).getVersion());
+    }
+
+    @Test
+    public void testReplacedDealIsPublishedWithTheNewDeal() throws InterruptedException {
+        final ProductDTO product = productService.saveProduct(new ProductDTO(null, "Outbox Tablet", "Tablet", 300.0, 0));
+        final DiscountDealDTO firstDeal = discountDealService.saveDiscountDeal(new DiscountDealDTO(null, product.getId(), "Buy 1 Get 1 Free", true, 0));
+        final DiscountDealDTO secondDeal = discountDealService.saveDiscountDeal(new DiscountDealDTO(null, product.getId(), "Buy 2 Get 1 Free", true, 0));
+        discountDealService.removeDiscountDeal(secondDeal.getId());
+
+        final List<ChangeEvent> firstDealEvents = next(ChangeEvent.DISCOUNT_DEAL, firstDeal.getId(), 2);
+        final List<ChangeEvent> secondDealEvents = next(ChangeEvent.DISCOUNT_DEAL, secondDeal.getId(), 2);
+
+        // the first deal is saved, then deactivated in the transaction of the second deal
+        assertEquals(ChangeType.SAVED, firstDealEvents.get(1).getChangeType());
+        assertEquals(1, firstDealEvents.get(1).getVersion());
+        assertEquals(ChangeType.SAVED, secondDealEvents.get(0).getChangeType());
+        assertEquals(ChangeType.REMOVED, secondDealEvents.get(1).getChangeType());
+    }
+
+    @Test
+    public void testRolledBackChangeIsNotPublished() throws InterruptedException {
+        final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        final ProductDTO rolledBack = transactionTemplate.execute(status -> {
+            final ProductDTO product = productService.saveProduct(new ProductDTO(null, "Outbox Rolled Back", "Nothing", 1.0, 0));
+            status.setRollbackOnly();
+            return product;
+        });
+        final ProductDTO committed = productService.saveProduct(new ProductDTO(null, "Outbox Committed", "Something", 1.0, 0));
+
+        next(ChangeEvent.PRODUCT, committed.getId(), 1);
+
+        for (final ChangeEvent event : events) {
+            assertTrue(!rolledBack.getId().equals(event.getEntityId()) || !ChangeEvent.PRODUCT.equals(event.getEntity()));
+        }
+    }
+
+    @Test
+    public void testChangeOfAnotherInstanceReachesTheCaches() throws InterruptedException {
+        final ProductDTO product = productService.saveProduct(new ProductDTO(null, "Outbox Speaker", "Speaker", 50.0, 0));
+        next(ChangeEvent.PRODUCT, product.getId(), 1);
+
+        // another instance changes the price, only its outbox row tells this instance
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            final Product stored = productRepository.findById(product.getId()).get();
+            stored.setPrice(4500L);
+            final Product saved = productRepository.saveAndFlush(stored);
+            outbox.record(ChangeEvent.PRODUCT, saved.getId(), saved.getId(), saved.getVersion(), ChangeType.SAVED);
+        });
+        next(ChangeEvent.PRODUCT, product.getId(), 1);
+
+        assertEquals(4500L, productCatalogCache.get(product.getId()).get().getPrice());
+    }
+
+    @Test
+    public void testDealRemovalOfAnotherInstanceReachesTheRules() throws InterruptedException {
+        final ProductDTO product = productService.saveProduct(new ProductDTO(null, "Outbox Radio", "Radio", 50.0, 0));
+        final DiscountDealDTO deal = discountDealService.saveDiscountDeal(new DiscountDealDTO(null, product.getId(), "Buy 1 Get 1 Free", true, 0));
+        next(ChangeEvent.DISCOUNT_DEAL, deal.getId(), 1);
+        assertNotNull(discountRuleRegistry.findByProductId(product.getId()));
+
+        // another instance removes the deal, only its outbox row tells this instance
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            final DiscountDeal stored = discountDealRepository.findById(deal.getId()).get();
+            activeDealRepository.deleteById(product.getId());
+            discountDealRepository.delete(stored);
+            discountDealRepository.flush();
+            outbox.record(ChangeEvent.DISCOUNT_DEAL, stored.getId(), stored.getProductId(), stored.getVersion() + 1, ChangeType.REMOVED);
+        });
+        next(ChangeEvent.DISCOUNT_DEAL, deal.getId(), 1);
+
+        assertNull(discountRuleRegistry.findByProductId(product.getId()));
+    }
+
+    @Test
+    public void testEveryInstancePublishesEveryChange() throws Exception {
+        final BlockingQueue<ChangeEvent> otherInstanceEvents = new LinkedBlockingQueue<>();
+        final OutboxDispatcher otherInstance = new OutboxDispatcher(outboxEventRepository,
+                new InMemoryChangeEventBus(Collections.singletonList(otherInstanceEvents::add)), storeMetrics,
+                transactionManager, 2, 0, 5000, 60, 0);
+        try {
+            final ProductDTO product = productService.saveProduct(new ProductDTO(null, "Outbox Lamp", "Lamp", 20.0, 0));
+            next(ChangeEvent.PRODUCT, product.getId(), 1);
+
+            // the change was not removed by the dispatch of this instance, the other one publishes it as well
+            otherInstance.dispatchSoon();
+            ChangeEvent event;
+            do {
+                event = otherInstanceEvents.poll(10, TimeUnit.SECONDS);
+                assertNotNull(event, "missing change of product " + product.getId() + " on the other instance");
+            } while (!product.getId().equals(event.getEntityId()));
+            // a second dispatch skips the changes the other instance already published
+            otherInstanceEvents.clear();
+            otherInstance.dispatchSoon();
+            assertNull(otherInstanceEvents.poll(500, TimeUnit.MILLISECONDS));
+        } finally {
+            otherInstance.shutdown();
+        }
+    }
+
+    @Test
+    public void testSweepRemovesChangesOlderThanTheRetention() throws InterruptedException {
+        final ProductDTO product = productService.saveProduct(new ProductDTO(null, "Outbox Clock", "Clock", 10.0, 0));
+        next(ChangeEvent.PRODUCT, product.getId(), 1);
+
+        assertEquals(0, outboxDispatcher.sweep());
+        assertTrue(outboxDispatcher.removeCreatedBefore(Instant.now().plusSeconds(1)) > 0);
+        assertEquals(0, outboxEventRepository.count());
+    }
+
+    /**
+     * Waits for the next changes of an entity, skipping the changes of other entities.
+     */
+    private List<ChangeEvent> next(final String entity, final Long entityId, final int count) throws InterruptedException {
+        final List<ChangeEvent> entityEvents = new ArrayList<>();
+        final List<ChangeEvent> otherEvents = new ArrayList<>();
+        while (entityEvents.size() < count) {
+            final ChangeEvent event = events.poll(10, TimeUnit.SECONDS);
+            assertNotNull(event, "missing change of " + entity + " " + entityId);
+            (entity.equals(event.getEntity()) && entityId.equals(event.getEntityId()) ? entityEvents : otherEvents).add(event);
+        }
+        // the changes of the other entities are kept for the next wait
+        final List<ChangeEvent> rest = new ArrayList<>(otherEvents);
+        events.drainTo(rest);
+        events.addAll(rest);
+        return entityEvents;
+    }
+}
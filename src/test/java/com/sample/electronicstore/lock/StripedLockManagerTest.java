@@ -0,0 +1,102 @@
+package com.sample.electronicstore.lock;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StripedLockManagerTest {
+
+    private StripedLockManager lockManager;
+
+    @BeforeEach
+    public void setup() {
+        lockManager = new StripedLockManager(16);
+    }
+
+    @Test
+    public void testStripeCountIsPowerOfTwo() {
+        assertEquals(16, lockManager.getStripeCount());
+        assertEquals(64, new StripedLockManager(50).getStripeCount());
+    }
+
+    @Test
+    public void testDifferentKeysRunInParallel() throws Exception {
+        final String firstKey = "product:1";
+        String otherKey = "product:2";
+        for (int i = 3; lockManager.stripeFor(otherKey) == lockManager.stripeFor(firstKey); i++) {
+            otherKey = "product:" + i;
+        }
+        assertNotEquals(lockManager.stripeFor(firstKey), lockManager.stripeFor(otherKey));
+
+        final CountDownLatch firstLocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> holder = executor.submit(() -> lockManager.withLock(firstKey, () -> {
+                firstLocked.countDown();
+                await(release);
+            }));
+            assertTrue(firstLocked.await(5, TimeUnit.SECONDS));
+
+            // a write on another product doesn't wait for the first one
+            assertEquals("done", lockManager.withLock(otherKey, () -> "done"));
+            assertEquals(0, lockManager.getContendedAcquisitions());
+
+            release.countDown();
+            holder.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSameKeyIsSerializedAndWaitIsRecorded() throws Exception {
+        final AtomicInteger inside = new AtomicInteger();
+        final AtomicInteger maxInside = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 40; i++) {
+                executor.submit(() -> lockManager.withLock("product:1", () -> {
+                    maxInside.accumulateAndGet(inside.incrementAndGet(), Math::max);
+                    sleep();
+                    inside.decrementAndGet();
+                }));
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        }
+
+        assertEquals(1, maxInside.get());
+        assertEquals(40, lockManager.getAcquisitions());
+        assertTrue(lockManager.getContendedAcquisitions() > 0);
+        assertTrue(lockManager.getTotalWaitNanos() > 0);
+        assertTrue(lockManager.getMaxWaitNanos() > 0);
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
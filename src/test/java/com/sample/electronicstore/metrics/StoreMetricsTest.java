@@ -0,0 +1,50 @@
+package com.sample.electronicstore.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class StoreMetricsTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private StoreMetrics storeMetrics;
+
+    @BeforeEach
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        storeMetrics = new StoreMetrics(meterRegistry);
+    }
+
+    @Test
+    public void testTimeRecordsOutcome() {
+        assertEquals("done", storeMetrics.time(StoreMetrics.BASKET_ADD, () -> "done"));
+        assertThrows(IllegalStateException.class, () -> storeMetrics.time(StoreMetrics.BASKET_ADD, () -> {
+            throw new IllegalStateException("failed");
+        }));
+
+        assertEquals(1, meterRegistry.get("store.operation").tag("operation", StoreMetrics.BASKET_ADD).tag("outcome", "success").timer().count());
+        assertEquals(1, meterRegistry.get("store.operation").tag("operation", StoreMetrics.BASKET_ADD).tag("outcome", "failure").timer().count());
+    }
+
+    @Test
+    public void testRecordReceipt() {
+        storeMetrics.recordReceipt(4, 1);
+        storeMetrics.recordReceipt(2, 2);
+
+        assertEquals(2, meterRegistry.get("store.basket.size").summary().count());
+        assertEquals(6, meterRegistry.get("store.basket.size").summary().totalAmount());
+        assertEquals(3, meterRegistry.get("store.receipt.lines").tag("discount", "applied").counter().count());
+        assertEquals(3, meterRegistry.get("store.receipt.lines").tag("discount", "none").counter().count());
+    }
+
+    @Test
+    public void testRecordConflict() {
+        storeMetrics.recordConflict("basket");
+        storeMetrics.recordConflict("basket");
+
+        assertEquals(2, meterRegistry.get("store.conflicts").tag("entity", "basket").counter().count());
+    }
+}
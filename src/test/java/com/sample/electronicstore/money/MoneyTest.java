@@ -0,0 +1,72 @@
+package com.sample.electronicstore.money;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MoneyTest {
+
+    @Test
+    public void testOfMajorRoundsHalfUpToCents() {
+        assertEquals(1250L, Money.ofMajor(12.5));
+        assertEquals(101L, Money.ofMajor(1.005));
+        assertEquals(30L, Money.ofMajor(0.1 + 0.2));
+        assertEquals(-1250L, Money.ofMajor(-12.5));
+    }
+
+    @Test
+    public void testDivideMatchesBigDecimalForAllRoundingModes() {
+        final long[] dividends = {0, 1, 5, 15, 25, 149, 150, 151, -1, -5, -15, -25, -150, 1001, -1001};
+        final long[] divisors = {1, 2, 10, 100, -10, -100};
+        for (final RoundingMode mode : RoundingMode.values()) {
+            if (mode == RoundingMode.UNNECESSARY) {
+                continue;
+            }
+            for (final long dividend : dividends) {
+                for (final long divisor : divisors) {
+                    final long expected = BigDecimal.valueOf(dividend).divide(BigDecimal.valueOf(divisor), 0, mode).longValueExact();
+                    assertEquals(expected, Money.divide(dividend, divisor, mode), dividend + " / " + divisor + " " + mode);
+                }
+            }
+        }
+        assertThrows(ArithmeticException.class, () -> Money.divide(5, 2, RoundingMode.UNNECESSARY));
+        assertEquals(2L, Money.divide(4, 2, RoundingMode.UNNECESSARY));
+    }
+
+    @Test
+    public void testPercentOf() {
+        assertEquals(500L, Money.percentOf(1001L, 50, RoundingMode.HALF_EVEN));
+        assertEquals(501L, Money.percentOf(1001L, 50, RoundingMode.HALF_UP));
+        assertEquals(330L, Money.percentOf(1001L, 33, RoundingMode.HALF_EVEN));
+    }
+
+    @Test
+    public void testSumOfManyLinesIsExact() {
+        long total = 0;
+        double doubleTotal = 0;
+        for (int i = 0; i < 100_000; i++) {
+            total += Money.times(Money.ofMajor(0.1), 1);
+            doubleTotal += 0.1;
+        }
+        assertEquals(1_000_000L, total);
+        // the double sum has drifted away from 10000.00
+        assertEquals(false, doubleTotal == 10_000.0);
+    }
+
+    @Test
+    public void testTimesOverflowIsDetected() {
+        assertThrows(ArithmeticException.class, () -> Money.times(Long.MAX_VALUE / 2, 3));
+    }
+
+    @Test
+    public void testFormatAndToMajor() {
+        assertEquals("12.50", Money.format(1250L));
+        assertEquals("0.05", Money.format(5L));
+        assertEquals("-1.05", Money.format(-105L));
+        assertEquals(12.5, Money.toMajor(1250L));
+    }
+}
@@ -0,0 +1,123 @@
+package com.sample.electronicstore.repository;
+
+import com.sample.electronicstore.entity.Basket;
+import com.sample.electronicstore.entity.BasketItem;
+import com.sample.electronicstore.entity.Product;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+public class BasketRepositoryIntegrationTest {
+
+    private static final int ITEM_COUNT = 5;
+    private static final int BATCHED_ITEM_COUNT = 120;
+
+    @Autowired
+    private BasketRepository basketRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Basket savedBasket;
+    private Statistics statistics;
+
+    @BeforeEach
+    public void setUp() {
+        final Basket basket = new Basket(4242L);
+        basket.setItems(new ArrayList<>());
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            final Product product = productRepository.save(new Product(null, "Statement Count Product " + i, "Product", 1000L + 100L * i, null, 0));
+            final BasketItem basketItem = new BasketItem();
+            basketItem.setBasket(basket);
+            basketItem.setProduct(product);
+            basketItem.setQuantity(i + 1);
+            basket.getItems().add(basketItem);
+        }
+        savedBasket = basketRepository.save(basket);
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @AfterEach
+    public void deleteData() {
+        basketRepository.deleteAll();
+        productRepository.deleteAll();
+    }
+
+    @Test
+    public void testFindWithItemsAndProductsByIdUsesOneStatement() {
+        final long total = new TransactionTemplate(transactionManager).execute(status -> sumOfItems(
+                basketRepository.findWithItemsAndProductsById(savedBasket.getId()).get()));
+
+        // 10*1 + 11*2 + 12*3 + 13*4 + 14*5 in cents
+        assertEquals(19000L, total);
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void testFindWithItemsAndProductsByCustomerIdUsesOneStatement() {
+        new TransactionTemplate(transactionManager).execute(status -> sumOfItems(
+                basketRepository.findWithItemsAndProductsByCustomerId(4242L).get()));
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void testFindByIdLoadsItemsAndProductsLazily() {
+        new TransactionTemplate(transactionManager).execute(status -> sumOfItems(
+                basketRepository.findById(savedBasket.getId()).get()));
+
+        // one statement for the basket, one for its items and one per product
+        assertEquals(2 + ITEM_COUNT, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void testSaveBasketWithManyItemsIsBatched() {
+        final List<Product> products = new ArrayList<>();
+        for (int i = 0; i < BATCHED_ITEM_COUNT; i++) {
+            products.add(new Product(null, "Batched Product " + i, "Product", 100L, null, 0));
+        }
+        productRepository.saveAll(products);
+        final Basket basket = new Basket(4343L);
+        basket.setItems(new ArrayList<>());
+        for (final Product product : products) {
+            basket.getItems().add(new BasketItem(null, basket, product, 1, null));
+        }
+        statistics.clear();
+
+        basketRepository.save(basket);
+
+        assertEquals(1 + BATCHED_ITEM_COUNT, statistics.getEntityInsertCount());
+        // a few sequence calls, one insert of the basket and the items in batches of 50, not one statement per item
+        assertTrue(statistics.getPrepareStatementCount() <= 10, "statements: " + statistics.getPrepareStatementCount());
+    }
+
+    //touches every item and its product, like the receipt calculation does
+    private long sumOfItems(final Basket basket) {
+        long total = 0;
+        for (final BasketItem item : basket.getItems()) {
+            total += item.getProduct().getPrice() * item.getQuantity();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,61 @@
+package com.sample.electronicstore.repository;
+
+import com.sample.electronicstore.entity.DiscountDeal;
+import com.sample.electronicstore.entity.Receipt;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+public class ReceiptRepositoryIntegrationTest {
+
+    private static final int DEAL_COUNT = 60;
+
+    @Autowired
+    private ReceiptRepository receiptRepository;
+
+    @Autowired
+    private DiscountDealRepository discountDealRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private final List<DiscountDeal> deals = new ArrayList<>();
+    private Receipt savedReceipt;
+
+    @AfterEach
+    public void deleteData() {
+        if (savedReceipt != null) {
+            receiptRepository.delete(savedReceipt);
+        }
+        discountDealRepository.deleteAll(deals);
+    }
+
+    @Test
+    public void testSaveReceiptWithManyDealsIsBatched() {
+        for (int i = 0; i < DEAL_COUNT; i++) {
+            deals.add(new DiscountDeal(null, 900_000L + i, "Buy 1 Get 1 Free", true, null, 0));
+        }
+        discountDealRepository.saveAll(deals);
+        final Receipt receipt = new Receipt(null, 4545L, new HashSet<>(deals), 100L, null, 0, "hash");
+        final Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        savedReceipt = receiptRepository.save(receipt);
+
+        assertEquals(1, statistics.getEntityInsertCount());
+        // the sequence call, the receipt insert and the deal links in batches of 50, not one statement per deal
+        assertTrue(statistics.getPrepareStatementCount() <= 5, "statements: " + statistics.getPrepareStatementCount());
+    }
+}
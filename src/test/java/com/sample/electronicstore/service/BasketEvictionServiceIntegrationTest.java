@@ -0,0 +1,115 @@
+package com.sample.electronicstore.service;
+
+import com.sample.electronicstore.cache.ReceiptTotalsCache;
+import com.sample.electronicstore.dto.BasketDTO;
+import com.sample.electronicstore.dto.BasketEvictionReportDTO;
+import com.sample.electronicstore.dto.ProductDTO;
+import com.sample.electronicstore.dto.ReceiptDTO;
+import com.sample.electronicstore.metrics.StoreMetrics;
+import com.sample.electronicstore.repository.BasketItemRepository;
+import com.sample.electronicstore.repository.BasketRepository;
+import com.sample.electronicstore.repository.ReceiptRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+public class BasketEvictionServiceIntegrationTest {
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private BasketService basketService;
+
+    @Autowired
+    private ReceiptService receiptService;
+
+    @Autowired
+    private BasketRepository basketRepository;
+
+    @Autowired
+    private BasketItemRepository basketItemRepository;
+
+    @Autowired
+    private ReceiptRepository receiptRepository;
+
+    @Autowired
+    private ReceiptTotalsCache receiptTotalsCache;
+
+    @Autowired
+    private StoreMetrics storeMetrics;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private BasketEvictionService basketEvictionService;
+    private ProductDTO product;
+
+    @BeforeEach
+    public void setUp() {
+        // two baskets per batch, so a run spans several batches
+        basketEvictionService = new BasketEvictionService(basketRepository, basketItemRepository, receiptTotalsCache, storeMetrics,
+                transactionManager, 60, 2, 0);
+        product = productService.saveProduct(new ProductDTO(null, "Eviction Charger " + System.nanoTime(), "Charger", 15.0, 0));
+    }
+
+    @Test
+    public void testIdleBasketsAreRemovedInBatches() {
+        final BasketDTO idle1 = basketService.addToBasket(25001L, product.getId(), 1);
+        final BasketDTO idle2 = basketService.addToBasket(25002L, product.getId(), 2);
+        final BasketDTO idle3 = basketService.addToBasket(25003L, product.getId(), 3);
+        final BasketDTO active = basketService.addToBasket(25004L, product.getId(), 1);
+        final ReceiptDTO receipt = receiptService.calculateReceipt(idle1.getId());
+        final Instant cutoff = Instant.now().minus(Duration.ofDays(1));
+        backdate(idle1.getId(), idle2.getId(), idle3.getId());
+
+        final BasketEvictionReportDTO report = basketEvictionService.evictBasketsIdleSince(cutoff);
+
+        assertEquals(3, report.getBasketsRemoved());
+        assertEquals(3, report.getBasketItemsRemoved());
+        assertEquals(2, report.getBatches());
+        assertFalse(basketRepository.findById(idle1.getId()).isPresent());
+        assertFalse(basketItemRepository.findById(idle3.getItems().get(0).getId()).isPresent());
+        assertTrue(basketRepository.findById(active.getId()).isPresent());
+        // the receipts of a removed basket are kept
+        assertTrue(receiptRepository.findById(receipt.getId()).isPresent());
+        // a returning customer gets a new basket
+        assertNotEquals(idle1.getId(), basketService.addToBasket(25001L, product.getId(), 1).getId());
+    }
+
+    @Test
+    public void testChangeOfItsLinesKeepsABasket() {
+        final BasketDTO basket = basketService.addToBasket(25005L, product.getId(), 1);
+        final Instant cutoff = Instant.now().minus(Duration.ofDays(1));
+        backdate(basket.getId());
+
+        basketService.addToBasket(25005L, product.getId(), 1);
+        final BasketEvictionReportDTO report = basketEvictionService.evictBasketsIdleSince(cutoff);
+
+        assertEquals(0, report.getBasketsRemoved());
+        assertTrue(basketRepository.findById(basket.getId()).isPresent());
+    }
+
+    private void backdate(final Long... basketIds) {
+        final Timestamp lastWeek = Timestamp.from(Instant.now().minus(Duration.ofDays(7)));
+        for (final Long basketId : basketIds) {
+            jdbcTemplate.update("update basket set last_updated = ? where id = ?", lastWeek, basketId);
+        }
+    }
+}
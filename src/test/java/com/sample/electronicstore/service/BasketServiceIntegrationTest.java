@@ -0,0 +1,65 @@
+package com.sample.electronicstore.service;
+
+import com.sample.electronicstore.dto.ProductDTO;
+import com.sample.electronicstore.entity.Basket;
+import com.sample.electronicstore.repository.BasketRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+public class BasketServiceIntegrationTest {
+
+    private static final int WRITERS = 8;
+    private static final int ADDS_PER_WRITER = 5;
+
+    @Autowired
+    private BasketService basketService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private BasketRepository basketRepository;
+
+    @Test
+    public void testConcurrentAddsToSameBasketAllSucceed() throws Exception {
+        final ProductDTO productDTO = productService.saveProduct(new ProductDTO(null, "Contended Charger", "Chargers", 15.0, 0));
+        final long customerId = 7070L;
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        final List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < WRITERS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    // the first adds also race to create the basket of the customer
+                    for (int add = 0; add < ADDS_PER_WRITER; add++) {
+                        basketService.addToBasket(customerId, productDTO.getId(), 1);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (final Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final Basket basket = basketRepository.findWithItemsAndProductsByCustomerId(customerId).get();
+        assertEquals(1, basket.getItems().size());
+        assertEquals(WRITERS * ADDS_PER_WRITER, basket.getItems().get(0).getQuantity());
+    }
+}
@@ -1,27 +1,59 @@
 package com.sample.electronicstore.service;
 
+import com.sample.electronicstore.cache.ProductCatalogCache;
+import com.sample.electronicstore.cache.ProductSnapshot;
 import com.sample.electronicstore.dto.BasketDTO;
+import com.sample.electronicstore.dto.BasketOperationDTO;
+import com.sample.electronicstore.dto.BasketOperationType;
 import com.sample.electronicstore.entity.Basket;
+import com.sample.electronicstore.entity.BasketItem;
 import com.sample.electronicstore.entity.Product;
+import com.sample.electronicstore.exception.StoreOperationException;
+import com.sample.electronicstore.lock.StripedLockManager;
+import com.sample.electronicstore.metrics.StoreMetrics;
 import com.sample.electronicstore.repository.BasketItemRepository;
 import com.sample.electronicstore.repository.BasketRepository;
 import com.sample.electronicstore.repository.ProductRepository;
+import com.sample.electronicstore.retry.ConflictRetrier;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.sql.SQLException;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -37,6 +69,23 @@ public class BasketServiceTest {
     @Mock
     private BasketItemRepository basketItemRepository;
 
+    @Mock
+    private ProductCatalogCache productCatalogCache;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private StoreMetrics storeMetrics = new StoreMetrics(meterRegistry);
+
+    @Spy
+    private StripedLockManager lockManager = new StripedLockManager(4);
+
+    @Spy
+    private ConflictRetrier conflictRetrier = new ConflictRetrier(3, 0, 0, storeMetrics);
+
     @InjectMocks
     private BasketService basketService;
 
@@ -46,32 +95,227 @@ public class BasketServiceTest {
     @BeforeEach
     public void setup() {
         MockitoAnnotations.openMocks(this);
-        product = new Product(1L, "Crypto", "High-end crypto", 1500.00, Instant.parse("2024-01-15T18:35:24.00Z"));
+        product = new Product(1L, "Crypto", "High-end crypto", 150000L, Instant.parse("2024-01-15T18:35:24.00Z"), 0);
         basket = new Basket(1L);
         basket.setItems(new ArrayList<>());
     }
 
     @Test
     public void testAddToBasket() {
-        when(productRepository.findById(anyLong())).thenReturn(Optional.of(product));
-        when(basketRepository.findByCustomerId(anyLong())).thenReturn(Optional.of(basket));
-        when(basketRepository.save(any(Basket.class))).thenReturn(basket);
+        when(productCatalogCache.get(anyLong())).thenReturn(Optional.of(ProductSnapshot.of(product)));
+        when(productRepository.getById(anyLong())).thenReturn(product);
+        when(basketRepository.findWithItemsAndProductsByCustomerId(anyLong())).thenReturn(Optional.of(basket));
+        when(basketRepository.saveAndFlush(any(Basket.class))).thenReturn(basket);
 
         final BasketDTO basketDTO = basketService.addToBasket(1L, 1L, 2);
 
         assertNotNull(basketDTO);
         assertFalse(basketDTO.getItems().isEmpty());
-        verify(basketRepository, times(1)).findByCustomerId(anyLong());
-        verify(basketRepository, times(1)).save(any(Basket.class));
+        verify(basketRepository, times(1)).findWithItemsAndProductsByCustomerId(anyLong());
+        verify(basketRepository, times(1)).saveAndFlush(any(Basket.class));
+        verify(productRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    public void testAddToBasketMergesLineOfSameProduct() {
+        basket.setId(3L);
+        final BasketItem basketItem = new BasketItem(7L, basket, product, 2, null);
+        basket.getItems().add(basketItem);
+        when(productCatalogCache.get(anyLong())).thenReturn(Optional.of(ProductSnapshot.of(product)));
+        when(basketRepository.findWithItemsAndProductsByCustomerId(anyLong())).thenReturn(Optional.of(basket));
+        when(basketRepository.saveAndFlush(any(Basket.class))).thenReturn(basket);
+
+        final BasketDTO basketDTO = basketService.addToBasket(1L, 1L, 3);
+
+        assertEquals(1, basketDTO.getItems().size());
+        assertEquals(5, basketDTO.getItems().get(0).getQuantity());
+        verify(productRepository, never()).getById(anyLong());
+        // the change of a line updates the basket, so its version and its update time change as well
+        assertNotNull(basket.getLastUpdated());
+    }
+
+    @Test
+    public void testApplyOperationsInOneSave() {
+        basket.setId(3L);
+        basket.getItems().add(new BasketItem(7L, basket, product, 2, null));
+        when(productCatalogCache.get(anyLong())).thenReturn(Optional.of(ProductSnapshot.of(product)));
+        when(basketRepository.findWithItemsAndProductsByCustomerId(anyLong())).thenReturn(Optional.of(basket));
+        when(basketRepository.saveAndFlush(any(Basket.class))).thenReturn(basket);
+
+        final BasketDTO basketDTO = basketService.applyOperations(1L, Arrays.asList(
+                new BasketOperationDTO(BasketOperationType.ADD, 1L, 3),
+                new BasketOperationDTO(BasketOperationType.REMOVE, 1L, 0),
+                new BasketOperationDTO(BasketOperationType.SET_QUANTITY, 1L, 4)));
+
+        // the removed line is reused by the later operation instead of being deleted and inserted again
+        assertEquals(1, basketDTO.getItems().size());
+        assertEquals(4, basketDTO.getItems().get(0).getQuantity());
+        verify(basketRepository, times(1)).saveAndFlush(any(Basket.class));
+        verify(basketItemRepository, never()).deleteAll(any());
+        // the change of a line updates the basket, so its version and its update time change as well
+        assertNotNull(basket.getLastUpdated());
+    }
+
+    @Test
+    public void testApplyOperationsRejectsInvalidOperation() {
+        when(basketRepository.findWithItemsAndProductsByCustomerId(anyLong())).thenReturn(Optional.of(basket));
+
+        final StoreOperationException exception = assertThrows(StoreOperationException.class,
+                () -> basketService.applyOperations(1L, Collections.singletonList(
+                        new BasketOperationDTO(BasketOperationType.ADD, 1L, 0))));
+
+        assertEquals("Operation 0: quantity to add must be positive", exception.getMessage());
+        verify(basketRepository, never()).saveAndFlush(any(Basket.class));
+    }
+
+    @Test
+    public void testAddToBasketRetriesConflict() {
+        basket.setId(3L);
+        basket.getItems().add(new BasketItem(7L, basket, product, 2, null));
+        when(productCatalogCache.get(anyLong())).thenReturn(Optional.of(ProductSnapshot.of(product)));
+        when(basketRepository.findWithItemsAndProductsByCustomerId(anyLong())).thenReturn(Optional.of(basket));
+        when(basketRepository.saveAndFlush(any(Basket.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Basket.class, 3L))
+                .thenReturn(basket);
+
+        final BasketDTO basketDTO = basketService.addToBasket(1L, 1L, 2);
+
+        assertNotNull(basketDTO);
+        // each attempt re-reads the basket
+        verify(basketRepository, times(2)).findWithItemsAndProductsByCustomerId(anyLong());
+        assertEquals(1, meterRegistry.get("store.retries").tag("entity", "basket").counter().count());
+        assertNull(meterRegistry.find("store.retries.exhausted").counter());
+    }
+
+    @Test
+    public void testAddToBasketGivesUpAfterMaxAttempts() {
+        basket.getItems().add(new BasketItem(7L, basket, product, 2, null));
+        when(productCatalogCache.get(anyLong())).thenReturn(Optional.of(ProductSnapshot.of(product)));
+        when(basketRepository.findWithItemsAndProductsByCustomerId(anyLong())).thenReturn(Optional.of(basket));
+        when(basketRepository.saveAndFlush(any(Basket.class))).thenThrow(new ObjectOptimisticLockingFailureException(Basket.class, 3L));
+
+        final StoreOperationException exception = assertThrows(StoreOperationException.class,
+                () -> basketService.addToBasket(1L, 1L, 2));
+
+        assertEquals("Basket was updated concurrently", exception.getMessage());
+        verify(basketRepository, times(3)).saveAndFlush(any(Basket.class));
+        assertEquals(2, meterRegistry.get("store.retries").tag("entity", "basket").counter().count());
+        assertEquals(1, meterRegistry.get("store.retries.exhausted").tag("entity", "basket").counter().count());
+    }
+
+    @Test
+    public void testAddToBasketReleasesStripeBeforeBackingOff() {
+        final ExecutorService otherWriter = Executors.newSingleThreadExecutor();
+        final List<Boolean> stripeFreeBeforeAttempt = new ArrayList<>();
+        final ConflictRetrier checkingRetrier = new ConflictRetrier(3, 0, 0, storeMetrics) {
+            @Override
+            public <T> T execute(final String entity, final String operation, final Supplier<T> attempt) {
+                return super.execute(entity, operation, () -> {
+                    stripeFreeBeforeAttempt.add(isStripeFree(otherWriter, "basket:1"));
+                    return attempt.get();
+                });
+            }
+        };
+        final BasketService service = new BasketService(basketRepository, productRepository, basketItemRepository,
+                productCatalogCache, storeMetrics, checkingRetrier, new SynchronizingTransactionManager(), lockManager);
+        basket.getItems().add(new BasketItem(7L, basket, product, 2, null));
+        when(productCatalogCache.get(anyLong())).thenReturn(Optional.of(ProductSnapshot.of(product)));
+        when(basketRepository.findWithItemsAndProductsByCustomerId(anyLong())).thenReturn(Optional.of(basket));
+        when(basketRepository.saveAndFlush(any(Basket.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Basket.class, 3L))
+                .thenReturn(basket);
+
+        // the transactional proxy runs the method with synchronization active, which used to defer the unlock
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            assertNotNull(service.addToBasket(1L, 1L, 2));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+            otherWriter.shutdownNow();
+        }
+
+        assertEquals(Arrays.asList(true, true), stripeFreeBeforeAttempt);
+    }
+
+    private boolean isStripeFree(final ExecutorService otherWriter, final String key) {
+        try {
+            return otherWriter.submit(() -> lockManager.withLock(key, () -> true)).get(1, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    public void testAddToBasketRetriesDuplicateLine() {
+        when(productCatalogCache.get(anyLong())).thenReturn(Optional.of(ProductSnapshot.of(product)));
+        when(productRepository.getById(anyLong())).thenReturn(product);
+        when(basketRepository.findWithItemsAndProductsByCustomerId(anyLong())).thenReturn(Optional.of(basket));
+        when(basketRepository.saveAndFlush(any(Basket.class)))
+                .thenThrow(violationOf("\"PUBLIC.UK_BASKET_ITEM_BASKET_PRODUCT_INDEX_A ON PUBLIC.BASKET_ITEM(BASKET_ID, PRODUCT_ID)\""))
+                .thenReturn(basket);
+
+        assertNotNull(basketService.addToBasket(1L, 1L, 2));
+        verify(basketRepository, times(2)).saveAndFlush(any(Basket.class));
+    }
+
+    @Test
+    public void testAddToBasketDoesNotRetryOtherViolation() {
+        when(productCatalogCache.get(anyLong())).thenReturn(Optional.of(ProductSnapshot.of(product)));
+        when(productRepository.getById(anyLong())).thenReturn(product);
+        when(basketRepository.findWithItemsAndProductsByCustomerId(anyLong())).thenReturn(Optional.of(basket));
+        when(basketRepository.saveAndFlush(any(Basket.class)))
+                .thenThrow(violationOf("\"FKH4PRHJKYV0UMN63EBTTOQ9WL3: PUBLIC.BASKET_ITEM FOREIGN KEY(PRODUCT_ID)\""));
+
+        final StoreOperationException exception = assertThrows(StoreOperationException.class,
+                () -> basketService.addToBasket(1L, 1L, 2));
+
+        assertEquals("Unable to save product to basket", exception.getMessage());
+        verify(basketRepository, times(1)).saveAndFlush(any(Basket.class));
+        assertNull(meterRegistry.find("store.retries").counter());
+    }
+
+    private static DataIntegrityViolationException violationOf(final String constraintName) {
+        return new DataIntegrityViolationException("could not execute statement",
+                new ConstraintViolationException("could not execute statement", new SQLException(), constraintName));
     }
 
     @Test
     public void testRemoveFromBasket() {
-        when(basketItemRepository.existsById(anyLong())).thenReturn(true);
-        doNothing().when(basketItemRepository).deleteById(anyLong());
+        basket.setId(3L);
+        final BasketItem basketItem = new BasketItem(1L, basket, product, 2, null);
+        when(basketItemRepository.findById(anyLong())).thenReturn(Optional.of(basketItem));
+        doNothing().when(basketItemRepository).delete(any(BasketItem.class));
 
         basketService.removeFromBasket(1L);
 
-        verify(basketItemRepository, times(1)).deleteById(anyLong());
+        verify(basketItemRepository, times(1)).delete(any(BasketItem.class));
+        // removing a line changes the basket, a cached receipt of it must not be reused
+        // the change of a line updates the basket, so its version and its update time change as well
+        assertNotNull(basket.getLastUpdated());
+    }
+
+    /**
+     * Transaction manager without a resource, it only runs the transaction synchronization of each transaction.
+     */
+    private static class SynchronizingTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(final Object transaction, final TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(final DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(final DefaultTransactionStatus status) {
+        }
     }
 }
@@ -0,0 +1,87 @@
+package com.sample.electronicstore.service;
+
+import com.sample.electronicstore.dto.DiscountDealDTO;
+import com.sample.electronicstore.dto.ProductDTO;
+import com.sample.electronicstore.entity.ActiveDeal;
+import com.sample.electronicstore.entity.DiscountDeal;
+import com.sample.electronicstore.exception.StoreOperationException;
+import com.sample.electronicstore.repository.ActiveDealRepository;
+import com.sample.electronicstore.repository.DiscountDealRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+public class DiscountDealServiceIntegrationTest {
+
+    private static final int WRITERS = 8;
+
+    @Autowired
+    private DiscountDealService discountDealService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private DiscountDealRepository discountDealRepository;
+
+    @Autowired
+    private ActiveDealRepository activeDealRepository;
+
+    @Test
+    public void testConcurrentSavesLeaveOneActiveDeal() throws Exception {
+        final ProductDTO productDTO = productService.saveProduct(new ProductDTO(null, "Contended Drink", "Random Drinks", 6.0, 0));
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        final List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < WRITERS; i++) {
+                final String description = "Buy " + (i + 1) + " Get 1 Free";
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        return discountDealService.saveDiscountDeal(new DiscountDealDTO(null, productDTO.getId(), description, true, 0));
+                    } catch (StoreOperationException e) {
+                        // a writer may run out of attempts under contention, the rule must still hold
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for (final Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final List<DiscountDeal> activeDeals = discountDealRepository.findByProductId(productDTO.getId()).stream()
+                .filter(DiscountDeal::isActive)
+                .collect(Collectors.toList());
+        assertEquals(1, activeDeals.size());
+        final ActiveDeal activeDeal = activeDealRepository.findById(productDTO.getId()).get();
+        assertEquals(activeDeals.get(0).getId(), activeDeal.getDiscountDealId());
+    }
+
+    @Test
+    public void testDeactivatingReleasesActiveDeal() {
+        final ProductDTO productDTO = productService.saveProduct(new ProductDTO(null, "Released Drink", "Random Drinks", 6.0, 0));
+        discountDealService.saveDiscountDeal(new DiscountDealDTO(null, productDTO.getId(), "Buy 1 Get 1 Free", true, 0));
+
+        final DiscountDealDTO deactivated = discountDealService.saveDiscountDeal(new DiscountDealDTO(null, productDTO.getId(), "Buy 1 Get 1 Free", false, 0));
+
+        assertEquals(false, deactivated.isActive());
+        assertEquals(false, activeDealRepository.findById(productDTO.getId()).isPresent());
+    }
+}
@@ -1,13 +1,25 @@
 package com.sample.electronicstore.service;
 
+import com.sample.electronicstore.discount.DiscountRuleRegistry;
 import com.sample.electronicstore.dto.DiscountDealDTO;
+import com.sample.electronicstore.entity.ActiveDeal;
 import com.sample.electronicstore.entity.DiscountDeal;
+import com.sample.electronicstore.event.ChangeEvent;
+import com.sample.electronicstore.event.ChangeType;
+import com.sample.electronicstore.event.Outbox;
+import com.sample.electronicstore.metrics.StoreMetrics;
+import com.sample.electronicstore.repository.ActiveDealRepository;
 import com.sample.electronicstore.repository.DiscountDealRepository;
+import com.sample.electronicstore.retry.ConflictRetrier;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.time.Instant;
 import java.util.Arrays;
@@ -19,7 +31,6 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.anyLong;
-import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -29,6 +40,24 @@ public class DiscountDealServiceTest {
     @Mock
     private DiscountDealRepository discountDealRepository;
 
+    @Spy
+    private DiscountRuleRegistry discountRuleRegistry = new DiscountRuleRegistry();
+
+    @Mock
+    private ActiveDealRepository activeDealRepository;
+
+    @Mock
+    private Outbox outbox;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private StoreMetrics storeMetrics = new StoreMetrics(new SimpleMeterRegistry());
+
+    @Spy
+    private ConflictRetrier conflictRetrier = new ConflictRetrier(3, 0, 0, storeMetrics);
+
     @InjectMocks
     private DiscountDealService discountDealService;
 
@@ -38,7 +67,7 @@ public class DiscountDealServiceTest {
     @BeforeEach
     public void setup() {
         MockitoAnnotations.openMocks(this);
-        discountDeal = new DiscountDeal(1L, 1L, "Buy 1 Get 1 Free", true, Instant.parse("2024-01-15T18:35:24.00Z"));
+        discountDeal = new DiscountDeal(1L, 1L, "Buy 1 Get 1 Free", true, Instant.parse("2024-01-15T18:35:24.00Z"), 0);
         discountDealDTO = new DiscountDealDTO(1L, 1L, "Buy 1 Get 1 Free", true, 0);
     }
 
@@ -51,6 +80,21 @@ public class DiscountDealServiceTest {
         assertNotNull(savedDiscountDealDTO);
         assertEquals(discountDealDTO.getDealDescription(), savedDiscountDealDTO.getDealDescription());
         verify(discountDealRepository, times(1)).save(any(DiscountDeal.class));
+        assertNotNull(discountRuleRegistry.findByProductId(discountDeal.getProductId()));
+    }
+
+    @Test
+    public void testSaveDiscountDealRetriesWhenActiveDealIsClaimedConcurrently() {
+        when(discountDealRepository.save(any(DiscountDeal.class))).thenReturn(discountDeal);
+        when(activeDealRepository.saveAndFlush(any(ActiveDeal.class)))
+                .thenThrow(new DataIntegrityViolationException("duplicate key"))
+                .thenReturn(new ActiveDeal(1L, 1L, 0, null));
+
+        final DiscountDealDTO savedDiscountDealDTO = discountDealService.saveDiscountDeal(discountDealDTO);
+
+        assertNotNull(savedDiscountDealDTO);
+        verify(discountDealRepository, times(2)).save(any(DiscountDeal.class));
+        verify(activeDealRepository, times(2)).saveAndFlush(any(ActiveDeal.class));
     }
 
     @Test
@@ -78,17 +122,18 @@ public class DiscountDealServiceTest {
 
     @Test
     public void testRemoveDiscountDeal() {
-        doNothing().when(discountDealRepository).deleteById(anyLong());
+        when(discountDealRepository.findById(1L)).thenReturn(Optional.of(discountDeal));
 
         discountDealService.removeDiscountDeal(1L);
 
-        verify(discountDealRepository, times(1)).deleteById(anyLong());
+        verify(discountDealRepository, times(1)).delete(discountDeal);
+        verify(outbox, times(1)).record(ChangeEvent.DISCOUNT_DEAL, 1L, 1L, 1, ChangeType.REMOVED);
     }
 
     @Test
     void getDiscountDealsForProductId() {
         Long productId = 1L;
-        List<DiscountDeal> deals = Arrays.asList(new DiscountDeal(2L, productId, "BUY N GET M Free", true,null));
+        List<DiscountDeal> deals = Arrays.asList(new DiscountDeal(2L, productId, "BUY N GET M Free", true,null, 0));
         when(discountDealRepository.findByProductId(productId)).thenReturn(deals);
 
         List<DiscountDealDTO> result = discountDealService.getDiscountDealsForProductId(productId);
@@ -101,7 +146,7 @@ public class DiscountDealServiceTest {
     @Test
     void getActiveDiscountDealForProductId() {
         Long productId = 1L;
-        Optional<DiscountDeal> activeDeal = Optional.of(new DiscountDeal(3L, productId, "BUY 1 GET 2 FREE", true, null));
+        Optional<DiscountDeal> activeDeal = Optional.of(new DiscountDeal(3L, productId, "BUY 1 GET 2 FREE", true, null, 0));
         when(discountDealRepository.findByProductIdAndActive(productId, true)).thenReturn(activeDeal);
 
         DiscountDealDTO result = discountDealService.getActiveDiscountDealForProductId(productId);
@@ -1,13 +1,23 @@
 package com.sample.electronicstore.service;
 
+import com.sample.electronicstore.cache.ProductCatalogCache;
+import com.sample.electronicstore.dto.KeysetPageDTO;
 import com.sample.electronicstore.dto.ProductDTO;
 import com.sample.electronicstore.entity.Product;
+import com.sample.electronicstore.event.ChangeEvent;
+import com.sample.electronicstore.event.ChangeType;
+import com.sample.electronicstore.event.Outbox;
+import com.sample.electronicstore.lock.StripedLockManager;
+import com.sample.electronicstore.metrics.StoreMetrics;
 import com.sample.electronicstore.repository.ProductRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.data.domain.Pageable;
 
 import java.time.Instant;
 import java.util.Arrays;
@@ -17,9 +27,12 @@ import java.util.Optional;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.anyLong;
-import static org.mockito.Mockito.doNothing;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -29,6 +42,18 @@ public class ProductServiceTest {
     @Mock
     private ProductRepository productRepository;
 
+    @Mock
+    private ProductCatalogCache productCatalogCache;
+
+    @Mock
+    private Outbox outbox;
+
+    @Spy
+    private StripedLockManager lockManager = new StripedLockManager(16);
+
+    @Spy
+    private StoreMetrics storeMetrics = new StoreMetrics(new SimpleMeterRegistry());
+
     @InjectMocks
     private ProductService productService;
 
@@ -38,19 +63,33 @@ public class ProductServiceTest {
     @BeforeEach
     public void setup() {
         MockitoAnnotations.openMocks(this);
-        product = new Product(1L, "Crypto", "High-end crypto", 1500.00, Instant.parse("2024-01-15T18:35:24.00Z"));
+        product = new Product(1L, "Crypto", "High-end crypto", 150000L, Instant.parse("2024-01-15T18:35:24.00Z"), 0);
         productDTO = new ProductDTO(1L, "Crypto", "High-end crypto", 1500.00, 0L);
     }
 
     @Test
     public void testSaveProduct() {
-        when(productRepository.save(any(Product.class))).thenReturn(product);
+        when(productRepository.saveAndFlush(any(Product.class))).thenReturn(product);
 
         final ProductDTO savedProductDTO = productService.saveProduct(productDTO);
 
         assertNotNull(savedProductDTO);
         assertEquals(productDTO.getName(), savedProductDTO.getName());
-        verify(productRepository, times(1)).save(any(Product.class));
+        verify(productRepository, times(1)).saveAndFlush(any(Product.class));
+        verify(productCatalogCache, times(1)).put(product);
+    }
+
+    @Test
+    public void testUpdateProductAppliesToStoredVersion() {
+        final Product stored = new Product(1L, "Crypto", "High-end crypto", 140000L, Instant.parse("2024-01-15T18:35:24.00Z"), 3);
+        final Product updated = new Product(1L, "Crypto", "High-end crypto", 150000L, Instant.parse("2024-01-15T18:36:24.00Z"), 4);
+        when(productRepository.findById(1L)).thenReturn(Optional.of(stored));
+        when(productRepository.saveAndFlush(any(Product.class))).thenReturn(updated);
+
+        productService.saveProduct(productDTO);
+
+        verify(productRepository, times(1)).saveAndFlush(argThat(product -> product.getVersion() == 3));
+        verify(outbox, times(1)).record(ChangeEvent.PRODUCT, 1L, 1L, 4, ChangeType.SAVED);
     }
 
     @Test
@@ -76,13 +115,28 @@ public class ProductServiceTest {
         verify(productRepository, times(1)).findAll();
     }
 
+    @Test
+    public void testGetProductsPage() {
+        when(productRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), any(Pageable.class))).thenReturn(Arrays.asList(product));
+
+        final KeysetPageDTO<ProductDTO> fullPage = productService.getProductsPage(null, 1);
+        assertEquals(1, fullPage.getItems().size());
+        assertEquals(1L, fullPage.getNextAfterId());
+
+        final KeysetPageDTO<ProductDTO> lastPage = productService.getProductsPage(0L, 2);
+        assertNull(lastPage.getNextAfterId());
+        verify(productRepository, never()).findAll();
+    }
+
     @Test
     public void testRemoveProduct() {
-        doNothing().when(productRepository).deleteById(anyLong());
+        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
 
         productService.removeProduct(1L);
 
-        verify(productRepository, times(1)).deleteById(anyLong());
+        verify(productRepository, times(1)).delete(product);
+        verify(outbox, times(1)).record(ChangeEvent.PRODUCT, 1L, 1L, 1, ChangeType.REMOVED);
+        verify(productCatalogCache, times(1)).evict(1L);
     }
 
 }
@@ -0,0 +1,129 @@
+package com.sample.electronicstore.service;
+
+import com.sample.electronicstore.dto.BasketDTO;
+import com.sample.electronicstore.dto.DiscountDealDTO;
+import com.sample.electronicstore.dto.ProductDTO;
+import com.sample.electronicstore.dto.ReceiptDTO;
+import com.sample.electronicstore.entity.Product;
+import com.sample.electronicstore.exception.StoreOperationException;
+import com.sample.electronicstore.repository.BasketRepository;
+import com.sample.electronicstore.repository.ProductRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.netty.DisposableServer;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+public class ReactiveCustomerServiceIntegrationTest {
+
+    @Autowired
+    private ReactiveCustomerService reactiveCustomerService;
+
+    @Autowired
+    private ReceiptService receiptService;
+
+    @Autowired
+    private DiscountDealService discountDealService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private BasketRepository basketRepository;
+
+    @Autowired
+    private DisposableServer reactiveServer;
+
+    @Test
+    public void testAddSameProductTwiceIncreasesQuantityOfOneLine() {
+        final Product product = productRepository.save(new Product(null, "Reactive Keyboard", "Keyboard", 4500L, null, 0));
+
+        reactiveCustomerService.addToBasket(22001L, product.getId(), 1).block();
+        final BasketDTO basket = reactiveCustomerService.addToBasket(22001L, product.getId(), 2).block();
+
+        assertEquals(1, basket.getItems().size());
+        assertEquals(3, basket.getItems().get(0).getQuantity());
+        assertEquals(2, basketRepository.findVersionById(basket.getId()).get());
+    }
+
+    @Test
+    public void testReceiptIsTheSameAsTheMvcReceipt() {
+        // saved through the service, so the catalog cache holds the product with its in-memory update time
+        final ProductDTO speaker = productService.saveProduct(new ProductDTO(null, "Reactive Speaker", "Speaker", 100.0, 0));
+        discountDealService.saveDiscountDeal(new DiscountDealDTO(null, speaker.getId(), "Buy 1 Get 1 Free", true, 0));
+        final BasketDTO basket = reactiveCustomerService.addToBasket(22002L, speaker.getId(), 2).block();
+
+        final ReceiptDTO reactiveReceipt = reactiveCustomerService.calculateReceipt(basket.getId()).block();
+        final ReceiptDTO mvcReceipt = receiptService.calculateReceipt(basket.getId());
+
+        assertEquals(100.0, reactiveReceipt.getTotal());
+        assertEquals(100.0, reactiveReceipt.getLines().get(0).getDiscount());
+        // the basket is unchanged, so both calculations return the receipt written once for its state
+        assertEquals(reactiveReceipt.getId(), mvcReceipt.getId());
+        assertEquals(reactiveReceipt.getLines(), mvcReceipt.getLines());
+        assertEquals(reactiveReceipt.getDiscountDealIds(), mvcReceipt.getDiscountDealIds());
+        assertEquals(reactiveReceipt.getId(), reactiveCustomerService.calculateReceipt(basket.getId()).block().getId());
+    }
+
+    @Test
+    public void testRemoveChangesTheReceipt() {
+        final Product mouse = productRepository.save(new Product(null, "Reactive Mouse", "Mouse", 2000L, null, 0));
+        final Product pad = productRepository.save(new Product(null, "Reactive Mouse Pad", "Pad", 500L, null, 0));
+        reactiveCustomerService.addToBasket(22003L, mouse.getId(), 1).block();
+        final BasketDTO basket = reactiveCustomerService.addToBasket(22003L, pad.getId(), 1).block();
+        final ReceiptDTO before = reactiveCustomerService.calculateReceipt(basket.getId()).block();
+
+        reactiveCustomerService.removeFromBasket(basket.getItems().get(1).getId()).block();
+        final ReceiptDTO after = reactiveCustomerService.calculateReceipt(basket.getId()).block();
+
+        assertEquals(25.0, before.getTotal());
+        assertEquals(20.0, after.getTotal());
+        assertTrue(!before.getId().equals(after.getId()));
+        assertThrows(StoreOperationException.class, () -> reactiveCustomerService.removeFromBasket(basket.getItems().get(1).getId()).block());
+    }
+
+    @Test
+    public void testConcurrentAddsToTheSameBasketAreAllApplied() {
+        final Product cable = productRepository.save(new Product(null, "Reactive Cable", "Cable", 900L, null, 0));
+
+        final List<BasketDTO> results = Flux.range(0, 20)
+                .flatMap(i -> reactiveCustomerService.addToBasket(22004L, cable.getId(), 1))
+                .collectList()
+                .block();
+
+        assertEquals(20, results.size());
+        final BasketDTO basket = reactiveCustomerService.addToBasket(22004L, cable.getId(), 1).block();
+        assertEquals(21, basket.getItems().get(0).getQuantity());
+    }
+
+    @Test
+    public void testEndpointsAreServedByTheReactiveServer() {
+        final Product monitor = productRepository.save(new Product(null, "Reactive Monitor", "Monitor", 20000L, null, 0));
+        final WebTestClient client = WebTestClient.bindToServer().baseUrl("http://localhost:" + reactiveServer.port()).build();
+
+        final BasketDTO basket = client.post()
+                .uri(uri -> uri.path("/customer/basket").queryParam("customerId", 22005).queryParam("productId", monitor.getId()).queryParam("quantity", 1).build())
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(BasketDTO.class).returnResult().getResponseBody();
+        client.get().uri("/customer/receipt/{basketId}", basket.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.total").isEqualTo(200.0);
+        client.post().uri("/customer/basket?customerId=22005&productId=-1&quantity=1")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+}
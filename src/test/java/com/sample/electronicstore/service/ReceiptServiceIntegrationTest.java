@@ -0,0 +1,95 @@
+package com.sample.electronicstore.service;
+
+import com.sample.electronicstore.cache.ReceiptTotalsCache;
+import com.sample.electronicstore.dto.ReceiptDTO;
+import com.sample.electronicstore.entity.Basket;
+import com.sample.electronicstore.entity.BasketItem;
+import com.sample.electronicstore.entity.Product;
+import com.sample.electronicstore.repository.BasketRepository;
+import com.sample.electronicstore.repository.ProductRepository;
+import com.sample.electronicstore.repository.ReceiptLineRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+public class ReceiptServiceIntegrationTest {
+
+    private static final int LINE_COUNT = 120;
+
+    @Autowired
+    private ReceiptService receiptService;
+
+    @Autowired
+    private BasketService basketService;
+
+    @Autowired
+    private ReceiptTotalsCache receiptTotalsCache;
+
+    @Autowired
+    private BasketRepository basketRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ReceiptLineRepository receiptLineRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    public void testReceiptLinesAreInsertedInBatches() {
+        final Basket basket = new Basket(8080L);
+        basket.setItems(new ArrayList<>());
+        for (int i = 0; i < LINE_COUNT; i++) {
+            final Product product = productRepository.save(new Product(null, "Receipt Line Product " + i, "Product", 100L + i, null, 0));
+            final BasketItem basketItem = new BasketItem();
+            basketItem.setBasket(basket);
+            basketItem.setProduct(product);
+            basketItem.setQuantity(1);
+            basket.getItems().add(basketItem);
+        }
+        final Basket savedBasket = basketRepository.save(basket);
+        final Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        final ReceiptDTO receiptDTO = receiptService.calculateReceipt(savedBasket.getId());
+
+        assertEquals(LINE_COUNT, receiptDTO.getLines().size());
+        assertEquals(LINE_COUNT, receiptLineRepository.findByReceiptIdOrderByIdAsc(receiptDTO.getId()).size());
+        // 120 lines are three insert batches and three sequence calls, not one statement per line
+        assertTrue(statistics.getPrepareStatementCount() < 20, "statements: " + statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void testIdempotencyKeyReplaysReusedReceiptAfterBasketChange() {
+        final Product product = productRepository.save(new Product(null, "Idempotent Product", "Product", 250L, null, 0));
+        final Long basketId = basketService.addToBasket(9090L, product.getId(), 2).getId();
+        final ReceiptDTO firstReceipt = receiptService.calculateReceipt(basketId);
+
+        // the totals cache still holds the first receipt
+        final ReceiptDTO cachedReceipt = receiptService.calculateReceipt(basketId, "retry-cached");
+        // without the cache the stored receipt of this basket version is reused
+        receiptTotalsCache.basketsRemoved(Collections.singleton(basketId));
+        final ReceiptDTO reusedReceipt = receiptService.calculateReceipt(basketId, "retry-reused");
+        assertEquals(firstReceipt.getId(), cachedReceipt.getId());
+        assertEquals(firstReceipt.getId(), reusedReceipt.getId());
+
+        basketService.addToBasket(9090L, product.getId(), 1);
+        assertNotEquals(firstReceipt.getId(), receiptService.calculateReceipt(basketId).getId());
+
+        assertEquals(firstReceipt.getId(), receiptService.calculateReceipt(basketId, "retry-cached").getId());
+        assertEquals(firstReceipt.getId(), receiptService.calculateReceipt(basketId, "retry-reused").getId());
+    }
+}
@@ -1,20 +1,37 @@
 package com.sample.electronicstore.service;
 
+import com.sample.electronicstore.cache.ProductCatalogCache;
+import com.sample.electronicstore.cache.ProductSnapshot;
+import com.sample.electronicstore.cache.ReceiptTotalsCache;
+import com.sample.electronicstore.discount.DiscountRuleRegistry;
+import com.sample.electronicstore.discount.ReceiptLineEvaluator;
 import com.sample.electronicstore.dto.ReceiptDTO;
 import com.sample.electronicstore.entity.Basket;
 import com.sample.electronicstore.entity.BasketItem;
 import com.sample.electronicstore.entity.DiscountDeal;
 import com.sample.electronicstore.entity.Product;
 import com.sample.electronicstore.entity.Receipt;
+import com.sample.electronicstore.entity.ReceiptIdempotency;
+import com.sample.electronicstore.entity.ReceiptLine;
+import com.sample.electronicstore.exception.StoreOperationException;
+import com.sample.electronicstore.metrics.StoreMetrics;
+import com.sample.electronicstore.repository.BasketItemRepository;
 import com.sample.electronicstore.repository.BasketRepository;
 import com.sample.electronicstore.repository.DiscountDealRepository;
 import com.sample.electronicstore.repository.ProductRepository;
+import com.sample.electronicstore.repository.ReceiptIdempotencyRepository;
+import com.sample.electronicstore.repository.ReceiptLineRepository;
 import com.sample.electronicstore.repository.ReceiptRepository;
+import com.sample.electronicstore.retry.ConflictRetrier;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -30,12 +47,42 @@ public class ReceiptServiceTest {
     @Mock
     private BasketRepository basketRepository;
 
+    @Mock
+    private BasketItemRepository basketItemRepository;
+
     @Mock
     private DiscountDealRepository discountDealRepository;
 
     @Mock
     private ProductRepository productRepository;
 
+    @Mock
+    private ProductCatalogCache productCatalogCache;
+
+    @Spy
+    private DiscountRuleRegistry discountRuleRegistry = new DiscountRuleRegistry();
+
+    @Spy
+    private StoreMetrics storeMetrics = new StoreMetrics(new SimpleMeterRegistry());
+
+    @Spy
+    private ReceiptTotalsCache receiptTotalsCache = new ReceiptTotalsCache(100);
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private ConflictRetrier conflictRetrier = new ConflictRetrier(3, 0, 0, storeMetrics);
+
+    @Mock
+    private ReceiptLineRepository receiptLineRepository;
+
+    @Mock
+    private ReceiptIdempotencyRepository receiptIdempotencyRepository;
+
+    @Spy
+    private ReceiptLineEvaluator receiptLineEvaluator = new ReceiptLineEvaluator(2000, 2);
+
     @InjectMocks
     private ReceiptService receiptService;
 
@@ -48,8 +95,8 @@ public class ReceiptServiceTest {
     @BeforeEach
     public void setup() {
         MockitoAnnotations.openMocks(this);
-        product = new Product(1L, "Crypto", "AVAX", 1500.00, Instant.parse("2024-01-15T18:35:24.00Z"));
-        discountDeal = new DiscountDeal(1L, 1L, "Buy 1 Get 1 Free", true, Instant.parse("2024-01-15T18:35:24.00Z"));
+        product = new Product(1L, "Crypto", "AVAX", 150000L, Instant.parse("2024-01-15T18:35:24.00Z"), 0);
+        discountDeal = new DiscountDeal(1L, 1L, "Buy 1 Get 1 Free", true, Instant.parse("2024-01-15T18:35:24.00Z"), 0);
         basket = new Basket(1L);
         basketItem = new BasketItem(1L, basket, product, 2, Instant.parse("2024-01-15T18:35:24.00Z"));
         basket.setItems(Arrays.asList(basketItem));
@@ -57,17 +104,160 @@ public class ReceiptServiceTest {
 
     @Test
     public void testCalculateReceipt() {
-        when(basketRepository.findById(anyLong())).thenReturn(Optional.of(basket));
+        when(basketRepository.findWithItemsAndProductsById(anyLong())).thenReturn(Optional.of(basket));
         when(productRepository.findById(anyLong())).thenReturn(Optional.of(product));
-        when(discountDealRepository.findByProductIdAndActive(anyLong(), anyBoolean())).thenReturn(Optional.of(discountDeal));
+        when(discountDealRepository.findActiveByProductIds(anyCollection())).thenReturn(Collections.singletonMap(1L, discountDeal));
         final Set<DiscountDeal> discountDeals = new HashSet<>();
         discountDeals.add(discountDeal);
-        when(receiptRepository.save(any(Receipt.class))).thenReturn(new Receipt(1L, 1L, discountDeals, 1, Instant.parse("2024-01-15T18:35:24.00Z")));
+        when(receiptRepository.saveAndFlush(any(Receipt.class))).thenReturn(new Receipt(1L, 1L, discountDeals, 150000L, Instant.parse("2024-01-15T18:35:24.00Z"), 0, null));
 
         final ReceiptDTO receiptDTO = receiptService.calculateReceipt(1L);
 
         assertNotNull(receiptDTO);
         assertTrue(receiptDTO.getDiscountDealIds().contains(discountDeal.getId()));
-        assertNotNull(receiptDTO.getDetails());
+        assertEquals(1500.0, receiptDTO.getTotal());
+        assertEquals(1, receiptDTO.getLines().size());
+        assertEquals(2, receiptDTO.getLines().get(0).getQuantity());
+        assertEquals(1500.0, receiptDTO.getLines().get(0).getDiscount());
+        assertEquals(discountDeal.getId(), receiptDTO.getLines().get(0).getDealId());
+        assertNull(receiptDTO.getDetails());
+        verify(receiptLineRepository, times(1)).saveAll(anyList());
+        verify(discountDealRepository, times(1)).findActiveByProductIds(anyCollection());
+        verify(discountDealRepository, never()).findByProductIdAndActive(anyLong(), anyBoolean());
+    }
+
+    @Test
+    public void testUnchangedBasketReturnsCachedReceipt() {
+        when(basketRepository.findWithItemsAndProductsById(anyLong())).thenReturn(Optional.of(basket));
+        when(basketRepository.findVersionById(anyLong())).thenReturn(Optional.of(basket.getVersion()));
+        when(basketItemRepository.findProductPrices(1L)).thenReturn(Collections.singletonList(priceOf(1L, product.getPrice())));
+        when(discountDealRepository.findActiveByProductIds(anyCollection())).thenReturn(Collections.singletonMap(1L, discountDeal));
+        when(receiptRepository.saveAndFlush(any(Receipt.class))).thenReturn(new Receipt(1L, 1L, Collections.singleton(discountDeal), 150000L, Instant.parse("2024-01-15T18:35:24.00Z"), 0, null));
+
+        final ReceiptDTO first = receiptService.calculateReceipt(1L);
+        final ReceiptDTO second = receiptService.calculateReceipt(1L);
+
+        assertSame(first, second);
+        verify(receiptRepository, times(1)).saveAndFlush(any(Receipt.class));
+        verify(basketRepository, times(1)).findWithItemsAndProductsById(anyLong());
+        verify(productCatalogCache, never()).get(anyLong());
+    }
+
+    @Test
+    public void testPriceChangedByOtherInstanceIsCalculatedAgain() {
+        when(basketRepository.findWithItemsAndProductsById(anyLong())).thenReturn(Optional.of(basket));
+        when(basketRepository.findVersionById(anyLong())).thenReturn(Optional.of(basket.getVersion()));
+        // the local catalog cache still has the old price, only the database has the new one
+        when(productCatalogCache.get(anyLong())).thenReturn(Optional.of(ProductSnapshot.of(product)));
+        when(basketItemRepository.findProductPrices(1L)).thenReturn(Collections.singletonList(priceOf(1L, 120000L)));
+        when(discountDealRepository.findActiveByProductIds(anyCollection())).thenReturn(Collections.singletonMap(1L, discountDeal));
+        when(receiptRepository.saveAndFlush(any(Receipt.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        receiptService.calculateReceipt(1L);
+
+        product.setPrice(120000L);
+        product.setLastUpdated(Instant.parse("2024-01-16T09:00:00.00Z"));
+        final ReceiptDTO receiptDTO = receiptService.calculateReceipt(1L);
+
+        verify(basketRepository, times(2)).findWithItemsAndProductsById(anyLong());
+        assertEquals(1200.0, receiptDTO.getTotal());
+    }
+
+    @Test
+    public void testSameBasketVersionReturnsExistingReceipt() {
+        when(basketRepository.findWithItemsAndProductsById(anyLong())).thenReturn(Optional.of(basket));
+        when(discountDealRepository.findActiveByProductIds(anyCollection())).thenReturn(Collections.singletonMap(1L, discountDeal));
+        when(receiptRepository.findByBasketIdAndBasketVersionAndDealSetHash(anyLong(), anyInt(), anyString()))
+                .thenReturn(Optional.of(new Receipt(5L, 1L, Collections.singleton(discountDeal), 150000L, null, 0, "hash")));
+
+        final ReceiptDTO receiptDTO = receiptService.calculateReceipt(1L);
+
+        assertEquals(5L, receiptDTO.getId());
+        assertEquals(1, receiptDTO.getLines().size());
+        verify(receiptRepository, never()).saveAndFlush(any(Receipt.class));
+        verify(receiptLineRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    public void testConcurrentlySavedReceiptIsReturned() {
+        when(basketRepository.findWithItemsAndProductsById(anyLong())).thenReturn(Optional.of(basket));
+        when(discountDealRepository.findActiveByProductIds(anyCollection())).thenReturn(Collections.singletonMap(1L, discountDeal));
+        when(receiptRepository.findByBasketIdAndBasketVersionAndDealSetHash(anyLong(), anyInt(), anyString()))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(new Receipt(5L, 1L, Collections.singleton(discountDeal), 150000L, null, 0, "hash")));
+        when(receiptRepository.saveAndFlush(any(Receipt.class))).thenThrow(new DataIntegrityViolationException("uk_receipt_basket_version_deals"));
+
+        final ReceiptDTO receiptDTO = receiptService.calculateReceipt(1L);
+
+        // the insert lost against a concurrent one, the retry returns the receipt that was saved
+        assertEquals(5L, receiptDTO.getId());
+        verify(receiptRepository, times(1)).saveAndFlush(any(Receipt.class));
+    }
+
+    @Test
+    public void testIdempotencyKeyReturnsReceiptOfFirstRequest() {
+        when(receiptIdempotencyRepository.findById("checkout-1")).thenReturn(Optional.of(new ReceiptIdempotency("checkout-1", 5L, 1L)));
+        when(receiptRepository.findById(5L))
+                .thenReturn(Optional.of(new Receipt(5L, 1L, Collections.singleton(discountDeal), 150000L, null, 0, "hash")));
+        when(receiptLineRepository.findByReceiptIdOrderByIdAsc(5L))
+                .thenReturn(Collections.singletonList(new ReceiptLine(1L, 5L, 1L, 2, 150000L, 150000L, 1L)));
+
+        final ReceiptDTO receiptDTO = receiptService.calculateReceipt(1L, "checkout-1");
+
+        assertEquals(5L, receiptDTO.getId());
+        assertEquals(2, receiptDTO.getLines().get(0).getQuantity());
+        verify(basketRepository, never()).findWithItemsAndProductsById(anyLong());
+        assertThrows(StoreOperationException.class, () -> receiptService.calculateReceipt(2L, "checkout-1"));
+    }
+
+    @Test
+    public void testChangedBasketIsCalculatedAgain() {
+        final Product otherProduct = new Product(2L, "Cable", "USB", 1000L, Instant.parse("2024-01-15T18:35:24.00Z"), 0);
+        final BasketItem otherItem = new BasketItem(2L, basket, otherProduct, 1, null);
+        basket.setItems(Arrays.asList(basketItem, otherItem));
+        when(basketRepository.findWithItemsAndProductsById(anyLong())).thenReturn(Optional.of(basket));
+        when(discountDealRepository.findActiveByProductIds(anyCollection())).thenReturn(Collections.singletonMap(1L, discountDeal));
+        when(receiptRepository.saveAndFlush(any(Receipt.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        receiptService.calculateReceipt(1L);
+
+        otherItem.setQuantity(3);
+        basket.setVersion(basket.getVersion() + 1);
+        final ReceiptDTO receiptDTO = receiptService.calculateReceipt(1L);
+
+        // the cached receipt is of an older version of the basket, all lines are evaluated again
+        verify(discountRuleRegistry, times(2)).ruleFor(any(DiscountDeal.class));
+        assertEquals(3, receiptDTO.getLines().get(1).getQuantity());
+        assertEquals(1530.0, receiptDTO.getTotal());
+    }
+
+    @Test
+    public void testWithDetailsRendersTextView() {
+        when(basketRepository.findWithItemsAndProductsById(anyLong())).thenReturn(Optional.of(basket));
+        when(productCatalogCache.get(1L)).thenReturn(Optional.of(ProductSnapshot.of(product)));
+        when(discountDealRepository.findActiveByProductIds(anyCollection())).thenReturn(Collections.singletonMap(1L, discountDeal));
+        when(discountDealRepository.findAllById(anyCollection())).thenReturn(Collections.singletonList(discountDeal));
+        when(receiptRepository.saveAndFlush(any(Receipt.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        final ReceiptDTO receiptDTO = receiptService.calculateReceipt(1L);
+
+        final ReceiptDTO withDetails = receiptService.withDetails(receiptDTO);
+
+        assertTrue(withDetails.getDetails().contains("Product: Crypto, Quantity: 2"));
+        assertTrue(withDetails.getDetails().contains(" - Buy 1 Get 1 Free"));
+        assertTrue(withDetails.getDetails().contains("Total: 1500.00"));
+        // the receipt returned by the calculation, which may be cached, is not changed
+        assertNull(receiptDTO.getDetails());
+    }
+
+    private static BasketItemRepository.ProductPriceView priceOf(final Long productId, final long price) {
+        return new BasketItemRepository.ProductPriceView() {
+            @Override
+            public Long getProductId() {
+                return productId;
+            }
+
+            @Override
+            public long getPrice() {
+                return price;
+            }
+        };
     }
 }
@@ -0,0 +1,130 @@
+package com.sample.electronicstore.service;
+
+import com.sample.electronicstore.discount.DiscountRuleRegistry;
+import com.sample.electronicstore.dto.DiscountDealDTO;
+import com.sample.electronicstore.dto.ProductDTO;
+import com.sample.electronicstore.dto.RepricingReportDTO;
+import com.sample.electronicstore.exception.StoreOperationException;
+import com.sample.electronicstore.metrics.StoreMetrics;
+import com.sample.electronicstore.repository.BasketItemRepository;
+import com.sample.electronicstore.repository.DiscountDealRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+public class RepricingServiceIntegrationTest {
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private DiscountDealService discountDealService;
+
+    @Autowired
+    private BasketService basketService;
+
+    @Autowired
+    private BasketItemRepository basketItemRepository;
+
+    @Autowired
+    private DiscountDealRepository discountDealRepository;
+
+    @Autowired
+    private DiscountRuleRegistry discountRuleRegistry;
+
+    @Autowired
+    private StoreMetrics storeMetrics;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private RepricingService repricingService;
+    private ProductDTO speaker;
+    private ProductDTO cable;
+
+    @BeforeEach
+    public void setUp() {
+        // two baskets per chunk on two workers, so the run spans several chunks
+        repricingService = new RepricingService(basketItemRepository, discountDealRepository, discountRuleRegistry,
+                storeMetrics, transactionManager, 2, 2, 30_000);
+        final long suffix = System.nanoTime();
+        speaker = productService.saveProduct(new ProductDTO(null, "What-if Speaker " + suffix, "Speakers", 10.0, 0));
+        cable = productService.saveProduct(new ProductDTO(null, "What-if Cable " + suffix, "Cables", 5.0, 0));
+        final ProductDTO charger = productService.saveProduct(new ProductDTO(null, "What-if Charger " + suffix, "Chargers", 3.0, 0));
+        discountDealService.saveDiscountDeal(new DiscountDealDTO(null, speaker.getId(), "Buy 1 Get 1 Free", true, 0));
+
+        final long customerId = suffix % 1_000_000_000L * 10;
+        basketService.addToBasket(customerId + 1, speaker.getId(), 2);
+        basketService.addToBasket(customerId + 1, charger.getId(), 1);
+        basketService.addToBasket(customerId + 2, cable.getId(), 3);
+        basketService.addToBasket(customerId + 3, speaker.getId(), 3);
+        basketService.addToBasket(customerId + 4, speaker.getId(), 1);
+        // not holding a product of the proposal
+        basketService.addToBasket(customerId + 5, charger.getId(), 5);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        repricingService.shutdown();
+    }
+
+    @Test
+    public void testWhatIfReportsRevenueDelta() {
+        final RepricingReportDTO report = repricingService.whatIf(Arrays.asList(
+                new DiscountDealDTO(null, speaker.getId(), "Buy 1 Get 50% off on the next", true, 0),
+                new DiscountDealDTO(null, cable.getId(), "Buy 2 Get 1 Free", true, 0)));
+
+        // speaker x2: 10.00 -> 20.00, cable x3: 15.00 -> 10.00, speaker x3: 20.00 -> 25.00, speaker x1: 10.00 -> 10.00
+        assertEquals(4, report.getBasketsEvaluated());
+        assertEquals(3, report.getBasketsAffected());
+        assertEquals(4, report.getLinesEvaluated());
+        assertEquals(55.0, report.getCurrentTotal());
+        assertEquals(65.0, report.getProposedTotal());
+        assertEquals(10.0, report.getRevenueDelta());
+        // the proposal doesn't change the active deal
+        assertEquals("BUY 1 GET 1 FREE", discountDealService.getActiveDiscountDealForProductId(speaker.getId()).getDealDescription());
+    }
+
+    @Test
+    public void testWhatIfRemovingDeal() {
+        final RepricingReportDTO report = repricingService.whatIf(Collections.singletonList(
+                new DiscountDealDTO(null, speaker.getId(), null, false, 0)));
+
+        assertEquals(3, report.getBasketsEvaluated());
+        assertEquals(2, report.getBasketsAffected());
+        assertEquals(20.0, report.getRevenueDelta());
+    }
+
+    @Test
+    public void testWhatIfRejectsInvalidProposal() {
+        assertThrows(StoreOperationException.class, () -> repricingService.whatIf(Collections.<DiscountDealDTO>emptyList()));
+        assertThrows(StoreOperationException.class, () -> repricingService.whatIf(Arrays.asList(
+                new DiscountDealDTO(null, speaker.getId(), "Buy 1 Get 1 Free", true, 0),
+                new DiscountDealDTO(null, speaker.getId(), "Buy 2 Get 1 Free", true, 0))));
+    }
+
+    @Test
+    public void testWhatIfStopsWhenInterrupted() {
+        Thread.currentThread().interrupt();
+        try {
+            final StoreOperationException exception = assertThrows(StoreOperationException.class, () -> repricingService.whatIf(
+                    Collections.singletonList(new DiscountDealDTO(null, speaker.getId(), null, false, 0))));
+            assertEquals("What-if repricing was interrupted", exception.getMessage());
+            // the interrupt is kept for the caller
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+}